@@ -0,0 +1,21 @@
+package dev.ktroude.ft_hangout;
+
+import android.app.Application;
+import android.os.StrictMode;
+
+import androidx.test.runner.AndroidJUnitRunner;
+
+/**
+ * Runs the instrumented tests with the debug StrictMode policy of {@link MainApplication}
+ * made fatal, so that disk access on the main thread fails the test that caused it.
+ */
+public class StrictModeTestRunner extends AndroidJUnitRunner {
+
+    @Override
+    public void callApplicationOnCreate(Application app) {
+        super.callApplicationOnCreate(app);
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder(StrictMode.getThreadPolicy())
+                .penaltyDeath()
+                .build());
+    }
+}
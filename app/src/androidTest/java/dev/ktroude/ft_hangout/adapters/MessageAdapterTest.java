@@ -0,0 +1,229 @@
+package dev.ktroude.ft_hangout.adapters;
+
+import android.content.Context;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import dev.ktroude.ft_hangout.database.DatabaseHelper;
+import dev.ktroude.ft_hangout.models.Contact;
+import dev.ktroude.ft_hangout.models.Message;
+import dev.ktroude.ft_hangout.models.MessageItem;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that appending sent and received messages, and dropping and reloading pages, keeps the
+ * adapter in the order of the database, and that the notifications it sends describe exactly
+ * the changes made to its list.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MessageAdapterTest {
+
+    private static final String TEST_DATABASE = "message-adapter-test.db";
+
+    /**
+     * Number of messages kept in the adapter, as MessageActivity caps them.
+     */
+    private static final int MAX_LOADED_MESSAGES = 100;
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+    private int contactId;
+    private List<MessageItem> messageList;
+    private MessageAdapter adapter;
+    private List<Integer> notifiedIds;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DATABASE);
+        dbHelper = new DatabaseHelper(context, TEST_DATABASE);
+        contactId = dbHelper.addContact(new Contact(0, "Alice", "", "", "", "0600000001", ""));
+
+        messageList = new ArrayList<>();
+        adapter = new MessageAdapter(messageList);
+        notifiedIds = new ArrayList<>();
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                notifiedIds.clear();
+                notifiedIds.addAll(ids(messageList));
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                for (int i = 0; i < itemCount; i++) {
+                    notifiedIds.add(positionStart + i, messageList.get(positionStart + i).getMessage().getId());
+                }
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                notifiedIds.subList(positionStart, positionStart + itemCount).clear();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void appendNewMessages_skipsDisplayedAndRejectsGaps() {
+        Message first = store(1000, true);
+        Message second = store(2000, false);
+        assertTrue(adapter.appendNewMessages(MessageItem.fromMessages(Arrays.asList(first, second))));
+        assertTrue("Same message reported twice",
+                adapter.appendNewMessages(MessageItem.fromMessages(Collections.singletonList(second))));
+        assertEquals(Arrays.asList(first.getId(), second.getId()), ids(messageList));
+
+        Message late = store(1500, false);
+        Message third = store(3000, true);
+        assertFalse(adapter.appendNewMessages(MessageItem.fromMessages(Arrays.asList(late, third))));
+        assertEquals("Nothing added when there is a gap", Arrays.asList(first.getId(), second.getId()), ids(messageList));
+        assertEquals(ids(messageList), notifiedIds);
+    }
+
+    @Test
+    public void interleavedSendsAndReceives_matchTheDatabase() {
+        Random random = new Random(42);
+        long clock = 1000;
+        for (int i = 0; i < 5; i++) {
+            store(clock++, i % 2 == 0);
+        }
+        reload();
+
+        // Sent messages are appended once stored, received ones once published: both may reach the adapter late.
+        List<List<MessageItem>> pending = new ArrayList<>();
+        int reloads = 0;
+        int dropped = 0;
+        for (int step = 0; step < 500; step++) {
+            int action = random.nextInt(3);
+            if (action == 0) {
+                pending.add(MessageItem.fromMessages(Collections.singletonList(store(clock++, true))));
+            } else if (action == 1) {
+                // A multipart SMS is dated when its first part arrived, so it may be older than a sent message.
+                pending.add(MessageItem.fromMessages(Collections.singletonList(store(clock++ - random.nextInt(3), false))));
+            } else if (!pending.isEmpty()) {
+                if (!adapter.appendNewMessages(pending.remove(random.nextInt(pending.size())))) {
+                    reload();
+                    reloads++;
+                }
+                dropped += dropOldest();
+            }
+            assertEquals(ids(messageList), notifiedIds);
+            assertSorted();
+        }
+
+        for (List<MessageItem> delivery : pending) {
+            if (!adapter.appendNewMessages(delivery)) {
+                reload();
+            }
+            dropOldest();
+        }
+
+        List<Integer> all = ids(MessageItem.fromMessages(dbHelper.getAllMessageFromContact(contactId)));
+        assertEquals(all.subList(all.size() - MAX_LOADED_MESSAGES, all.size()), ids(messageList));
+        assertEquals(ids(messageList), notifiedIds);
+        assertTrue("The cap was reached", dropped > 0);
+        assertTrue("Most messages are appended without a reload: " + reloads, reloads < 100);
+    }
+
+    @Test
+    public void droppedPages_areReloadedThroughTheCursors() {
+        int pageSize = 10;
+        for (int i = 0; i < 5 * pageSize; i++) {
+            // Messages sent in the same millisecond are told apart by their ID.
+            store(1000 + i / 3, i % 2 == 0);
+        }
+        List<Integer> all = ids(MessageItem.fromMessages(dbHelper.getAllMessageFromContact(contactId)));
+
+        adapter.appendMessages(MessageItem.fromMessages(dbHelper.getMessagesPage(
+                contactId, DatabaseHelper.NEWEST_DATE, DatabaseHelper.NEWEST_ID, pageSize)));
+        // Scroll to the top, keeping two pages.
+        for (int page = 1; page < 5; page++) {
+            Message oldest = messageList.get(0).getMessage();
+            adapter.prependMessages(MessageItem.fromMessages(dbHelper.getMessagesPage(
+                    contactId, oldest.getDate(), oldest.getId(), pageSize)));
+            if (messageList.size() > 2 * pageSize) {
+                adapter.removeNewest(messageList.size() - 2 * pageSize);
+            }
+            assertEquals(ids(messageList), notifiedIds);
+        }
+        assertEquals(all.subList(0, 2 * pageSize), ids(messageList));
+
+        // Scroll back to the bottom.
+        for (int page = 1; page < 4; page++) {
+            Message newest = messageList.get(messageList.size() - 1).getMessage();
+            adapter.appendMessages(MessageItem.fromMessages(dbHelper.getMessagesPageAfter(
+                    contactId, newest.getDate(), newest.getId(), pageSize)));
+            adapter.removeOldest(messageList.size() - 2 * pageSize);
+            assertEquals(ids(messageList), notifiedIds);
+            assertSorted();
+        }
+        assertEquals(all.subList(3 * pageSize, 5 * pageSize), ids(messageList));
+    }
+
+    private Message store(long date, boolean isSend) {
+        Message message = new Message(0, contactId, "Message at " + date, date, isSend);
+        message.setId(dbHelper.addMessage(message));
+        return message;
+    }
+
+    /**
+     * Reloads the newest messages, up to {@link #MAX_LOADED_MESSAGES}.
+     */
+    private void reload() {
+        List<Message> all = dbHelper.getAllMessageFromContact(contactId);
+        messageList.clear();
+        messageList.addAll(MessageItem.fromMessages(
+                all.subList(Math.max(all.size() - MAX_LOADED_MESSAGES, 0), all.size())));
+        adapter.notifyDataSetChanged();
+    }
+
+    /**
+     * Drops the oldest messages beyond {@link #MAX_LOADED_MESSAGES}, as MessageActivity does after an append.
+     *
+     * @return The number of messages dropped.
+     */
+    private int dropOldest() {
+        int excess = messageList.size() - MAX_LOADED_MESSAGES;
+        if (excess <= 0) {
+            return 0;
+        }
+        adapter.removeOldest(excess);
+        return excess;
+    }
+
+    private void assertSorted() {
+        for (int i = 1; i < messageList.size(); i++) {
+            Message previous = messageList.get(i - 1).getMessage();
+            Message message = messageList.get(i).getMessage();
+            assertTrue("Out of order at " + i, previous.getDate() < message.getDate()
+                    || (previous.getDate() == message.getDate() && previous.getId() < message.getId()));
+        }
+    }
+
+    private static List<Integer> ids(List<MessageItem> items) {
+        List<Integer> ids = new ArrayList<>(items.size());
+        for (MessageItem item : items) {
+            ids.add(item.getMessage().getId());
+        }
+        return ids;
+    }
+}
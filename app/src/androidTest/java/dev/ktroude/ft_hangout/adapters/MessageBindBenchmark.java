@@ -0,0 +1,83 @@
+package dev.ktroude.ft_hangout.adapters;
+
+import android.content.Context;
+import android.os.Debug;
+import android.util.Log;
+import android.widget.FrameLayout;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import dev.ktroude.ft_hangout.models.Message;
+import dev.ktroude.ft_hangout.models.MessageItem;
+
+import static org.junit.Assert.*;
+
+/**
+ * Counts the objects allocated by binding a message bubble, as happens for every bubble
+ * scrolled into view, and compares it with formatting the date at bind time as was done before.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MessageBindBenchmark {
+
+    private static final String TAG = "MessageBindBenchmark";
+    private static final int MESSAGES = 200;
+    private static final int BINDS = 2000;
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void bind_allocatesFarLessThanFormatting() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+            List<Message> messages = new ArrayList<>();
+            long date = 1_700_000_000_000L;
+            for (int i = 0; i < MESSAGES; i++) {
+                messages.add(new Message(i + 1, 1, "Message " + i, date, i % 3 != 0));
+                date += TimeUnit.HOURS.toMillis(5);
+            }
+            MessageAdapter adapter = new MessageAdapter(MessageItem.fromMessages(messages));
+
+            FrameLayout parent = new FrameLayout(context);
+            MessageAdapter.MessageViewHolder[] holders = new MessageAdapter.MessageViewHolder[2];
+            for (int type = 0; type < holders.length; type++) {
+                holders[type] = adapter.onCreateViewHolder(parent, type);
+            }
+            // Binds every message once, so that the bubbles already hold texts of every length.
+            for (int position = 0; position < MESSAGES; position++) {
+                adapter.onBindViewHolder(holders[adapter.getItemViewType(position)], position);
+            }
+
+            Debug.startAllocCounting();
+            Debug.resetThreadAllocCount();
+            for (int i = 0; i < BINDS; i++) {
+                int position = i % MESSAGES;
+                adapter.onBindViewHolder(holders[adapter.getItemViewType(position)], position);
+            }
+            int bindAllocations = Debug.getThreadAllocCount();
+
+            Debug.resetThreadAllocCount();
+            for (int i = 0; i < BINDS; i++) {
+                Message message = messages.get(i % MESSAGES);
+                new SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault()).format(new Date(message.getDate()));
+            }
+            int formatAllocations = Debug.getThreadAllocCount();
+            Debug.stopAllocCounting();
+
+            double perBind = (double) bindAllocations / BINDS;
+            double perFormat = (double) formatAllocations / BINDS;
+            Log.i(TAG, String.format(Locale.ROOT, "%.2f allocations per bind, %.2f per date formatted at bind time",
+                    perBind, perFormat));
+            assertTrue("Binding allocates " + perBind + " objects", perBind < perFormat / 10);
+        });
+    }
+}
@@ -0,0 +1,162 @@
+package dev.ktroude.ft_hangout.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import dev.ktroude.ft_hangout.utils.AvatarEncoder;
+import dev.ktroude.ft_hangout.utils.AvatarStore;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the time of a full contacts row scan while pictures are stored as Base64 in the
+ * contacts table (version 3) and after they have been moved to the avatar store (version 4).
+ */
+@RunWith(AndroidJUnit4.class)
+public class AvatarMigrationBenchmark {
+
+    private static final String TAG = "AvatarMigrationBenchmark";
+    private static final String TEST_DATABASE = "avatar-benchmark.db";
+    private static final int CONTACTS = 1000;
+    private static final int DISTINCT_PICTURES = 50;
+    private static final int SCANS = 5;
+    private static final int PICTURE_SIZE = 96;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DATABASE);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void rowScan_beforeAndAfterAvatarMigration() {
+        String[] pictures = createPictures();
+        seedVersion3(pictures);
+
+        SQLiteDatabase legacy = context.openOrCreateDatabase(TEST_DATABASE, Context.MODE_PRIVATE, null);
+        long before = timeScans(legacy);
+        legacy.close();
+
+        DatabaseHelper helper = new DatabaseHelper(context, TEST_DATABASE);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        long after = timeScans(db);
+
+        Log.i(TAG, "Scan of " + CONTACTS + " contacts: " + before / SCANS + " ms with Base64 pictures, "
+                + after / SCANS + " ms with avatar keys");
+
+        try (Cursor cursor = db.rawQuery("SELECT picture FROM contacts LIMIT 1", null)) {
+            assertTrue(cursor.moveToFirst());
+            String key = cursor.getString(0);
+            assertEquals(40, key.length());
+            assertNotNull(AvatarStore.getInstance(context).decodeBitmap(key));
+        }
+        assertTrue("Scanning avatar keys should be faster than scanning Base64 pictures", after < before);
+        helper.close();
+    }
+
+    /**
+     * Scans every column of every contact {@link #SCANS} times.
+     *
+     * @param db The database instance.
+     * @return The total time spent, in milliseconds.
+     */
+    private long timeScans(SQLiteDatabase db) {
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < SCANS; i++) {
+            try (Cursor cursor = db.rawQuery("SELECT * FROM contacts", null)) {
+                while (cursor.moveToNext()) {
+                    for (int column = 0; column < cursor.getColumnCount(); column++) {
+                        cursor.getString(column);
+                    }
+                }
+            }
+        }
+        return SystemClock.elapsedRealtime() - start;
+    }
+
+    /**
+     * Encodes noisy pictures the way the app used to store them, roughly 35 KB of Base64 each.
+     *
+     * @return Base64 PNG pictures.
+     */
+    private String[] createPictures() {
+        Random random = new Random(42);
+        String[] pictures = new String[DISTINCT_PICTURES];
+        int[] pixels = new int[PICTURE_SIZE * PICTURE_SIZE];
+        for (int p = 0; p < DISTINCT_PICTURES; p++) {
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+            }
+            Bitmap bitmap = Bitmap.createBitmap(pixels, PICTURE_SIZE, PICTURE_SIZE, Bitmap.Config.ARGB_8888);
+            pictures[p] = Base64.encodeToString(AvatarEncoder.PNG.encode(bitmap), Base64.DEFAULT);
+            bitmap.recycle();
+        }
+        return pictures;
+    }
+
+    /**
+     * Creates a version 3 database whose contacts hold Base64 pictures.
+     *
+     * @param pictures The pictures to assign, round-robin.
+     */
+    private void seedVersion3(String[] pictures) {
+        SQLiteDatabase db = context.openOrCreateDatabase(TEST_DATABASE, Context.MODE_PRIVATE, null);
+        db.execSQL("CREATE TABLE contacts (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "firstname TEXT NOT NULL, " +
+                "lastname TEXT, " +
+                "email TEXT, " +
+                "address TEXT, " +
+                "telNumber TEXT NOT NULL, " +
+                "picture TEXT)");
+        db.execSQL("CREATE TABLE messages (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "contactId INTEGER NOT NULL, " +
+                "msg TEXT NOT NULL, " +
+                "date INTEGER NOT NULL, " +
+                "isSend INTEGER NOT NULL, " +
+                "FOREIGN KEY(contactId) REFERENCES contacts(id))");
+        db.execSQL(Migrations.CREATE_INDEX_MESSAGES_CONTACT_DATE);
+        db.execSQL(Migrations.CREATE_INDEX_CONTACTS_TEL_NUMBER);
+
+        db.beginTransaction();
+        try {
+            SQLiteStatement insert = db.compileStatement(
+                    "INSERT INTO contacts (firstname, telNumber, picture) VALUES (?, ?, ?)");
+            for (int i = 0; i < CONTACTS; i++) {
+                insert.bindString(1, "Contact " + i);
+                insert.bindString(2, String.format("06%08d", i));
+                insert.bindString(3, pictures[i % pictures.length]);
+                insert.executeInsert();
+            }
+            db.setVersion(3);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.close();
+    }
+}
@@ -0,0 +1,94 @@
+package dev.ktroude.ft_hangout.database;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import dev.ktroude.ft_hangout.models.Contact;
+import dev.ktroude.ft_hangout.models.ContactSummary;
+import dev.ktroude.ft_hangout.models.Message;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the conversations table follows the messages as they are added and read,
+ * and that the rebuild routine detects and repairs a table that drifted.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConversationSummaryTest {
+
+    private static final String TEST_DATABASE = "conversation-test.db";
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DATABASE);
+        dbHelper = new DatabaseHelper(context, TEST_DATABASE);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void addMessage_keepsInboxSortedAndCounted() {
+        int alice = dbHelper.addContact(new Contact(0, "Alice", "", "", "", "0600000001", ""));
+        int bob = dbHelper.addContact(new Contact(0, "Bob", "", "", "", "0600000002", ""));
+        int carol = dbHelper.addContact(new Contact(0, "Carol", "", "", "", "0600000003", ""));
+
+        dbHelper.addMessage(new Message(0, alice, "Hi Alice", 1000, true));
+        dbHelper.addMessage(new Message(0, bob, "Hi from Bob", 2000, false));
+        dbHelper.addMessage(new Message(0, alice, "Hi back", 3000, false));
+        dbHelper.addMessage(new Message(0, alice, "Late delivery", 500, false));
+
+        List<ContactSummary> inbox = dbHelper.getInbox();
+        assertEquals(3, inbox.size());
+        assertEquals(alice, (int) inbox.get(0).getId());
+        assertEquals("Hi back", inbox.get(0).getLastMessage());
+        assertEquals(3000, inbox.get(0).getLastDate());
+        assertEquals(2, inbox.get(0).getUnreadCount());
+        assertEquals(bob, (int) inbox.get(1).getId());
+        assertEquals(1, inbox.get(1).getUnreadCount());
+        assertEquals(carol, (int) inbox.get(2).getId());
+        assertNull(inbox.get(2).getLastMessage());
+
+        dbHelper.markConversationRead(alice);
+        assertEquals(0, dbHelper.getInbox().get(0).getUnreadCount());
+        assertEquals(0, dbHelper.checkConversations());
+    }
+
+    @Test
+    public void rebuildConversations_repairsDrift() {
+        int alice = dbHelper.addContact(new Contact(0, "Alice", "", "", "", "0600000001", ""));
+        for (int i = 0; i < 10; i++) {
+            dbHelper.addMessage(new Message(0, alice, "Message " + i, 1000 + i, i % 2 == 0));
+        }
+        dbHelper.markConversationRead(alice);
+        dbHelper.addMessage(new Message(0, alice, "Unread", 5000, false));
+        assertEquals(0, dbHelper.checkConversations());
+
+        dbHelper.getWritableDatabase().execSQL(
+                "UPDATE conversations SET messageCount = 3, lastMessage = 'stale' WHERE contactId = ?",
+                new Object[]{alice});
+        assertEquals(2, dbHelper.checkConversations());
+
+        dbHelper.rebuildConversations();
+        assertEquals(0, dbHelper.checkConversations());
+        ContactSummary summary = dbHelper.getInbox().get(0);
+        assertEquals("Unread", summary.getLastMessage());
+        assertEquals(1, summary.getUnreadCount());
+    }
+}
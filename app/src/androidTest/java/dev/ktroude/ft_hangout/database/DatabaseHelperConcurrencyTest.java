@@ -0,0 +1,109 @@
+package dev.ktroude.ft_hangout.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import dev.ktroude.ft_hangout.models.Contact;
+import dev.ktroude.ft_hangout.models.Message;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs concurrent readers and writers against a single shared DatabaseHelper,
+ * the way the SMS receiver and the open screens use it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseHelperConcurrencyTest {
+
+    private static final String TEST_DATABASE = "concurrency-test.db";
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int MESSAGES_PER_WRITER = 500;
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DATABASE);
+        dbHelper = new DatabaseHelper(context, TEST_DATABASE);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void concurrentReadersAndWriters_shareOneConnection() throws Exception {
+        int contactId = dbHelper.addContact(new Contact(0, "Load", "", "", "", "0600000000", ""));
+        assertTrue(contactId > 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int w = 0; w < WRITERS; w++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < MESSAGES_PER_WRITER; i++) {
+                    dbHelper.addMessage(new Message(0, contactId, "msg " + i, System.currentTimeMillis(), false));
+                }
+                return null;
+            }));
+        }
+        for (int r = 0; r < READERS; r++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                int lastSeen = 0;
+                while (lastSeen < WRITERS * MESSAGES_PER_WRITER) {
+                    int seen = dbHelper.getAllMessageFromContact(contactId).size();
+                    assertTrue("Readers must never observe rows disappearing", seen >= lastSeen);
+                    assertNotNull(dbHelper.getContactById(contactId));
+                    lastSeen = seen;
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        assertTrue(dbHelper.getWritableDatabase().isOpen());
+        assertTrue(dbHelper.getWritableDatabase().isWriteAheadLoggingEnabled());
+        assertEquals(WRITERS * MESSAGES_PER_WRITER, dbHelper.getAllMessageFromContact(contactId).size());
+    }
+
+    @Test
+    public void sharedHelper_staysOpenUntilLastRelease() {
+        DatabaseHelper first = DatabaseHelper.acquire(context);
+        DatabaseHelper second = DatabaseHelper.acquire(context);
+        assertSame(first, second);
+
+        SQLiteDatabase db = first.getReadableDatabase();
+        first.release();
+        assertTrue("Releasing one holder must not close the connection", db.isOpen());
+        second.release();
+    }
+}
@@ -0,0 +1,178 @@
+package dev.ktroude.ft_hangout.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import dev.ktroude.ft_hangout.models.SearchResult;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the latency of full-text message search on a database holding a million messages,
+ * for the first page of results and for a page deep into them.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MessageSearchBenchmark {
+
+    private static final String TAG = "MessageSearchBenchmark";
+    private static final String TEST_DATABASE = "search-benchmark.db";
+    private static final int CONTACTS = 200;
+    private static final int MESSAGES = 1_000_000;
+    private static final int VOCABULARY = 5000;
+    private static final int WORDS_PER_MESSAGE = 8;
+    private static final int PAGE_SIZE = 30;
+    private static final int DEEP_PAGE = 20;
+    private static final int RUNS = 15;
+    private static final long MAX_MEDIAN_MS = 250;
+
+    /**
+     * A word seeded in one message out of ten thousand, to measure rare matches.
+     */
+    private static final String RARE_WORD = "zanzibar";
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DATABASE);
+        dbHelper = new DatabaseHelper(context, TEST_DATABASE);
+        seed(dbHelper.getWritableDatabase());
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void searchLatency_onAMillionMessages() {
+        List<String> queries = Arrays.asList(
+                word(0),                   // most frequent word
+                word(VOCABULARY / 2),      // average word
+                RARE_WORD,                 // rare word
+                word(0) + " " + word(1),   // two frequent words
+                word(3).substring(0, 3)    // prefix
+        );
+
+        for (String query : queries) {
+            long[] firstPage = new long[RUNS];
+            long[] deepPage = new long[RUNS];
+            for (int run = 0; run < RUNS; run++) {
+                long start = SystemClock.elapsedRealtime();
+                List<SearchResult> page = dbHelper.searchMessages(query, DatabaseHelper.FIRST_RESULT, PAGE_SIZE);
+                firstPage[run] = SystemClock.elapsedRealtime() - start;
+                assertFalse("No result for \"" + query + "\"", page.isEmpty());
+
+                start = SystemClock.elapsedRealtime();
+                for (int i = 1; i < DEEP_PAGE && page.size() == PAGE_SIZE; i++) {
+                    int lastId = page.get(page.size() - 1).getMessageId();
+                    page = dbHelper.searchMessages(query, lastId, PAGE_SIZE);
+                    if (!page.isEmpty()) {
+                        assertTrue("Pages must not overlap", page.get(0).getMessageId() < lastId);
+                    }
+                }
+                deepPage[run] = (SystemClock.elapsedRealtime() - start) / (DEEP_PAGE - 1);
+            }
+
+            Arrays.sort(firstPage);
+            Arrays.sort(deepPage);
+            Log.i(TAG, "\"" + query + "\": first page median " + median(firstPage) + " ms (p95 "
+                    + percentile95(firstPage) + " ms), next pages median " + median(deepPage) + " ms (p95 "
+                    + percentile95(deepPage) + " ms)");
+            assertTrue("First page of \"" + query + "\" too slow", median(firstPage) < MAX_MEDIAN_MS);
+        }
+    }
+
+    /**
+     * Fills the database with messages made of words drawn from a skewed vocabulary,
+     * so that a few words are very frequent and most are rare, as in real conversations.
+     * Messages go through the triggers, so they are indexed as the app would index them.
+     *
+     * @param db The database instance.
+     */
+    private void seed(SQLiteDatabase db) {
+        long start = SystemClock.elapsedRealtime();
+        Random random = new Random(42);
+        db.beginTransaction();
+        try {
+            SQLiteStatement insertContact = db.compileStatement(
+                    "INSERT INTO contacts (firstname, telNumber) VALUES (?, ?)");
+            for (int i = 0; i < CONTACTS; i++) {
+                insertContact.bindString(1, "Contact " + i);
+                insertContact.bindString(2, String.format("06%08d", i));
+                insertContact.executeInsert();
+            }
+
+            SQLiteStatement insertMessage = db.compileStatement(
+                    "INSERT INTO messages (contactId, msg, date, isSend) VALUES (?, ?, ?, ?)");
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < MESSAGES; i++) {
+                text.setLength(0);
+                for (int w = 0; w < WORDS_PER_MESSAGE; w++) {
+                    // Squaring a uniform draw skews it towards the first words of the vocabulary.
+                    double draw = random.nextDouble();
+                    text.append(word((int) (draw * draw * VOCABULARY))).append(' ');
+                }
+                if (i % 10_000 == 0) {
+                    text.append(RARE_WORD);
+                }
+                insertMessage.bindLong(1, 1 + (i % CONTACTS));
+                insertMessage.bindString(2, text.toString());
+                insertMessage.bindLong(3, 1_600_000_000_000L + i * 1000L);
+                insertMessage.bindLong(4, i % 2);
+                insertMessage.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.i(TAG, "Seeded and indexed " + MESSAGES + " messages in " + (SystemClock.elapsedRealtime() - start) + " ms");
+    }
+
+    /**
+     * Builds a deterministic, pronounceable word for every index of the vocabulary.
+     *
+     * @param index The index of the word in the vocabulary.
+     * @return The word, unique to its index.
+     */
+    private static String word(int index) {
+        String consonants = "bcdfglmnprstv";
+        String vowels = "aeiou";
+        StringBuilder word = new StringBuilder();
+        // The offset makes every word at least four letters long.
+        int value = index + consonants.length() * vowels.length() * consonants.length();
+        while (value > 0) {
+            word.append(consonants.charAt(value % consonants.length()));
+            value /= consonants.length();
+            word.append(vowels.charAt(value % vowels.length()));
+            value /= vowels.length();
+        }
+        return word.toString();
+    }
+
+    private static long median(long[] sorted) {
+        return sorted[sorted.length / 2];
+    }
+
+    private static long percentile95(long[] sorted) {
+        return sorted[(int) Math.ceil(sorted.length * 0.95) - 1];
+    }
+}
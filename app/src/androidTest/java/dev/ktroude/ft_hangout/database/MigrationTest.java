@@ -0,0 +1,190 @@
+package dev.ktroude.ft_hangout.database;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import dev.ktroude.ft_hangout.utils.PhoneNumberNormalizer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Upgrades databases seeded at every past schema version to the current one,
+ * checking that no row is lost and logging how long each upgrade and each step takes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigrationTest {
+
+    private static final String TAG = "MigrationTest";
+    private static final String TEST_DATABASE = "migration-test.db";
+    private static final int SEEDED_CONTACTS = 200;
+    private static final int SEEDED_MESSAGES = 500_000;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DATABASE);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void upgradeFromEveryPastVersion_keepsAllRows() {
+        for (int version = 1; version < DatabaseHelper.DATABASE_VERSION; version++) {
+            seedDatabaseAt(version);
+
+            DatabaseHelper helper = new DatabaseHelper(context, TEST_DATABASE);
+            long start = SystemClock.elapsedRealtime();
+            SQLiteDatabase db = helper.getWritableDatabase();
+            long elapsed = SystemClock.elapsedRealtime() - start;
+            Log.i(TAG, "Upgrade " + version + " -> " + DatabaseHelper.DATABASE_VERSION
+                    + " with " + SEEDED_MESSAGES + " messages took " + elapsed + " ms");
+
+            assertEquals(DatabaseHelper.DATABASE_VERSION, db.getVersion());
+            if (version >= 7) {
+                // Seeded rows bypass DatabaseHelper, so their summaries are built as the app would have.
+                helper.rebuildConversations();
+            }
+            assertEquals(SEEDED_CONTACTS, DatabaseUtils.queryNumEntries(db, "contacts"));
+            assertEquals(SEEDED_MESSAGES, DatabaseUtils.queryNumEntries(db, "messages"));
+            assertEquals(SEEDED_MESSAGES, DatabaseUtils.longForQuery(db,
+                    "SELECT COUNT(*) FROM messages_fts WHERE messages_fts MATCH 'seeded'", null));
+            assertEquals(SEEDED_MESSAGES, DatabaseUtils.longForQuery(db,
+                    "SELECT SUM(messageCount) FROM conversations", null));
+            assertEquals(0, DatabaseUtils.queryNumEntries(db, "contacts", "numberKey IS NULL"));
+            assertEquals("+33600000000", DatabaseUtils.stringForQuery(db,
+                    "SELECT numberKey FROM contacts WHERE telNumber = '0600000000'", null));
+            // Messages written before the outbox existed are not tracked, and nothing is resent.
+            assertEquals(0, DatabaseUtils.queryNumEntries(db, "messages", "status != 0"));
+            assertEquals(0, DatabaseUtils.queryNumEntries(db, "sqlite_master",
+                    "type = 'index' AND name = 'index_contacts_telNumber'"));
+
+            helper.close();
+            context.deleteDatabase(TEST_DATABASE);
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion1_reportsEveryStep() {
+        seedDatabaseAt(1);
+
+        SQLiteDatabase db = context.openOrCreateDatabase(TEST_DATABASE, Context.MODE_PRIVATE, null);
+        long total = 0;
+        // One transaction around every step, as SQLiteOpenHelper does around onUpgrade.
+        db.beginTransaction();
+        try {
+            for (Migration migration : Migrations.ALL) {
+                long start = SystemClock.elapsedRealtime();
+                Migrations.run(context, db, migration.startVersion, migration.endVersion);
+                long elapsed = SystemClock.elapsedRealtime() - start;
+                total += elapsed;
+                Log.i(TAG, "Step " + migration.startVersion + " -> " + migration.endVersion
+                        + " with " + SEEDED_MESSAGES + " messages took " + elapsed + " ms");
+            }
+            db.setVersion(DatabaseHelper.DATABASE_VERSION);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.i(TAG, "Every step from version 1 took " + total + " ms");
+
+        assertEquals(SEEDED_MESSAGES, DatabaseUtils.queryNumEntries(db, "messages"));
+        assertEquals(SEEDED_MESSAGES, DatabaseUtils.longForQuery(db,
+                "SELECT SUM(messageCount) FROM conversations", null));
+        db.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void run_withoutRegisteredStep_fails() {
+        SQLiteDatabase db = context.openOrCreateDatabase(TEST_DATABASE, Context.MODE_PRIVATE, null);
+        try {
+            Migrations.run(context, db, 0, DatabaseHelper.DATABASE_VERSION);
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Creates a database at the given version: the original schema, migrated up to {@code version},
+     * then filled with {@link #SEEDED_CONTACTS} contacts and {@link #SEEDED_MESSAGES} messages.
+     *
+     * @param version The schema version to stop at.
+     */
+    private void seedDatabaseAt(int version) {
+        SQLiteDatabase db = context.openOrCreateDatabase(TEST_DATABASE, Context.MODE_PRIVATE, null);
+        db.beginTransaction();
+        try {
+            createVersion1Schema(db);
+            Migrations.run(context, db, 1, version);
+
+            // From version 8 on, the app writes the lookup key of every number it stores.
+            boolean withNumberKey = version >= 8;
+            SQLiteStatement insertContact = db.compileStatement(withNumberKey
+                    ? "INSERT INTO contacts (firstname, telNumber, numberKey) VALUES (?, ?, ?)"
+                    : "INSERT INTO contacts (firstname, telNumber) VALUES (?, ?)");
+            for (int i = 0; i < SEEDED_CONTACTS; i++) {
+                String telNumber = String.format("06%08d", i);
+                insertContact.bindString(1, "Contact " + i);
+                insertContact.bindString(2, telNumber);
+                if (withNumberKey) {
+                    insertContact.bindString(3, PhoneNumberNormalizer.toKey(telNumber));
+                }
+                insertContact.executeInsert();
+            }
+
+            SQLiteStatement insertMessage = db.compileStatement(
+                    "INSERT INTO messages (contactId, msg, date, isSend) VALUES (?, ?, ?, ?)");
+            for (int i = 0; i < SEEDED_MESSAGES; i++) {
+                insertMessage.bindLong(1, 1 + (i % SEEDED_CONTACTS));
+                insertMessage.bindString(2, "Seeded message number " + i);
+                insertMessage.bindLong(3, 1_600_000_000_000L + i * 1000L);
+                insertMessage.bindLong(4, i % 2);
+                insertMessage.executeInsert();
+            }
+            db.setVersion(version);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.close();
+    }
+
+    /**
+     * Recreates the schema shipped with database version 1.
+     *
+     * @param db The database instance.
+     */
+    private void createVersion1Schema(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE contacts (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "firstname TEXT NOT NULL, " +
+                "lastname TEXT, " +
+                "email TEXT, " +
+                "address TEXT, " +
+                "telNumber TEXT NOT NULL, " +
+                "picture TEXT)");
+        db.execSQL("CREATE TABLE messages (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "contactId INTEGER NOT NULL, " +
+                "msg TEXT NOT NULL, " +
+                "date INTEGER NOT NULL, " +
+                "isSend INTEGER NOT NULL, " +
+                "FOREIGN KEY(contactId) REFERENCES contacts(id))");
+    }
+}
@@ -0,0 +1,110 @@
+package dev.ktroude.ft_hangout.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs EXPLAIN QUERY PLAN on every query issued by DatabaseHelper and fails
+ * if one of them has to scan a whole table. Virtual table lookups through the full-text index
+ * are reported as scans too, so only those using index 0, the full scan of the virtual table, fail.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryPlanTest {
+
+    private static final String TEST_DATABASE = "query-plan-test.db";
+
+    /**
+     * Queries whose purpose is to return every row of a table; a scan is expected for them,
+     * but they must still not need a temporary sort.
+     */
+    private static final Set<String> FULL_LISTINGS = new HashSet<>(Arrays.asList(
+            DatabaseHelper.SQL_INBOX,
+            DatabaseHelper.SQL_EXPECTED_CONVERSATIONS
+    ));
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DATABASE);
+        dbHelper = new DatabaseHelper(context, TEST_DATABASE);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void numberSearch_usesTheNumberKeyIndex() {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        boolean indexed = false;
+        try (Cursor plan = db.rawQuery("EXPLAIN QUERY PLAN " + DatabaseHelper.SQL_FILTER_CONTACT_SUMMARIES_BY_NUMBER,
+                new String[]{"+33612", "+33613"})) {
+            int detailColumn = plan.getColumnIndexOrThrow("detail");
+            while (plan.moveToNext()) {
+                indexed |= plan.getString(detailColumn).contains("index_contacts_numberKey");
+            }
+        }
+        assertTrue(indexed);
+    }
+
+    @Test
+    public void noQueryScansAWholeTable() {
+        Map<String, String[]> queries = new LinkedHashMap<>();
+        queries.put(DatabaseHelper.SQL_CONTACT_BY_ID, new String[]{"1"});
+        queries.put(DatabaseHelper.SQL_CONTACT_ID_BY_NUMBER, new String[]{"+33612345678"});
+        queries.put(DatabaseHelper.SQL_FILTER_CONTACT_SUMMARIES, new String[]{"jea%"});
+        queries.put(DatabaseHelper.SQL_FILTER_CONTACT_SUMMARIES_BY_NUMBER, new String[]{"+33612", "+33613"});
+        queries.put(DatabaseHelper.SQL_CONTACT_PICTURE, new String[]{"1"});
+        queries.put(DatabaseHelper.SQL_PICTURE_IN_USE, new String[]{"0123456789abcdef"});
+        queries.put(DatabaseHelper.SQL_MESSAGES_FROM_CONTACT, new String[]{"1"});
+        queries.put(DatabaseHelper.SQL_MESSAGES_PAGE, new String[]{"1", "1700000000000", "1700000000000", "42", "50"});
+        queries.put(DatabaseHelper.SQL_MESSAGES_PAGE_AFTER, new String[]{"1", "1700000000000", "1700000000000", "42", "50"});
+        queries.put(DatabaseHelper.SQL_SEARCH_MESSAGES, new String[]{"hello*", "2147483647", "30"});
+        queries.put(DatabaseHelper.SQL_INBOX, null);
+        queries.put(DatabaseHelper.SQL_UPDATE_CONVERSATION, new String[]{"1", "1700000000000", "42", "Hello", "1"});
+        queries.put(DatabaseHelper.SQL_MARK_CONVERSATION_READ, new String[]{"1"});
+        queries.put(DatabaseHelper.SQL_EXPECTED_CONVERSATIONS, null);
+        queries.put(DatabaseHelper.SQL_OUTBOX, new String[]{"1", "1"});
+        queries.put(DatabaseHelper.SQL_UPDATE_MESSAGE_STATUS, new String[]{"3", "42", "2"});
+        queries.put(DatabaseHelper.SQL_UPDATE_PENDING_PARTS, new String[]{"2", "42"});
+        queries.put(DatabaseHelper.SQL_RECORD_SEND_FAILURE, new String[]{"1", "2", "1700000000000", "42"});
+
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        for (Map.Entry<String, String[]> query : queries.entrySet()) {
+            boolean fullListing = FULL_LISTINGS.contains(query.getKey());
+            try (Cursor plan = db.rawQuery("EXPLAIN QUERY PLAN " + query.getKey(), query.getValue())) {
+                int detailColumn = plan.getColumnIndexOrThrow("detail");
+                while (plan.moveToNext()) {
+                    String detail = plan.getString(detailColumn);
+                    boolean fullTextLookup = detail.contains("VIRTUAL TABLE INDEX")
+                            && !detail.contains("VIRTUAL TABLE INDEX 0:");
+                    assertFalse("Full scan in \"" + query.getKey() + "\": " + detail,
+                            detail.startsWith("SCAN") && !fullTextLookup && !fullListing);
+                    assertFalse("Temporary sort in \"" + query.getKey() + "\": " + detail, detail.contains("TEMP B-TREE"));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package dev.ktroude.ft_hangout.receivers;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stands in for the SmsManager: records the messages handed to it instead of sending them,
+ * and can refuse them as the real one does without the SEND_SMS permission.
+ * Tests report the outcome of each message to the outbox themselves.
+ */
+class FakeSmsGateway implements SmsGateway {
+
+    /**
+     * A message handed to the gateway.
+     */
+    static final class Sent {
+        final int messageId;
+        final String destination;
+        final String text;
+        final long time;
+
+        Sent(int messageId, String destination, String text, long time) {
+            this.messageId = messageId;
+            this.destination = destination;
+            this.text = text;
+            this.time = time;
+        }
+    }
+
+    private final BlockingQueue<Sent> sent = new LinkedBlockingQueue<>();
+    private volatile int parts = 1;
+    private volatile boolean refusing = false;
+
+    @Override
+    public int send(int messageId, String destination, String text) {
+        if (refusing) {
+            throw new SecurityException("Sending SMS message: caller does not have android.permission.SEND_SMS");
+        }
+        sent.add(new Sent(messageId, destination, text, System.currentTimeMillis()));
+        return parts;
+    }
+
+    /**
+     * @param parts The number of parts every following message is split into.
+     */
+    void setParts(int parts) {
+        this.parts = parts;
+    }
+
+    /**
+     * @param refusing Whether the following messages are refused.
+     */
+    void setRefusing(boolean refusing) {
+        this.refusing = refusing;
+    }
+
+    /**
+     * Waits for the next message handed to the gateway.
+     *
+     * @param timeoutMs The maximum time to wait.
+     * @return The message, or null if none was sent in time.
+     */
+    Sent poll(long timeoutMs) throws InterruptedException {
+        return sent.poll(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,106 @@
+package dev.ktroude.ft_hangout.receivers;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import dev.ktroude.ft_hangout.database.DatabaseHelper;
+import dev.ktroude.ft_hangout.utils.EventBus;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pushes 10k synthetic PDUs through SmsIngestQueue, one broadcast per PDU, and checks that
+ * every concatenated message is stored once, in arrival order, off the calling thread.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SmsIngestQueueTest {
+
+    private static final String TAG = "SmsIngestQueueTest";
+    private static final String TEST_DATABASE = "ingest-queue-test.db";
+    private static final int PDUS = 10_000;
+    private static final int SEGMENTS_PER_MESSAGE = 2;
+    private static final int SENDERS = 20;
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+    private SmsIngestQueue queue;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DATABASE);
+        dbHelper = new DatabaseHelper(context, TEST_DATABASE);
+        queue = new SmsIngestQueue(dbHelper, new EventBus());
+    }
+
+    @After
+    public void tearDown() {
+        queue.shutdown();
+        dbHelper.close();
+        context.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void tenThousandPdus_areStoredInOrder() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(PDUS);
+        Thread caller = Thread.currentThread();
+        Thread[] ingestThread = new Thread[1];
+
+        long start = SystemClock.elapsedRealtime();
+        for (int pdu = 0; pdu < PDUS; pdu++) {
+            int message = pdu / SEGMENTS_PER_MESSAGE;
+            int sequence = pdu % SEGMENTS_PER_MESSAGE + 1;
+            String sender = String.format("06%08d", message % SENDERS);
+            String body = sequence == 1 ? "#" + message + " " : "end";
+
+            queue.enqueue(Collections.singletonList(new SmsReassembler.Segment(
+                    sender, message % 256, SEGMENTS_PER_MESSAGE, sequence, body, 1_700_000_000_000L + message)), () -> {
+                ingestThread[0] = Thread.currentThread();
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.MINUTES));
+        long elapsed = SystemClock.elapsedRealtime() - start;
+
+        Log.i(TAG, PDUS + " PDUs ingested in " + elapsed + " ms, max queue depth " + queue.getMaxQueueDepth()
+                + ", latency avg " + queue.getAverageLatencyMs() + " ms, max " + queue.getMaxLatencyMs() + " ms");
+
+        assertNotSame(caller, ingestThread[0]);
+        assertEquals(PDUS, queue.getProcessedBatches());
+        assertEquals(0, queue.getQueueDepth());
+        assertTrue(queue.getMaxQueueDepth() > 0);
+
+        int messages = PDUS / SEGMENTS_PER_MESSAGE;
+        assertEquals(SENDERS, DatabaseUtils.queryNumEntries(dbHelper.getReadableDatabase(), "contacts"));
+        assertEquals(messages, DatabaseUtils.queryNumEntries(dbHelper.getReadableDatabase(), "messages"));
+
+        Map<Integer, Integer> lastMessageByContact = new HashMap<>();
+        try (Cursor cursor = dbHelper.getReadableDatabase().rawQuery(
+                "SELECT contactId, msg FROM messages ORDER BY id", null)) {
+            while (cursor.moveToNext()) {
+                String msg = cursor.getString(1);
+                assertTrue(msg, msg.endsWith(" end"));
+                int number = Integer.parseInt(msg.substring(1, msg.indexOf(' ')));
+                Integer previous = lastMessageByContact.put(cursor.getInt(0), number);
+                assertTrue("Messages must be stored in arrival order", previous == null || previous < number);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package dev.ktroude.ft_hangout.receivers;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import dev.ktroude.ft_hangout.database.DatabaseHelper;
+import dev.ktroude.ft_hangout.models.IncomingSms;
+import dev.ktroude.ft_hangout.models.Message;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures how many messages per second SmsIngestor stores when fed intents
+ * the size of a long, six-segment SMS.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SmsIngestorThroughputTest {
+
+    private static final String TAG = "SmsIngestorThroughput";
+    private static final String TEST_DATABASE = "ingest-test.db";
+    private static final int SENDERS = 50;
+    private static final int MESSAGES_PER_INTENT = 6;
+    private static final int INTENTS = 1000;
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DATABASE);
+        dbHelper = new DatabaseHelper(context, TEST_DATABASE);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void ingest_measuresMessagesPerSecond() {
+        SmsIngestor ingestor = new SmsIngestor(dbHelper);
+        int newContactBatches = 0;
+
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < INTENTS; i++) {
+            String sender = String.format("06%08d", i % SENDERS);
+            List<IncomingSms> batch = new ArrayList<>(MESSAGES_PER_INTENT);
+            for (int segment = 0; segment < MESSAGES_PER_INTENT; segment++) {
+                batch.add(new IncomingSms(sender, "Segment " + segment + " of intent " + i, 1_700_000_000_000L + i));
+            }
+
+            SmsIngestor.Result result = ingestor.ingest(batch);
+            assertEquals(MESSAGES_PER_INTENT, result.getMessages().size());
+            int contactId = result.getMessages().get(0).getContactId();
+            for (Message message : result.getMessages()) {
+                assertEquals(contactId, (int) message.getContactId());
+            }
+            if (!result.getNewContacts().isEmpty()) {
+                assertEquals(contactId, (int) result.getNewContacts().get(0).getId());
+                newContactBatches++;
+            }
+        }
+        long elapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+
+        int total = INTENTS * MESSAGES_PER_INTENT;
+        Log.i(TAG, "Ingested " + total + " messages in " + elapsed + " ms ("
+                + (total * 1000L / elapsed) + " messages/s)");
+
+        assertEquals(SENDERS, newContactBatches);
+        assertEquals(SENDERS, DatabaseUtils.queryNumEntries(dbHelper.getReadableDatabase(), "contacts"));
+        assertEquals(total, DatabaseUtils.queryNumEntries(dbHelper.getReadableDatabase(), "messages"));
+    }
+}
@@ -0,0 +1,253 @@
+package dev.ktroude.ft_hangout.receivers;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import dev.ktroude.ft_hangout.database.DatabaseHelper;
+import dev.ktroude.ft_hangout.models.Contact;
+import dev.ktroude.ft_hangout.models.Message;
+import dev.ktroude.ft_hangout.utils.EventBus;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives SmsOutbox with a fake gateway, reporting the outcome of each message by hand, and checks
+ * that messages leave one at a time in order, that failures are retried with a growing delay,
+ * and that every status change is stored and published.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SmsOutboxTest {
+
+    private static final String TEST_DATABASE = "outbox-test.db";
+    private static final long BACKOFF_MS = 50;
+    private static final long TIMEOUT_MS = 300;
+    private static final long WAIT_MS = 2000;
+
+    private static final class Owner implements LifecycleOwner {
+        private final LifecycleRegistry registry = new LifecycleRegistry(this);
+
+        @NonNull
+        @Override
+        public Lifecycle getLifecycle() {
+            return registry;
+        }
+    }
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+    private EventBus eventBus;
+    private FakeSmsGateway gateway;
+    private SmsOutbox outbox;
+    private int contactId;
+    private final List<MessageStatusEvent> events = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DATABASE);
+        dbHelper = new DatabaseHelper(context, TEST_DATABASE);
+        contactId = dbHelper.addContact(new Contact(0, "Alice", "", "", "", "0600000001", ""));
+        eventBus = new EventBus();
+        gateway = new FakeSmsGateway();
+        outbox = new SmsOutbox(dbHelper, eventBus, gateway, BACKOFF_MS, TIMEOUT_MS);
+
+        Owner owner = new Owner();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            owner.registry.setCurrentState(Lifecycle.State.RESUMED);
+            eventBus.subscribe(owner, MessageStatusEvent.class, events::add);
+        });
+    }
+
+    @After
+    public void tearDown() {
+        outbox.shutdown();
+        dbHelper.close();
+        context.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void queuedMessages_areSentOneAtATimeInOrder() throws InterruptedException {
+        int[] ids = {enqueue("first"), enqueue("second"), enqueue("third")};
+
+        for (int id : ids) {
+            FakeSmsGateway.Sent sent = gateway.poll(WAIT_MS);
+            assertNotNull(sent);
+            assertEquals(id, sent.messageId);
+            assertEquals("0600000001", sent.destination);
+            assertEquals(Message.STATUS_SENDING, status(id));
+            // The next message waits until this one is reported.
+            assertNull(gateway.poll(100));
+            reportSent(id, true);
+            assertEquals(Message.STATUS_SENT, status(id));
+        }
+
+        reportDelivered(ids[0], true);
+        reportDelivered(ids[1], false);
+        assertEquals(Message.STATUS_DELIVERED, status(ids[0]));
+        assertEquals(Message.STATUS_FAILED, status(ids[1]));
+        assertEquals(Message.STATUS_SENT, status(ids[2]));
+        assertEquals(3, outbox.getSentCount());
+
+        assertEquals(Arrays.asList(Message.STATUS_SENDING, Message.STATUS_SENT, Message.STATUS_DELIVERED),
+                publishedStatuses(ids[0]));
+        assertEquals(Arrays.asList(Message.STATUS_SENDING, Message.STATUS_SENT, Message.STATUS_FAILED),
+                publishedStatuses(ids[1]));
+    }
+
+    @Test
+    public void failedMessage_isRetriedWithBackoff_thenGivenUp() throws InterruptedException {
+        int failing = enqueue("failing");
+        int next = enqueue("next");
+
+        long previousAttempt = 0;
+        for (int attempt = 1; attempt <= SmsOutbox.MAX_ATTEMPTS; attempt++) {
+            FakeSmsGateway.Sent sent = gateway.poll(WAIT_MS);
+            assertNotNull(sent);
+            assertEquals("Later messages wait for the failing one", failing, sent.messageId);
+            if (attempt > 1) {
+                long delay = sent.time - previousAttempt;
+                assertTrue("Attempt " + attempt + " came after " + delay + " ms",
+                        delay >= outbox.getBackoffMs(attempt - 1));
+            }
+            previousAttempt = sent.time;
+            reportSent(failing, false);
+        }
+
+        assertEquals(Message.STATUS_FAILED, status(failing));
+        assertEquals(SmsOutbox.MAX_ATTEMPTS, DatabaseUtils.longForQuery(dbHelper.getReadableDatabase(),
+                "SELECT attempts FROM messages WHERE id = ?", new String[]{String.valueOf(failing)}));
+        assertEquals(SmsOutbox.MAX_ATTEMPTS, outbox.getFailedAttemptCount());
+
+        FakeSmsGateway.Sent sent = gateway.poll(WAIT_MS);
+        assertNotNull(sent);
+        assertEquals(next, sent.messageId);
+    }
+
+    @Test
+    public void refusedMessage_isSentOnceAllowed() throws InterruptedException {
+        gateway.setRefusing(true);
+        int id = enqueue("refused");
+        long deadline = SystemClock.elapsedRealtime() + WAIT_MS;
+        while (outbox.getFailedAttemptCount() == 0 && SystemClock.elapsedRealtime() < deadline) {
+            SystemClock.sleep(10);
+        }
+        assertTrue(outbox.getFailedAttemptCount() > 0);
+        gateway.setRefusing(false);
+
+        FakeSmsGateway.Sent sent = gateway.poll(WAIT_MS);
+        assertNotNull(sent);
+        assertEquals(id, sent.messageId);
+        reportSent(id, true);
+        assertEquals(Message.STATUS_SENT, status(id));
+    }
+
+    @Test
+    public void multipartMessage_isSentOnceEveryPartIsReported() throws InterruptedException {
+        gateway.setParts(3);
+        int id = enqueue("long");
+        assertNotNull(gateway.poll(WAIT_MS));
+
+        reportSent(id, true);
+        reportSent(id, true);
+        assertEquals(Message.STATUS_SENDING, status(id));
+        reportSent(id, true);
+        assertEquals(Message.STATUS_SENT, status(id));
+    }
+
+    @Test
+    public void messageLeftInFlight_isRecoveredByTheNextProcess() throws InterruptedException {
+        gateway.setParts(3);
+        int id = enqueue("unreported");
+        assertNotNull(gateway.poll(WAIT_MS));
+        // Without a report, the attempt times out and the message is sent again.
+        FakeSmsGateway.Sent retry = gateway.poll(TIMEOUT_MS + BACKOFF_MS + WAIT_MS);
+        assertNotNull(retry);
+        assertEquals(id, retry.messageId);
+        reportSent(id, true);
+
+        // The process dies before the other reports arrive; the next one waits for them instead of resending.
+        outbox.shutdown();
+        outbox = new SmsOutbox(dbHelper, eventBus, gateway, BACKOFF_MS, TIMEOUT_MS);
+        outbox.start();
+        reportSent(id, true);
+        assertEquals(Message.STATUS_SENDING, status(id));
+        reportSent(id, true);
+        assertEquals(Message.STATUS_SENT, status(id));
+        assertNull(gateway.poll(TIMEOUT_MS + BACKOFF_MS));
+    }
+
+    @Test
+    public void reportAfterTimeout_marksTheRequeuedMessageSent() throws InterruptedException {
+        // A long backoff keeps the message queued while its report comes in.
+        outbox.shutdown();
+        outbox = new SmsOutbox(dbHelper, eventBus, gateway, 60_000, TIMEOUT_MS);
+        int id = enqueue("late");
+        assertNotNull(gateway.poll(WAIT_MS));
+        long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MS + WAIT_MS;
+        while (status(id) != Message.STATUS_QUEUED && SystemClock.elapsedRealtime() < deadline) {
+            SystemClock.sleep(10);
+        }
+        assertEquals(Message.STATUS_QUEUED, status(id));
+
+        reportSent(id, true);
+        assertEquals(Message.STATUS_SENT, status(id));
+        assertEquals(1, outbox.getSentCount());
+        assertEquals(Arrays.asList(Message.STATUS_SENDING, Message.STATUS_QUEUED, Message.STATUS_SENT),
+                publishedStatuses(id));
+    }
+
+    private int enqueue(String text) {
+        int id = outbox.enqueue(new Message(0, contactId, text, System.currentTimeMillis(), true));
+        assertTrue(id > 0);
+        return id;
+    }
+
+    private void reportSent(int messageId, boolean success) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        outbox.onSent(messageId, success, done::countDown);
+        assertTrue(done.await(WAIT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    private void reportDelivered(int messageId, boolean delivered) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        outbox.onDelivered(messageId, delivered, done::countDown);
+        assertTrue(done.await(WAIT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    private int status(int messageId) {
+        return (int) DatabaseUtils.longForQuery(dbHelper.getReadableDatabase(),
+                "SELECT status FROM messages WHERE id = ?", new String[]{String.valueOf(messageId)});
+    }
+
+    private List<Integer> publishedStatuses(int messageId) {
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        List<Integer> statuses = new ArrayList<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            for (MessageStatusEvent event : events) {
+                if (event.getMessageId() == messageId) {
+                    statuses.add(event.getStatus());
+                }
+            }
+        });
+        return statuses;
+    }
+}
@@ -0,0 +1,55 @@
+package dev.ktroude.ft_hangout.utils;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the picture cache is bounded by Bitmap memory and releases it when asked to.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AvatarCacheTest {
+
+    private static final int PICTURE_BYTES = 100 * 100 * 4;
+
+    @Test
+    public void size_isCountedInBitmapBytes() {
+        AvatarCache cache = new AvatarCache(3 * PICTURE_BYTES);
+        for (int i = 0; i < 4; i++) {
+            cache.put("a" + i, picture());
+        }
+
+        assertEquals(3 * PICTURE_BYTES, cache.size());
+        assertNull(cache.get("a0"));
+        assertNotNull(cache.get("a3"));
+        assertEquals(50, cache.getHitRate());
+    }
+
+    @Test
+    public void trimMemory_shrinksThenEmptiesTheCache() {
+        AvatarCache cache = new AvatarCache(4 * PICTURE_BYTES);
+        for (int i = 0; i < 4; i++) {
+            cache.put("a" + i, picture());
+        }
+
+        cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(4 * PICTURE_BYTES, cache.size());
+
+        cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals(2 * PICTURE_BYTES, cache.size());
+        assertNotNull("Most recent pictures are kept", cache.get("a3"));
+
+        cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(0, cache.size());
+    }
+
+    private static Bitmap picture() {
+        return Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+    }
+}
@@ -0,0 +1,149 @@
+package dev.ktroude.ft_hangout.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.RadialGradient;
+import android.graphics.Shader;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the avatar encodings on photo-like pictures at avatar size: encoded size,
+ * encode time and decode time, the latter being paid every time a picture is bound.
+ * The results are logged as a table, to choose {@link AvatarEncoder#DEFAULT}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AvatarEncodingBenchmark {
+
+    private static final String TAG = "AvatarEncodingBenchmark";
+    private static final int RUNS = 15;
+
+    private static final List<AvatarEncoder> ENCODERS = Arrays.asList(
+            AvatarEncoder.PNG,
+            new AvatarEncoder(AvatarEncoder.Format.JPEG, 90),
+            new AvatarEncoder(AvatarEncoder.Format.JPEG, 80),
+            new AvatarEncoder(AvatarEncoder.Format.WEBP_LOSSY, 90),
+            new AvatarEncoder(AvatarEncoder.Format.WEBP_LOSSY, 80),
+            new AvatarEncoder(AvatarEncoder.Format.WEBP_LOSSY, 70)
+    );
+
+    @Test
+    public void encodings_onPhotoLikePictures() {
+        Map<String, Bitmap> photos = createPhotos();
+        for (Map.Entry<String, Bitmap> photo : photos.entrySet()) {
+            Log.i(TAG, String.format("%-10s %-14s %9s %11s %11s", photo.getKey(), "encoder", "bytes", "encode ms", "decode ms"));
+            int pngSize = 0;
+            for (AvatarEncoder encoder : ENCODERS) {
+                long[] encodeTimes = new long[RUNS];
+                long[] decodeTimes = new long[RUNS];
+                byte[] encoded = null;
+                for (int run = 0; run < RUNS; run++) {
+                    long start = SystemClock.elapsedRealtimeNanos();
+                    encoded = encoder.encode(photo.getValue());
+                    encodeTimes[run] = SystemClock.elapsedRealtimeNanos() - start;
+
+                    start = SystemClock.elapsedRealtimeNanos();
+                    Bitmap decoded = BitmapFactory.decodeByteArray(encoded, 0, encoded.length);
+                    decodeTimes[run] = SystemClock.elapsedRealtimeNanos() - start;
+                    assertNotNull(encoder + " cannot be decoded", decoded);
+                    decoded.recycle();
+                }
+
+                Arrays.sort(encodeTimes);
+                Arrays.sort(decodeTimes);
+                Log.i(TAG, String.format("%-10s %-14s %9d %11.2f %11.2f", "", encoder, encoded.length,
+                        median(encodeTimes) / 1e6, median(decodeTimes) / 1e6));
+
+                if (encoder == AvatarEncoder.PNG) {
+                    pngSize = encoded.length;
+                }
+            }
+
+            int defaultSize = AvatarEncoder.DEFAULT.encode(photo.getValue()).length;
+            assertTrue("Default encoding of " + photo.getKey() + " is not much smaller than PNG",
+                    defaultSize < pngSize / 2);
+        }
+    }
+
+    /**
+     * Draws pictures that compress like photos: smooth lighting, soft shapes and sensor noise.
+     *
+     * @return The pictures by name, at avatar size.
+     */
+    private static Map<String, Bitmap> createPhotos() {
+        int size = ImageHelper.AVATAR_SIZE;
+        Random random = new Random(42);
+        Map<String, Bitmap> photos = new LinkedHashMap<>();
+
+        Bitmap portrait = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(portrait);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setShader(new LinearGradient(0, 0, 0, size, Color.rgb(70, 90, 120), Color.rgb(200, 190, 170), Shader.TileMode.CLAMP));
+        canvas.drawRect(0, 0, size, size, paint);
+        paint.setShader(new RadialGradient(size / 2f, size * 0.4f, size * 0.25f,
+                Color.rgb(230, 190, 160), Color.rgb(150, 100, 80), Shader.TileMode.CLAMP));
+        canvas.drawCircle(size / 2f, size * 0.4f, size * 0.22f, paint);
+        canvas.drawOval(size * 0.2f, size * 0.7f, size * 0.8f, size * 1.2f, paint);
+        addNoise(portrait, random, 6);
+        photos.put("portrait", portrait);
+
+        Bitmap landscape = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        canvas = new Canvas(landscape);
+        paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setShader(new LinearGradient(0, 0, 0, size / 2f, Color.rgb(90, 150, 230), Color.rgb(220, 230, 240), Shader.TileMode.CLAMP));
+        canvas.drawRect(0, 0, size, size / 2f, paint);
+        paint.setShader(new LinearGradient(0, size / 2f, 0, size, Color.rgb(60, 120, 50), Color.rgb(30, 70, 25), Shader.TileMode.CLAMP));
+        canvas.drawRect(0, size / 2f, size, size, paint);
+        paint.setShader(null);
+        for (int i = 0; i < 200; i++) {
+            paint.setColor(Color.rgb(30 + random.nextInt(60), 80 + random.nextInt(80), 20 + random.nextInt(40)));
+            canvas.drawCircle(random.nextInt(size), size / 2f + random.nextInt(size / 2), 2 + random.nextInt(8), paint);
+        }
+        addNoise(landscape, random, 10);
+        photos.put("landscape", landscape);
+
+        Bitmap lowLight = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        lowLight.eraseColor(Color.rgb(40, 35, 45));
+        addNoise(lowLight, random, 24);
+        photos.put("low-light", lowLight);
+
+        return photos;
+    }
+
+    private static void addNoise(Bitmap bitmap, Random random, int amplitude) {
+        int[] pixels = new int[bitmap.getWidth() * bitmap.getHeight()];
+        bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+        for (int i = 0; i < pixels.length; i++) {
+            int noise = random.nextInt(2 * amplitude + 1) - amplitude;
+            pixels[i] = Color.rgb(clamp(Color.red(pixels[i]) + noise),
+                    clamp(Color.green(pixels[i]) + noise),
+                    clamp(Color.blue(pixels[i]) + noise));
+        }
+        bitmap.setPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static long median(long[] sorted) {
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,92 @@
+package dev.ktroude.ft_hangout.utils;
+
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that events reach the subscribers of their type on the main thread,
+ * and that a destroyed subscriber neither receives events nor stays registered.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EventBusTest {
+
+    private static final class Owner implements LifecycleOwner {
+        private final LifecycleRegistry registry = new LifecycleRegistry(this);
+
+        @NonNull
+        @Override
+        public Lifecycle getLifecycle() {
+            return registry;
+        }
+    }
+
+    @Test
+    public void events_areDeliveredByTypeOnTheMainThread() throws InterruptedException {
+        EventBus bus = new EventBus();
+        Owner owner = new Owner();
+        List<Object> strings = new ArrayList<>();
+        List<Object> numbers = new ArrayList<>();
+        List<Boolean> onMainThread = new ArrayList<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            owner.registry.setCurrentState(Lifecycle.State.RESUMED);
+            bus.subscribe(owner, String.class, event -> {
+                strings.add(event);
+                onMainThread.add(Looper.myLooper() == Looper.getMainLooper());
+            });
+            bus.subscribe(owner, Number.class, numbers::add);
+        });
+
+        Thread publisher = new Thread(() -> {
+            bus.publish("hello");
+            bus.publish(42);
+            bus.publish(4.2);
+        });
+        publisher.start();
+        publisher.join();
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+        assertEquals(Collections.singletonList("hello"), strings);
+        assertEquals(Arrays.asList(42, 4.2), numbers);
+        assertEquals(Collections.singletonList(true), onMainThread);
+    }
+
+    @Test
+    public void destroyedOwner_isUnsubscribed() {
+        EventBus bus = new EventBus();
+        Owner owner = new Owner();
+        List<String> received = new ArrayList<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            owner.registry.setCurrentState(Lifecycle.State.CREATED);
+            bus.subscribe(owner, String.class, received::add);
+            assertEquals(1, bus.getSubscriberCount());
+
+            // Published before the destruction, delivered after it.
+            bus.publish("late");
+            owner.registry.setCurrentState(Lifecycle.State.DESTROYED);
+            assertEquals(0, bus.getSubscriberCount());
+            bus.publish("after");
+
+            bus.subscribe(owner, String.class, received::add);
+            assertEquals(0, bus.getSubscriberCount());
+        });
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+        assertTrue(received.isEmpty());
+    }
+}
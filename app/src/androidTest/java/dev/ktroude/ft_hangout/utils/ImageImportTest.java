@@ -0,0 +1,171 @@
+package dev.ktroude.ft_hangout.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Shader;
+import android.net.Uri;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.exifinterface.media.ExifInterface;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that importing a contact picture decodes camera-sized photos without a full-resolution
+ * allocation, and that the EXIF orientation is applied.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageImportTest {
+
+    private static final String TAG = "ImageImportTest";
+
+    private Context context;
+    private File directory;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        directory = new File(context.getCacheDir(), "image-import-test");
+        assertTrue(directory.isDirectory() || directory.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void calculateInSampleSize_keepsBothSidesAboveTarget() {
+        assertEquals(1, ImageHelper.calculateInSampleSize(300, 300, 300));
+        assertEquals(1, ImageHelper.calculateInSampleSize(599, 2000, 300));
+        assertEquals(2, ImageHelper.calculateInSampleSize(600, 2000, 300));
+        assertEquals(8, ImageHelper.calculateInSampleSize(4000, 3000, 300));
+        assertEquals(16, ImageHelper.calculateInSampleSize(8160, 6120, 300));
+    }
+
+    @Test
+    public void largePhotos_areDecodedWithoutAFullResolutionBitmap() throws Exception {
+        int[][] sizes = {{4000, 3000}, {8160, 6120}};
+        for (int[] size : sizes) {
+            Uri uri = writeJpeg(size[0], size[1], ExifInterface.ORIENTATION_NORMAL);
+            long fullResolutionBytes = (long) size[0] * size[1] * 4;
+
+            Runtime.getRuntime().gc();
+            long peak = measurePeakAllocation(() -> {
+                Bitmap bitmap = ImageHelper.decodeSampledBitmap(context.getContentResolver(), uri, ImageHelper.AVATAR_SIZE);
+                assertEquals(ImageHelper.AVATAR_SIZE, Math.max(bitmap.getWidth(), bitmap.getHeight()));
+            });
+
+            Log.i(TAG, size[0] + "x" + size[1] + ": peak allocation " + peak / 1024 + " KB, full-resolution decode "
+                    + fullResolutionBytes / 1024 + " KB");
+            assertTrue("Import of " + size[0] + "x" + size[1] + " allocated " + peak + " bytes",
+                    peak < fullResolutionBytes / 8);
+        }
+    }
+
+    @Test
+    public void exifOrientation_isApplied() throws IOException {
+        Uri rotated = writeJpeg(600, 400, ExifInterface.ORIENTATION_ROTATE_90);
+        Bitmap bitmap = ImageHelper.decodeSampledBitmap(context.getContentResolver(), rotated, ImageHelper.AVATAR_SIZE);
+        assertEquals(200, bitmap.getWidth());
+        assertEquals(300, bitmap.getHeight());
+
+        Uri upright = writeJpeg(600, 400, ExifInterface.ORIENTATION_NORMAL);
+        bitmap = ImageHelper.decodeSampledBitmap(context.getContentResolver(), upright, ImageHelper.AVATAR_SIZE);
+        assertEquals(300, bitmap.getWidth());
+        assertEquals(200, bitmap.getHeight());
+    }
+
+    private interface Work {
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs an operation while sampling the Java and native heaps, which hold Bitmap pixels
+     * depending on the Android version.
+     *
+     * @param work The operation to measure.
+     * @return The largest growth of the heaps seen while the operation ran, in bytes.
+     */
+    private static long measurePeakAllocation(Work work) throws Exception {
+        long baseline = allocatedBytes();
+        AtomicLong peak = new AtomicLong(baseline);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread sampler = new Thread(() -> {
+            while (running.get()) {
+                peak.accumulateAndGet(allocatedBytes(), Math::max);
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.start();
+        try {
+            work.run();
+        } finally {
+            running.set(false);
+            sampler.join();
+        }
+        peak.accumulateAndGet(allocatedBytes(), Math::max);
+        return peak.get() - baseline;
+    }
+
+    private static long allocatedBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory() + Debug.getNativeHeapAllocatedSize();
+    }
+
+    /**
+     * Writes a camera-like JPEG: a smooth gradient, which compresses like a photo.
+     *
+     * @param width       The width of the image.
+     * @param height      The height of the image.
+     * @param orientation The EXIF orientation to record.
+     * @return The URI of the file.
+     */
+    private Uri writeJpeg(int width, int height, int orientation) throws IOException {
+        File file = new File(directory, width + "x" + height + "-" + orientation + ".jpg");
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        Paint paint = new Paint();
+        paint.setShader(new LinearGradient(0, 0, width, height, Color.BLUE, Color.YELLOW, Shader.TileMode.CLAMP));
+        new Canvas(bitmap).drawRect(0, 0, width, height, paint);
+        try (OutputStream out = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        }
+        bitmap.recycle();
+
+        if (orientation != ExifInterface.ORIENTATION_NORMAL) {
+            ExifInterface exif = new ExifInterface(file.getAbsolutePath());
+            exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(orientation));
+            exif.saveAttributes();
+        }
+        return Uri.fromFile(file);
+    }
+}
@@ -0,0 +1,132 @@
+package dev.ktroude.ft_hangout.utils;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Simulates floods of refresh requests and checks that they are collapsed into few refreshes
+ * that still receive every change once, in order.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RefreshCoalescerTest {
+
+    private static final String TAG = "RefreshCoalescerTest";
+    private static final int REQUESTS = 100;
+
+    private static final class Owner implements LifecycleOwner {
+        private final LifecycleRegistry registry = new LifecycleRegistry(this);
+
+        @NonNull
+        @Override
+        public Lifecycle getLifecycle() {
+            return registry;
+        }
+    }
+
+    @Test
+    public void burst_runsOneRefreshPerFrame() {
+        List<List<Integer>> refreshes = new ArrayList<>();
+        AtomicReference<RefreshCoalescer<Integer>> coalescer = new AtomicReference<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            Owner owner = new Owner();
+            owner.registry.setCurrentState(Lifecycle.State.RESUMED);
+            coalescer.set(new RefreshCoalescer<>(owner, "test", RefreshCoalescer.EVERY_FRAME, refreshes::add));
+            for (int i = 0; i < REQUESTS; i++) {
+                coalescer.get().request(i);
+            }
+        });
+        waitForRefreshes(refreshes, 1);
+
+        assertEquals(1, refreshes.size());
+        assertEquals(REQUESTS, refreshes.get(0).size());
+        assertEquals(REQUESTS, coalescer.get().getRequestedCount());
+        assertEquals(1, coalescer.get().getRunCount());
+    }
+
+    @Test
+    public void flood_runsAtMostOneRefreshPerWindow() {
+        long windowMs = 100;
+        List<List<Integer>> refreshes = new ArrayList<>();
+        AtomicReference<RefreshCoalescer<Integer>> coalescer = new AtomicReference<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            Owner owner = new Owner();
+            owner.registry.setCurrentState(Lifecycle.State.RESUMED);
+            coalescer.set(new RefreshCoalescer<>(owner, "test", windowMs, refreshes::add));
+        });
+
+        // One request every 5 ms, as SMS batches are stored during a flood.
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < REQUESTS; i++) {
+            int change = i;
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> coalescer.get().request(change));
+            SystemClock.sleep(5);
+        }
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        SystemClock.sleep(2 * windowMs);
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+        List<Integer> delivered = new ArrayList<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            for (List<Integer> refresh : refreshes) {
+                delivered.addAll(refresh);
+            }
+        });
+        long runs = coalescer.get().getRunCount();
+        Log.i(TAG, REQUESTS + " requests over " + elapsed + " ms ran " + runs + " refreshes");
+
+        for (int i = 0; i < REQUESTS; i++) {
+            assertEquals(i, (int) delivered.get(i));
+        }
+        assertEquals(REQUESTS, delivered.size());
+        assertEquals(REQUESTS, coalescer.get().getRequestedCount());
+        assertTrue("Ran " + runs + " refreshes in " + elapsed + " ms", runs <= elapsed / windowMs + 2);
+    }
+
+    @Test
+    public void destroyedOwner_dropsPendingChanges() {
+        List<List<Integer>> refreshes = new ArrayList<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            Owner owner = new Owner();
+            owner.registry.setCurrentState(Lifecycle.State.RESUMED);
+            RefreshCoalescer<Integer> coalescer = new RefreshCoalescer<>(owner, "test", 50, refreshes::add);
+            coalescer.request(1);
+            owner.registry.setCurrentState(Lifecycle.State.DESTROYED);
+            coalescer.request(2);
+        });
+        SystemClock.sleep(150);
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+        assertTrue(refreshes.isEmpty());
+    }
+
+    private static void waitForRefreshes(List<List<Integer>> refreshes, int count) {
+        long deadline = SystemClock.elapsedRealtime() + 1000;
+        int[] size = new int[1];
+        while (SystemClock.elapsedRealtime() < deadline) {
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> size[0] = refreshes.size());
+            if (size[0] >= count) {
+                break;
+            }
+            SystemClock.sleep(10);
+        }
+        // Give a second refresh, which would be a failure, the time to happen.
+        SystemClock.sleep(50);
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+    }
+}
@@ -0,0 +1,104 @@
+package dev.ktroude.ft_hangout.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that list thumbnails are generated for pictures that have none, and that a cancelled
+ * load never reaches its row.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ThumbnailLoaderTest {
+
+    private File directory;
+    private AvatarStore store;
+    private ThumbnailLoader loader;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        directory = new File(context.getCacheDir(), "thumbnail-test");
+        store = new AvatarStore(directory, new AvatarCache(1024 * 1024));
+        loader = new ThumbnailLoader(store, new AvatarCache(1024 * 1024));
+    }
+
+    @After
+    public void tearDown() {
+        deleteRecursively(directory);
+    }
+
+    @Test
+    public void missingThumbnail_isGeneratedAndStored() throws Exception {
+        Bitmap picture = Bitmap.createBitmap(ImageHelper.AVATAR_SIZE, 200, Bitmap.Config.ARGB_8888);
+        picture.eraseColor(Color.RED);
+        String key = store.save(AvatarEncoder.PNG.encode(picture));
+        assertNull(store.loadThumbnail(key));
+
+        CountDownLatch loaded = new CountDownLatch(1);
+        AtomicReference<Bitmap> thumbnail = new AtomicReference<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() ->
+                loader.load(key, bitmap -> {
+                    thumbnail.set(bitmap);
+                    loaded.countDown();
+                }));
+
+        assertTrue(loaded.await(5, TimeUnit.SECONDS));
+        assertEquals(ImageHelper.THUMBNAIL_SIZE, thumbnail.get().getWidth());
+        assertEquals(ImageHelper.THUMBNAIL_SIZE, thumbnail.get().getHeight());
+        assertNotNull("Thumbnail stored for next time", store.loadThumbnail(key));
+        assertSame(thumbnail.get(), loader.getCached(key));
+    }
+
+    @Test
+    public void cancelledLoad_isDropped() throws Exception {
+        Bitmap picture = Bitmap.createBitmap(ImageHelper.AVATAR_SIZE, ImageHelper.AVATAR_SIZE, Bitmap.Config.ARGB_8888);
+        String key = store.save(AvatarEncoder.PNG.encode(picture));
+
+        AtomicBoolean delivered = new AtomicBoolean(false);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() ->
+                loader.load(key, bitmap -> delivered.set(true)).cancel());
+
+        // Give a load that had already started the time to finish and post its result.
+        long deadline = System.currentTimeMillis() + 1000;
+        while (loader.getCached(key) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        assertFalse(delivered.get());
+    }
+
+    @Test
+    public void placeholders_areSharedPerInitialAndColor() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            assertSame(loader.getPlaceholder("Alice Martin"), loader.getPlaceholder("Alice Martin"));
+            assertEquals(ImageHelper.THUMBNAIL_SIZE, loader.getPlaceholder("").getWidth());
+        });
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
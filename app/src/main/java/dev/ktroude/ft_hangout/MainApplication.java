@@ -2,17 +2,27 @@ package dev.ktroude.ft_hangout;
 
 import android.app.Application;
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.StrictMode;
 import android.widget.Toast;
 
+import dev.ktroude.ft_hangout.database.DatabaseHelper;
+import dev.ktroude.ft_hangout.database.Repository;
+import dev.ktroude.ft_hangout.receivers.SmsOutbox;
 import dev.ktroude.ft_hangout.utils.AppLifecycleTracker;
+import dev.ktroude.ft_hangout.utils.AvatarCache;
+import dev.ktroude.ft_hangout.utils.ThumbnailLoader;
 
 
 /**
  * MainApplication serves as the entry point for the application.
  * This class initializes global application state and manages the lifecycle tracker
  * to detect when the app goes into the background or returns to the foreground.
+ * It also owns the process-wide reference to the shared {@link DatabaseHelper}, which keeps
+ * the database connection open for the whole lifetime of the process, and resumes sending the
+ * messages left in the {@link SmsOutbox}.
  */
 public class MainApplication extends Application {
 
@@ -26,6 +36,39 @@ public class MainApplication extends Application {
         instance = this;
         appContext = this;
         lifecycleTracker = new AppLifecycleTracker();
+        enableStrictModeInDebug();
+        // Never released, so the connection stays open while the process lives.
+        DatabaseHelper.acquire(this);
+        SmsOutbox.getInstance(this).start();
+    }
+
+    /**
+     * In debuggable builds, logs and flashes the screen whenever the main thread reads or writes
+     * the disk, so that database and file access that bypasses the {@link Repository} is noticed
+     * early. Instrumented tests turn these violations into crashes, see StrictModeTestRunner.
+     */
+    private void enableStrictModeInDebug() {
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) {
+            return;
+        }
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .penaltyLog()
+                .penaltyFlashScreen()
+                .build());
+    }
+
+    /**
+     * Releases the decoded contact pictures and thumbnails when the system runs low on memory.
+     *
+     * @param level The trim level received from the system.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        AvatarCache.getInstance().trimMemory(level);
+        ThumbnailLoader.getInstance(this).trimMemory(level);
     }
 
     /**
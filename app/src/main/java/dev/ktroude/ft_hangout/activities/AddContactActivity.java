@@ -1,7 +1,5 @@
 package dev.ktroude.ft_hangout.activities;
 
-import static dev.ktroude.ft_hangout.utils.ImageHelper.resizeBitmap;
-
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.net.Uri;
@@ -15,10 +13,8 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.google.android.material.textfield.TextInputEditText;
 
-import java.io.IOException;
-
 import dev.ktroude.ft_hangout.R;
-import dev.ktroude.ft_hangout.database.DatabaseHelper;
+import dev.ktroude.ft_hangout.database.Repository;
 import dev.ktroude.ft_hangout.models.Contact;
 import dev.ktroude.ft_hangout.utils.ImageHelper;
 
@@ -30,9 +26,11 @@ public class AddContactActivity extends AppCompatActivity {
 
     private TextInputEditText editFirstname, editLastname, editAddress, editEmail, editNumber;
     private ImageView imageViewProfile;
-    private DatabaseHelper databaseHelper;
+    private Repository repository;
     private static final int PICK_IMAGE_REQUEST = 1;
-    private String encodedImage = "";
+    private static final String STATE_PICTURE_URI = "picture_uri";
+    private Uri pictureUri;
+    private Bitmap picture;
 
     /**
      * Called when the activity is first created. Initializes UI components and event listeners.
@@ -44,10 +42,14 @@ public class AddContactActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_add_contact);
 
-        databaseHelper = new DatabaseHelper(this);
+        repository = Repository.getInstance(this);
 
         initViews();
         initButton();
+
+        if (savedInstanceState != null) {
+            loadPicture(savedInstanceState.getParcelable(STATE_PICTURE_URI));
+        }
     }
 
     /**
@@ -60,6 +62,7 @@ public class AddContactActivity extends AppCompatActivity {
 
     /**
      * Handles the result of the image selection from the gallery.
+     * The picture is resized in the background, then displayed.
      *
      * @param requestCode The request code passed when selecting an image.
      * @param resultCode  The result code indicating success or failure.
@@ -69,19 +72,39 @@ public class AddContactActivity extends AppCompatActivity {
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
         if (requestCode == PICK_IMAGE_REQUEST && resultCode == RESULT_OK && data != null) {
-            Uri selectedImageUri = data.getData();
-            try {
-                Bitmap bitmap = MediaStore.Images.Media.getBitmap(getContentResolver(), selectedImageUri);
-                bitmap = resizeBitmap(bitmap, 300);
-                encodedImage = ImageHelper.encodeImageToBase64(bitmap);
-                imageViewProfile.setImageBitmap(bitmap);
-
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            loadPicture(data.getData());
         }
     }
 
+    /**
+     * Keeps the picked picture across configuration changes; it is only saved with the contact.
+     *
+     * @param outState The bundle the state is saved in.
+     */
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putParcelable(STATE_PICTURE_URI, pictureUri);
+    }
+
+    /**
+     * Decodes a picked picture in the background and displays it. It is kept in memory until
+     * the contact is saved, so that a picture the user abandons never reaches the avatar store.
+     * A file that cannot be read as an image is reported to the user.
+     *
+     * @param uri The URI of the picked picture, may be null.
+     */
+    private void loadPicture(Uri uri) {
+        repository.execute(this, () -> ImageHelper.decodePickedImage(this, uri), bitmap -> {
+            if (bitmap == null) {
+                return;
+            }
+            pictureUri = uri;
+            picture = bitmap;
+            imageViewProfile.setImageBitmap(bitmap);
+        }, error -> Toast.makeText(this, R.string.error_image_unreadable, Toast.LENGTH_SHORT).show());
+    }
+
     /**
      * Initializes UI components and sets up click listeners.
      */
@@ -106,7 +129,6 @@ public class AddContactActivity extends AppCompatActivity {
                 Toast.makeText(this, getString(R.string.error_contact_added), Toast.LENGTH_SHORT).show();
             } else {
                 addContactToDatabase(createContact());
-                finish();
             }
         });
     }
@@ -135,27 +157,20 @@ public class AddContactActivity extends AppCompatActivity {
         String email = editEmail.getText().toString().trim();
         String number = editNumber.getText().toString().trim();
         String address = editAddress.getText().toString().trim();
-        String picture = encodedImage;
 
-        return new Contact(0, firstname, lastname, email, address, number, picture);
+        return new Contact(0, firstname, lastname, email, address, number, "");
     }
 
     /**
-     * Saves the newly created contact in the database.
+     * Saves the newly created contact in the database, along with the picked picture,
+     * and closes the activity once it is stored.
      *
      * @param contact The Contact object to be added.
      */
     private void addContactToDatabase(Contact contact) {
-        databaseHelper.addContact(contact);
-        Toast.makeText(this, getString(R.string.contact_added), Toast.LENGTH_SHORT).show();
-    }
-
-    /**
-     * Closes the database connection when the activity is destroyed.
-     */
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        databaseHelper.close();
+        repository.addContact(this, contact, picture, contactId -> {
+            Toast.makeText(this, getString(R.string.contact_added), Toast.LENGTH_SHORT).show();
+            finish();
+        });
     }
 }
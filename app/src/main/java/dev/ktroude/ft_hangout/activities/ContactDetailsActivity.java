@@ -17,9 +17,8 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
 import dev.ktroude.ft_hangout.R;
-import dev.ktroude.ft_hangout.database.DatabaseHelper;
+import dev.ktroude.ft_hangout.database.Repository;
 import dev.ktroude.ft_hangout.models.Contact;
-import dev.ktroude.ft_hangout.utils.ImageHelper;
 import dev.ktroude.ft_hangout.utils.PermissionAndResultHelper;
 import dev.ktroude.ft_hangout.utils.Utils;
 
@@ -32,7 +31,7 @@ public class ContactDetailsActivity extends AppCompatActivity {
     private TextView textViewName, textViewPhone, textViewEmail, textViewAddress;
     private ImageView imageViewProfile;
     private FloatingActionButton buttonCall, buttonMessage, buttonEdit, buttonDelete;
-    private DatabaseHelper databaseHelper;
+    private Repository repository;
     private int contactId;
     private Contact contact;
     private ActivityResultLauncher<Intent> editContactLauncher;
@@ -50,7 +49,7 @@ public class ContactDetailsActivity extends AppCompatActivity {
         EdgeToEdge.enable(this);
         setContentView(R.layout.activity_contact_details);
 
-        databaseHelper = new DatabaseHelper(this);
+        repository = Repository.getInstance(this);
         initContactId();
 
         editContactLauncher = PermissionAndResultHelper.registerActivityResult(this, this::setViewsData);
@@ -71,7 +70,6 @@ public class ContactDetailsActivity extends AppCompatActivity {
             Toast.makeText(this, getString(R.string.id_error), Toast.LENGTH_SHORT).show();
             finish();
         }
-        contact = databaseHelper.getContactById(contactId);
     }
 
     /**
@@ -90,17 +88,24 @@ public class ContactDetailsActivity extends AppCompatActivity {
     }
 
     /**
-     * Retrieves contact details from the database and updates the UI.
+     * Retrieves contact details from the database in the background and updates the UI.
      */
     private void setViewsData() {
-        contact = databaseHelper.getContactById(contactId);
-
-        textViewName.setText(String.format("%s %s", contact.getFirstname(), contact.getLastname()));
-        textViewPhone.setText(Utils.parseNumberToDisplay(contact.getTelNumber()));
-        textViewEmail.setText(contact.getEmail());
-        textViewAddress.setText(contact.getAddress());
-
-        imageViewProfile.setImageBitmap(ImageHelper.decodeBase64ToImage(contact.getPicture()));
+        repository.getContact(this, contactId, loadedContact -> {
+            if (loadedContact == null) {
+                Toast.makeText(this, getString(R.string.id_error), Toast.LENGTH_SHORT).show();
+                finish();
+                return;
+            }
+            contact = loadedContact;
+
+            textViewName.setText(String.format("%s %s", contact.getFirstname(), contact.getLastname()));
+            textViewPhone.setText(Utils.parseNumberToDisplay(contact.getTelNumber()));
+            textViewEmail.setText(contact.getEmail());
+            textViewAddress.setText(contact.getAddress());
+
+            repository.loadAvatar(this, contact.getPicture(), imageViewProfile::setImageBitmap);
+        });
     }
 
     /**
@@ -133,6 +138,9 @@ public class ContactDetailsActivity extends AppCompatActivity {
      * Requests CALL_PHONE permission if not already granted.
      */
     private void makeCall() {
+        if (contact == null) {
+            return;
+        }
         String phoneNumber = contact.getTelNumber();
 
         if (phoneNumber == null || phoneNumber.isEmpty()) {
@@ -165,10 +173,9 @@ public class ContactDetailsActivity extends AppCompatActivity {
     }
 
     /**
-     * Deletes the contact from the database and closes the activity.
+     * Deletes the contact from the database and closes the activity once it is done.
      */
     private void deleteContact() {
-        databaseHelper.deleteContact(contactId);
-        finish();
+        repository.deleteContact(this, contactId, result -> finish());
     }
 }
@@ -1,6 +1,8 @@
 package dev.ktroude.ft_hangout.activities;
 
 import android.content.Intent;
+import android.graphics.Bitmap;
+import android.net.Uri;
 import android.os.Bundle;
 import android.provider.MediaStore;
 import android.widget.Button;
@@ -11,10 +13,8 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.google.android.material.textfield.TextInputEditText;
 
-import java.io.IOException;
-
 import dev.ktroude.ft_hangout.R;
-import dev.ktroude.ft_hangout.database.DatabaseHelper;
+import dev.ktroude.ft_hangout.database.Repository;
 import dev.ktroude.ft_hangout.models.Contact;
 import dev.ktroude.ft_hangout.utils.ImageHelper;
 
@@ -26,10 +26,13 @@ public class EditContactActivity extends AppCompatActivity {
 
     private TextInputEditText editFirstname, editLastname, editAddress, editEmail, editNumber;
     private ImageView imageViewProfile;
-    private DatabaseHelper databaseHelper;
+    private Repository repository;
     private int contactId;
+    private Contact contact;
     private static final int PICK_IMAGE_REQUEST = 1;
-    private String encodedImage = "";
+    private static final String STATE_PICTURE_URI = "picture_uri";
+    private Uri pictureUri;
+    private Bitmap picture;
 
     /**
      * Called when the activity is created.
@@ -42,10 +45,14 @@ public class EditContactActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_edit_contact);
 
-        databaseHelper = new DatabaseHelper(this);
+        repository = Repository.getInstance(this);
 
         initViews();
         setContactId();
+        if (savedInstanceState != null) {
+            pictureUri = savedInstanceState.getParcelable(STATE_PICTURE_URI);
+            loadPicture(pictureUri);
+        }
         setViewsData();
 
         imageViewProfile.setOnClickListener(view -> selectImageFromGallery());
@@ -61,7 +68,7 @@ public class EditContactActivity extends AppCompatActivity {
 
     /**
      * Handles the result of the image selection from the gallery.
-     * Converts the selected image to Base64 and updates the profile picture view.
+     * The picture is resized in the background, then displayed.
      *
      * @param requestCode Request code identifying the action.
      * @param resultCode  Result code indicating success or failure.
@@ -72,15 +79,39 @@ public class EditContactActivity extends AppCompatActivity {
         super.onActivityResult(requestCode, resultCode, data);
 
         if (requestCode == PICK_IMAGE_REQUEST && resultCode == RESULT_OK && data != null) {
-            try {
-                encodedImage = ImageHelper.handleImageResult(this, data);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            imageViewProfile.setImageBitmap(ImageHelper.decodeBase64ToImage(encodedImage));
+            loadPicture(data.getData());
         }
     }
 
+    /**
+     * Keeps the picked picture across configuration changes; it is only saved with the contact.
+     *
+     * @param outState The bundle the state is saved in.
+     */
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putParcelable(STATE_PICTURE_URI, pictureUri);
+    }
+
+    /**
+     * Decodes a picked picture in the background and displays it. It is kept in memory until
+     * the contact is saved, so that a picture the user abandons never reaches the avatar store.
+     * A file that cannot be read as an image is reported to the user.
+     *
+     * @param uri The URI of the picked picture, may be null.
+     */
+    private void loadPicture(Uri uri) {
+        repository.execute(this, () -> ImageHelper.decodePickedImage(this, uri), bitmap -> {
+            if (bitmap == null) {
+                return;
+            }
+            pictureUri = uri;
+            picture = bitmap;
+            imageViewProfile.setImageBitmap(bitmap);
+        }, error -> Toast.makeText(this, R.string.error_image_unreadable, Toast.LENGTH_SHORT).show());
+    }
+
     /**
      * Checks if the form is valid by ensuring required fields are not empty.
      *
@@ -95,17 +126,8 @@ public class EditContactActivity extends AppCompatActivity {
     }
 
     /**
-     * Retrieves a contact from the database using the given contact ID.
-     *
-     * @param id The contact ID.
-     * @return The Contact object.
-     */
-    private Contact getContact(Integer id) {
-        return databaseHelper.getContactById(id);
-    }
-
-    /**
-     * Updates the contact information in the database with the new input values.
+     * Updates the contact information in the database with the new input values and the picked
+     * picture, if any, then closes the activity once the update is stored.
      *
      * @param contact The contact object to be updated.
      */
@@ -116,8 +138,6 @@ public class EditContactActivity extends AppCompatActivity {
         String number = editNumber.getText().toString().trim();
         String email = editEmail.getText().toString().trim();
         String address = editAddress.getText().toString().trim();
-        String picture = encodedImage.isEmpty() ? contact.getPicture() : encodedImage;
-
         Contact updatedContact = new Contact(
                 contact.getId(),
                 firstname,
@@ -125,9 +145,12 @@ public class EditContactActivity extends AppCompatActivity {
                 email,
                 address,
                 number,
-                picture
+                contact.getPicture()
         );
-        databaseHelper.updateContact(updatedContact);
+        repository.updateContact(this, updatedContact, picture, result -> {
+            setResult(RESULT_OK);
+            finish();
+        });
     }
 
     /**
@@ -156,17 +179,26 @@ public class EditContactActivity extends AppCompatActivity {
     }
 
     /**
-     * Populates the views with the current contact details.
+     * Loads the current contact details in the background and populates the views with them.
      */
     private void setViewsData() {
-        Contact contact = getContact(contactId);
-
-        editFirstname.setText(contact.getFirstname());
-        editLastname.setText(contact.getLastname());
-        editAddress.setText(contact.getAddress());
-        editEmail.setText(contact.getEmail());
-        editNumber.setText(contact.getTelNumber());
-        imageViewProfile.setImageBitmap(ImageHelper.decodeBase64ToImage(contact.getPicture()));
+        repository.getContact(this, contactId, loadedContact -> {
+            if (loadedContact == null) {
+                Toast.makeText(this, getString(R.string.id_error), Toast.LENGTH_SHORT).show();
+                finish();
+                return;
+            }
+            contact = loadedContact;
+
+            editFirstname.setText(contact.getFirstname());
+            editLastname.setText(contact.getLastname());
+            editAddress.setText(contact.getAddress());
+            editEmail.setText(contact.getEmail());
+            editNumber.setText(contact.getTelNumber());
+            if (pictureUri == null) {
+                repository.loadAvatar(this, contact.getPicture(), imageViewProfile::setImageBitmap);
+            }
+        });
     }
 
     /**
@@ -177,20 +209,9 @@ public class EditContactActivity extends AppCompatActivity {
         editButton.setOnClickListener(view -> {
             if (!checkForm()) {
                 Toast.makeText(this, getString(R.string.error_contact_added), Toast.LENGTH_SHORT).show();
-            } else {
-                updateContactInDatabase(getContact(contactId));
-                setResult(RESULT_OK);
-                finish();
+            } else if (contact != null) {
+                updateContactInDatabase(contact);
             }
         });
     }
-
-    /**
-     * Closes the database connection when the activity is destroyed.
-     */
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        databaseHelper.close();
-    }
 }
@@ -1,14 +1,16 @@
 package dev.ktroude.ft_hangout.activities;
 
 import android.app.AlertDialog;
-import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.StrictMode;
+import android.text.Editable;
+import android.text.TextWatcher;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
@@ -22,6 +24,7 @@ import android.view.ContextThemeWrapper;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 import android.Manifest;
@@ -31,15 +34,24 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import dev.ktroude.ft_hangout.MainApplication;
 import dev.ktroude.ft_hangout.R;
 import dev.ktroude.ft_hangout.adapters.ContactAdapter;
-import dev.ktroude.ft_hangout.database.DatabaseHelper;
+import dev.ktroude.ft_hangout.database.Repository;
 import dev.ktroude.ft_hangout.models.Contact;
+import dev.ktroude.ft_hangout.models.ContactSummary;
+import dev.ktroude.ft_hangout.models.Message;
+import dev.ktroude.ft_hangout.models.MessageItem;
+import dev.ktroude.ft_hangout.receivers.SmsReceivedEvent;
+import dev.ktroude.ft_hangout.utils.EventBus;
+import dev.ktroude.ft_hangout.utils.RefreshCoalescer;
 
 /**
  * MainActivity handles the main screen of the application,
@@ -47,9 +59,26 @@ import dev.ktroude.ft_hangout.models.Contact;
  */
 public class MainActivity extends AppCompatActivity {
     private RecyclerView recyclerView;
-    private DatabaseHelper databaseHelper;
+    private ContactAdapter contactAdapter;
+    private Repository repository;
+    private Repository.Task contactsTask;
+    private List<ContactSummary> contacts = new ArrayList<>();
+    private String filter = "";
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable filterRunnable = this::loadContacts;
     private static final int PERMISSION_REQUEST_CODE = 1;
 
+    /**
+     * Delay after the last keystroke before the contact filter is applied.
+     */
+    private static final long FILTER_DELAY_MS = 150;
+
+    /**
+     * Time new SMS are collected before the list is updated. A flood of messages then reorders
+     * the list a few times per second instead of once per stored batch.
+     */
+    private static final long SMS_REFRESH_WINDOW_MS = 250;
+
     /**
      * Called when the activity is first created. Sets up UI components and
      * initializes necessary data.
@@ -60,7 +89,7 @@ public class MainActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
-        databaseHelper = new DatabaseHelper(this);
+        repository = Repository.getInstance(this);
 
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.RECEIVE_SMS) != PackageManager.PERMISSION_GRANTED) {
             ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.RECEIVE_SMS}, PERMISSION_REQUEST_CODE);
@@ -69,13 +98,40 @@ public class MainActivity extends AppCompatActivity {
 
         recyclerView = findViewById(R.id.recyclerViewContacts);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        contactAdapter = new ContactAdapter();
+        recyclerView.setAdapter(contactAdapter);
 
         Toolbar toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
 
         loadSavedColor();
-        loadContacts();
+        initFilter();
         createActionButton();
+        RefreshCoalescer<SmsReceivedEvent> smsRefresh =
+                new RefreshCoalescer<>(this, "contacts", SMS_REFRESH_WINDOW_MS, this::onSmsReceived);
+        EventBus.getInstance().subscribe(this, SmsReceivedEvent.class, smsRefresh::request);
+    }
+
+    /**
+     * Reloads the contact list shortly after each keystroke in the filter box.
+     * A keystroke arriving before the delay expires restarts it, so typing a word runs one query.
+     */
+    private void initFilter() {
+        EditText editTextFilter = findViewById(R.id.editTextFilter);
+        editTextFilter.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                filter = s.toString().trim();
+                handler.removeCallbacks(filterRunnable);
+                handler.postDelayed(filterRunnable, FILTER_DELAY_MS);
+            }
+        });
     }
 
     /**
@@ -121,64 +177,82 @@ public class MainActivity extends AppCompatActivity {
             showColorPickerDialog();
             return true;
         }
+        if (item.getItemId() == R.id.action_search) {
+            startActivity(new Intent(this, SearchActivity.class));
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
 
     /**
-     * Called when the activity resumes. Ensures the UI is updated and registers the SMS receiver.
+     * Called when the activity resumes. Ensures the UI is updated.
      */
     @Override
     protected void onResume() {
         super.onResume();
         loadContacts();
-        registerSmsReceiver();
     }
 
-
-
     /**
-     * BroadcastReceiver that listens for new SMS messages.
+     * Applies newly stored SMS to the displayed contacts without querying the database:
+     * new contacts are added, and the senders' last message and unread count are updated.
+     * The list is reloaded instead while a filter is applied or a load is in flight,
+     * since the load may have read the database before these messages were stored.
+     *
+     * @param events The batches stored since the last update, oldest first.
      */
-    private final BroadcastReceiver smsReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
+    private void onSmsReceived(List<SmsReceivedEvent> events) {
+        if (!filter.isEmpty() || contactsTask != null) {
             loadContacts();
+            return;
         }
-    };
 
-    /**
-     * Called when the activity is paused. Unregisters the SMS receiver.
-     */
-    @Override
-    protected void onPause() {
-        super.onPause();
-        unregisterReceiver(smsReceiver);
+        Map<Integer, ContactSummary> contactsById = new LinkedHashMap<>();
+        for (ContactSummary contact : contacts) {
+            contactsById.put(contact.getId(), contact);
+        }
+        for (SmsReceivedEvent event : events) {
+            for (Contact contact : event.getNewContacts()) {
+                contactsById.put(contact.getId(), new ContactSummary(contact.getId(), contact.getFirstname(),
+                        contact.getLastname(), contact.getTelNumber(), null, 0, 0, contact.getPicture()));
+            }
+            for (MessageItem item : event.getMessages()) {
+                Message message = item.getMessage();
+                ContactSummary contact = contactsById.get(message.getContactId());
+                if (contact == null) {
+                    loadContacts();
+                    return;
+                }
+                contactsById.put(contact.getId(), contact.withReceivedMessage(message));
+            }
+        }
+
+        // Same order as the inbox query.
+        List<ContactSummary> updated = new ArrayList<>(contactsById.values());
+        updated.sort((a, b) -> a.getLastDate() != b.getLastDate()
+                ? Long.compare(b.getLastDate(), a.getLastDate())
+                : Integer.compare(b.getId(), a.getId()));
+        showContacts(updated);
     }
 
     /**
      * Called when the activity is stopped. Saves the timestamp of when the app was last used.
+     * The write itself is asynchronous, but the preference file may still need loading,
+     * so that read is explicitly allowed on the main thread.
      */
     @Override
     protected void onStop() {
         super.onStop();
 
-        SharedPreferences preferences = getSharedPreferences("app_prefs", MODE_PRIVATE);
-        SharedPreferences.Editor editor = preferences.edit();
-        editor.putLong("last_exit_time", System.currentTimeMillis());
-        editor.apply();
-    }
-
-    /**
-     * Registers the BroadcastReceiver to listen for incoming SMS messages.
-     */
-    private void registerSmsReceiver() {
-        IntentFilter filter = new IntentFilter("dev.ktroude.ft_hangout.NEW_SMS_RECEIVED");
-        ContextCompat.registerReceiver(
-                this,
-                smsReceiver,
-                filter,
-                ContextCompat.RECEIVER_NOT_EXPORTED
-        );
+        StrictMode.ThreadPolicy policy = StrictMode.allowThreadDiskReads();
+        try {
+            SharedPreferences preferences = getSharedPreferences("app_prefs", MODE_PRIVATE);
+            SharedPreferences.Editor editor = preferences.edit();
+            editor.putLong("last_exit_time", System.currentTimeMillis());
+            editor.apply();
+        } finally {
+            StrictMode.setThreadPolicy(policy);
+        }
     }
 
     /**
@@ -236,24 +310,60 @@ public class MainActivity extends AppCompatActivity {
 
     /**
      * Loads the saved header color preference and applies it.
+     * The color has to be known before the first frame, so this tiny preference read
+     * is explicitly allowed on the main thread.
      */
     private void loadSavedColor() {
-        SharedPreferences prefs = getSharedPreferences("AppPrefs", MODE_PRIVATE);
-        int savedColor = prefs.getInt("header_color", R.color.purple_700);
-        changeHeaderColor(savedColor);
+        StrictMode.ThreadPolicy policy = StrictMode.allowThreadDiskReads();
+        try {
+            SharedPreferences prefs = getSharedPreferences("AppPrefs", MODE_PRIVATE);
+            int savedColor = prefs.getInt("header_color", R.color.purple_700);
+            changeHeaderColor(savedColor);
+        } finally {
+            StrictMode.setThreadPolicy(policy);
+        }
     }
 
     /**
-     * Loads the saved header color preference and applies it.
+     * Loads the contacts, most recently active first, or those matching the current filter,
+     * and applies them to the list.
+     * Any load still in flight is cancelled first, so results never arrive out of order.
+     * Full pictures are not loaded here; the list only shows thumbnails.
      */
     private void loadContacts() {
-        List<Contact> contacts = databaseHelper.getAllContacts();
-        ContactAdapter contactAdapter = new ContactAdapter(contacts);
-        recyclerView.setAdapter(contactAdapter);
-
-        if (contacts.isEmpty()) {
-            Toast.makeText(this, getString(R.string.no_contact), Toast.LENGTH_SHORT).show();
+        handler.removeCallbacks(filterRunnable);
+        if (contactsTask != null) {
+            contactsTask.cancel();
         }
+
+        Repository.Callback<List<ContactSummary>> callback = loadedContacts -> {
+            contactsTask = null;
+            showContacts(loadedContacts);
+
+            if (loadedContacts.isEmpty() && filter.isEmpty()) {
+                Toast.makeText(this, getString(R.string.no_contact), Toast.LENGTH_SHORT).show();
+            }
+        };
+        contactsTask = filter.isEmpty()
+                ? repository.getInbox(this, callback)
+                : repository.filterContactSummaries(this, filter, callback);
+    }
+
+    /**
+     * Applies a new list of contacts to the adapter.
+     * Only the changed rows are rebound, and a list scrolled to the top stays at the top when
+     * a contact moves up to it.
+     *
+     * @param newContacts The contacts to display, which must not be modified afterwards.
+     */
+    private void showContacts(List<ContactSummary> newContacts) {
+        contacts = newContacts;
+        boolean atTop = !recyclerView.canScrollVertically(-1);
+        contactAdapter.updateContacts(newContacts, () -> {
+            if (atTop) {
+                recyclerView.scrollToPosition(0);
+            }
+        });
     }
 
     /**
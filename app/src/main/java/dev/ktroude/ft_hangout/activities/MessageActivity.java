@@ -1,12 +1,8 @@
 package dev.ktroude.ft_hangout.activities;
 
 import android.Manifest;
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.os.Bundle;
-import android.telephony.SmsManager;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.Log;
@@ -19,34 +15,62 @@ import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.content.ContextCompat;
+import androidx.lifecycle.Lifecycle;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import dev.ktroude.ft_hangout.R;
 import dev.ktroude.ft_hangout.adapters.MessageAdapter;
 import dev.ktroude.ft_hangout.database.DatabaseHelper;
+import dev.ktroude.ft_hangout.database.Repository;
 import dev.ktroude.ft_hangout.models.Contact;
 import dev.ktroude.ft_hangout.models.Message;
+import dev.ktroude.ft_hangout.models.MessageItem;
+import dev.ktroude.ft_hangout.receivers.MessageStatusEvent;
+import dev.ktroude.ft_hangout.receivers.SmsReceivedEvent;
+import dev.ktroude.ft_hangout.utils.EventBus;
 import dev.ktroude.ft_hangout.utils.PermissionAndResultHelper;
+import dev.ktroude.ft_hangout.utils.RefreshCoalescer;
 
 /**
  * MessageActivity manages the conversation screen, allowing users to send and receive messages.
+ * It opens on the newest messages, or around a given message when started with {@link #EXTRA_MESSAGE_ID}.
  */
 public class MessageActivity extends AppCompatActivity {
 
-    private final DatabaseHelper dbHelper = new DatabaseHelper(this);
+    /**
+     * Optional extras opening the conversation scrolled to a given message, as search results do.
+     */
+    public static final String EXTRA_MESSAGE_ID = "message_id";
+    public static final String EXTRA_MESSAGE_DATE = "message_date";
+
+    private static final int PAGE_SIZE = 50;
+
+    /**
+     * Number of messages kept in memory. Beyond it, the messages at the end away from the one
+     * being loaded are dropped, and loaded again when the user scrolls back to them.
+     */
+    private static final int MAX_LOADED_MESSAGES = 4 * PAGE_SIZE;
+
+    private Repository repository;
     private EditText editTextMessage;
     private TextView textViewContact;
     private ImageButton buttonSend;
     private RecyclerView recyclerView;
     private MessageAdapter messageAdapter;
-    private final List<Message> messageList = new ArrayList<>();
+    private final List<MessageItem> messageList = new ArrayList<>();
     private Contact contact;
     private int contactId;
+    private boolean hasOlderMessages = true;
+    private boolean loadingOlderMessages = false;
+    private boolean hasNewerMessages = false;
+    private boolean loadingNewerMessages = false;
+    private boolean reloading = false;
+    private int loadGeneration = 0;
 
     /**
      * Called when the activity is created. Initializes UI components and loads messages.
@@ -58,64 +82,88 @@ public class MessageActivity extends AppCompatActivity {
         EdgeToEdge.enable(this);
         setContentView(R.layout.activity_message);
 
+        repository = Repository.getInstance(this);
         requestPermissions();
-        initContact();
         initViews();
+        initContact();
         initRecyclerView();
-        loadMessages();
+        RefreshCoalescer<SmsReceivedEvent> smsRefresh =
+                new RefreshCoalescer<>(this, "conversation", RefreshCoalescer.EVERY_FRAME, this::onSmsReceived);
+        EventBus.getInstance().subscribe(this, SmsReceivedEvent.class, smsRefresh::request);
+        EventBus.getInstance().subscribe(this, MessageStatusEvent.class,
+                event -> messageAdapter.updateStatus(event.getMessageId(), event.getStatus()));
+
+        int targetMessageId = getIntent().getIntExtra(EXTRA_MESSAGE_ID, -1);
+        if (targetMessageId != -1) {
+            loadMessagesAround(targetMessageId, getIntent().getLongExtra(EXTRA_MESSAGE_DATE, 0));
+        } else {
+            loadMessages();
+        }
 
         setViewsData();
         initButton();
-        scrollToLastMessage();
     }
 
     /**
-     * BroadcastReceiver that listens for incoming SMS messages and refreshes the message list.
+     * Adds the newly stored SMS of this conversation to the message list, without reading them back
+     * or formatting them: the ingest thread already did.
+     * They are marked as read only if the conversation is on screen; otherwise that happens
+     * when it is resumed.
+     *
+     * @param events The batches stored since the last frame, oldest first.
      */
-    private final BroadcastReceiver smsReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            int receivedContactId = intent.getIntExtra("contact_id", -1);
-            if (receivedContactId == contactId) {
-                loadMessages();
+    private void onSmsReceived(List<SmsReceivedEvent> events) {
+        List<MessageItem> received = new ArrayList<>();
+        for (SmsReceivedEvent event : events) {
+            for (MessageItem item : event.getMessages()) {
+                if (item.getMessage().getContactId() == contactId) {
+                    received.add(item);
+                }
             }
         }
-    };
+        if (received.isEmpty() || hasNewerMessages) {
+            // While browsing the middle of the history, new messages are reached by scrolling down.
+            return;
+        }
+        // A concatenated SMS is dated when its first part arrived, so a batch may be out of order.
+        received.sort((a, b) -> a.getMessage().getDate() != b.getMessage().getDate()
+                ? Long.compare(a.getMessage().getDate(), b.getMessage().getDate())
+                : Integer.compare(a.getMessage().getId(), b.getMessage().getId()));
+        showNewMessages(received);
+        if (getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.RESUMED)) {
+            repository.markConversationRead(this, contactId, null);
+        }
+    }
 
     /**
-     * Registers the SMS receiver when the activity is resumed.
+     * Marks the conversation as read when the activity is resumed.
      */
     @Override
     protected void onResume() {
         super.onResume();
-        IntentFilter filter = new IntentFilter("dev.ktroude.ft_hangout.NEW_SMS_RECEIVED");
-        ContextCompat.registerReceiver(
-                this,
-                smsReceiver,
-                filter,
-                ContextCompat.RECEIVER_NOT_EXPORTED
-        );
+        repository.markConversationRead(this, contactId, null);
     }
 
     /**
-     * Unregisters the SMS receiver when the activity is paused.
-     */
-    @Override
-    protected void onPause() {
-        super.onPause();
-        unregisterReceiver(smsReceiver);
-    }
-
-    /**
-     * Initializes the contact by retrieving its ID from the intent and loading details from the database.
+     * Initializes the contact by retrieving its ID from the intent, then loads its details
+     * in the background and displays its name once they are available.
      */
     private void initContact() {
         contactId = getIntent().getIntExtra("contact_id", -1);
         if (contactId == -1) {
             Toast.makeText(this, getString(R.string.id_error), Toast.LENGTH_SHORT).show();
             finish();
+            return;
         }
-        contact = dbHelper.getContactById(contactId);
+        repository.getContact(this, contactId, loadedContact -> {
+            if (loadedContact == null) {
+                Toast.makeText(this, getString(R.string.id_error), Toast.LENGTH_SHORT).show();
+                finish();
+                return;
+            }
+            contact = loadedContact;
+            textViewContact.setText(String.format("%s %s", contact.getFirstname(), contact.getLastname()));
+        });
     }
 
     /**
@@ -132,7 +180,6 @@ public class MessageActivity extends AppCompatActivity {
      * Sets up UI elements with contact details and input behaviors.
      */
     private void setViewsData() {
-        textViewContact.setText(String.format("%s %s", contact.getFirstname(), contact.getLastname()));
         buttonSend.setVisibility(View.INVISIBLE);
 
         editTextMessage.addTextChangedListener(new TextWatcher() {
@@ -193,55 +240,192 @@ public class MessageActivity extends AppCompatActivity {
 
     /**
      * Initializes the RecyclerView to display messages.
+     * The list is laid out from the bottom, so the newest messages are bound first
+     * and older pages are only loaded once the user scrolls up.
      */
     private void initRecyclerView() {
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        layoutManager.setStackFromEnd(true);
+        recyclerView.setLayoutManager(layoutManager);
         messageAdapter = new MessageAdapter(messageList);
+        messageAdapter.setOnTopReachedListener(() -> recyclerView.post(this::loadOlderMessages));
+        messageAdapter.setOnBottomReachedListener(() -> recyclerView.post(this::loadNewerMessages));
         recyclerView.setAdapter(messageAdapter);
     }
 
     /**
-     * Sends a message by storing it in the database and sending it via SMS.
+     * Sends a message by storing it in the outbox, which sends it via SMS in the background.
+     * The message is added at the bottom of the conversation once it is stored, and its status
+     * is updated as the outbox reports it sent and delivered.
      * @param text The message content.
      */
     private void sendMessage(String text) {
         long currentTime = System.currentTimeMillis();
-        Message newMessage = new Message(0, contactId, text, currentTime, true);
-        dbHelper.addMessage(newMessage);
-        loadMessages();
+        Message newMessage = new Message(0, contactId, text, currentTime, true, Message.STATUS_QUEUED);
+        repository.sendMessage(this, newMessage, item -> {
+            if (item == null) {
+                loadMessages();
+                return;
+            }
+            showNewMessages(Collections.singletonList(item));
+        });
+    }
 
-        String phoneNumber = contact.getTelNumber();
-        SmsManager smsManager = SmsManager.getDefault();
-        smsManager.sendTextMessage(phoneNumber, null, text, null, null);
+    /**
+     * Adds messages that were just stored at the bottom of the conversation and scrolls to them,
+     * dropping the oldest ones beyond {@link #MAX_LOADED_MESSAGES}. Falls back to reloading the
+     * newest page when they cannot simply be appended: a reload is in flight, the newest messages
+     * are not displayed, or the messages leave a gap in the sequence.
+     *
+     * @param newMessages The new messages, oldest first.
+     */
+    private void showNewMessages(List<MessageItem> newMessages) {
+        if (reloading || hasNewerMessages || !messageAdapter.appendNewMessages(newMessages)) {
+            loadMessages();
+            return;
+        }
+        dropOldestMessages();
+        scrollToLastMessage();
+    }
+
+    /**
+     * Drops the oldest messages if more than {@link #MAX_LOADED_MESSAGES} are loaded, once newer
+     * ones were added at the bottom. {@link #loadOlderMessages()} reloads them.
+     */
+    private void dropOldestMessages() {
+        // The oldest messages are left alone while an older page is being loaded before them.
+        int excess = messageList.size() - MAX_LOADED_MESSAGES;
+        if (excess > 0 && !loadingOlderMessages) {
+            messageAdapter.removeOldest(excess);
+            hasOlderMessages = true;
+        }
     }
 
     /**
-     * Loads all messages from the database and refreshes the UI.
+     * Loads the most recent page of messages in the background and refreshes the UI.
+     * Older messages are loaded on demand by {@link #loadOlderMessages()}.
+     * Any older page still in flight is discarded, since it was computed against the previous list.
      */
     private void loadMessages() {
-        messageList.clear();
-        messageList.addAll(dbHelper.getAllMessageFromContact(contactId));
-        messageAdapter.notifyDataSetChanged();
-        scrollToLastMessage();
+        int generation = ++loadGeneration;
+        reloading = true;
+        repository.getMessagesPage(this, contactId, DatabaseHelper.NEWEST_DATE, DatabaseHelper.NEWEST_ID, PAGE_SIZE, page -> {
+            if (generation != loadGeneration) {
+                return;
+            }
+            reloading = false;
+            hasOlderMessages = page.size() == PAGE_SIZE;
+            hasNewerMessages = false;
+            loadingOlderMessages = false;
+            loadingNewerMessages = false;
+
+            messageList.clear();
+            messageList.addAll(page);
+            messageAdapter.notifyDataSetChanged();
+            scrollToLastMessage();
+        });
     }
 
     /**
-     * Hides the keyboard after sending a message.
+     * Loads the messages surrounding a given message in the background and scrolls to it:
+     * one page ending with the message, and one page of the messages following it.
+     * Further pages are loaded on demand in both directions.
+     *
+     * @param messageId   The ID of the message to show.
+     * @param messageDate The date of the message to show.
      */
-    private void hideKeyboard() {
-        InputMethodManager imm = (InputMethodManager) getSystemService(Context.INPUT_METHOD_SERVICE);
-        if (imm != null) {
-            imm.hideSoftInputFromWindow(editTextMessage.getWindowToken(), 0);
+    private void loadMessagesAround(int messageId, long messageDate) {
+        int generation = ++loadGeneration;
+        reloading = true;
+        repository.getMessagesPage(this, contactId, messageDate, messageId + 1, PAGE_SIZE, olderPage -> {
+            if (generation != loadGeneration) {
+                return;
+            }
+            repository.getMessagesPageAfter(this, contactId, messageDate, messageId, PAGE_SIZE, newerPage -> {
+                if (generation != loadGeneration) {
+                    return;
+                }
+                reloading = false;
+                hasOlderMessages = olderPage.size() == PAGE_SIZE;
+                hasNewerMessages = newerPage.size() == PAGE_SIZE;
+                loadingOlderMessages = false;
+                loadingNewerMessages = false;
+
+                messageList.clear();
+                messageList.addAll(olderPage);
+                messageList.addAll(newerPage);
+                messageAdapter.notifyDataSetChanged();
+
+                int targetPosition = olderPage.size() - 1;
+                if (targetPosition >= 0) {
+                    recyclerView.post(() -> recyclerView.scrollToPosition(targetPosition));
+                }
+            });
+        });
+    }
+
+    /**
+     * Loads the page of messages following the newest one displayed in the background
+     * and adds it at the bottom. Only needed when the conversation was opened around a message,
+     * or when newer messages were dropped by {@link #loadOlderMessages()}.
+     * The oldest messages are then dropped if more than {@link #MAX_LOADED_MESSAGES} are loaded.
+     */
+    private void loadNewerMessages() {
+        if (loadingNewerMessages || !hasNewerMessages || messageList.isEmpty()) {
+            return;
         }
+        loadingNewerMessages = true;
+
+        int generation = loadGeneration;
+        Message newest = messageList.get(messageList.size() - 1).getMessage();
+        repository.getMessagesPageAfter(this, contactId, newest.getDate(), newest.getId(), PAGE_SIZE, page -> {
+            if (generation != loadGeneration) {
+                return;
+            }
+            hasNewerMessages = page.size() == PAGE_SIZE;
+            messageAdapter.appendMessages(page);
+            loadingNewerMessages = false;
+            dropOldestMessages();
+        });
     }
 
+    /**
+     * Loads the page of messages preceding the oldest one displayed in the background
+     * and inserts it at the top. The newest messages are then dropped if more than
+     * {@link #MAX_LOADED_MESSAGES} are loaded; {@link #loadNewerMessages()} reloads them.
+     */
+    private void loadOlderMessages() {
+        if (loadingOlderMessages || !hasOlderMessages || messageList.isEmpty()) {
+            return;
+        }
+        loadingOlderMessages = true;
+
+        int generation = loadGeneration;
+        Message oldest = messageList.get(0).getMessage();
+        repository.getMessagesPage(this, contactId, oldest.getDate(), oldest.getId(), PAGE_SIZE, page -> {
+            if (generation != loadGeneration) {
+                return;
+            }
+            hasOlderMessages = page.size() == PAGE_SIZE;
+            messageAdapter.prependMessages(page);
+            loadingOlderMessages = false;
+
+            // The newest messages are left alone while a newer page is being loaded after them.
+            int excess = messageList.size() - MAX_LOADED_MESSAGES;
+            if (excess > 0 && !loadingNewerMessages) {
+                messageAdapter.removeNewest(excess);
+                hasNewerMessages = true;
+            }
+        });
+    }
 
     /**
-     * Closes the database when the activity is destroyed.
+     * Hides the keyboard after sending a message.
      */
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        this.dbHelper.close();
+    private void hideKeyboard() {
+        InputMethodManager imm = (InputMethodManager) getSystemService(Context.INPUT_METHOD_SERVICE);
+        if (imm != null) {
+            imm.hideSoftInputFromWindow(editTextMessage.getWindowToken(), 0);
+        }
     }
 }
@@ -0,0 +1,162 @@
+package dev.ktroude.ft_hangout.activities;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.View;
+import android.widget.EditText;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import dev.ktroude.ft_hangout.R;
+import dev.ktroude.ft_hangout.adapters.SearchResultAdapter;
+import dev.ktroude.ft_hangout.database.DatabaseHelper;
+import dev.ktroude.ft_hangout.database.Repository;
+import dev.ktroude.ft_hangout.models.SearchResult;
+
+/**
+ * SearchActivity searches the text of every conversation as the user types
+ * and lists the matching messages, newest first, one page at a time.
+ */
+public class SearchActivity extends AppCompatActivity {
+
+    private static final int PAGE_SIZE = 30;
+
+    /**
+     * Delay after the last keystroke before a search is started, so that typing a word
+     * runs one query instead of one per character.
+     */
+    private static final long SEARCH_DELAY_MS = 250;
+
+    private Repository repository;
+    private EditText editTextSearch;
+    private TextView textViewNoResult;
+    private RecyclerView recyclerView;
+    private SearchResultAdapter resultAdapter;
+    private final List<SearchResult> resultList = new ArrayList<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable searchRunnable = this::search;
+    private Repository.Task searchTask;
+    private String query = "";
+    private boolean hasMoreResults = false;
+    private boolean loadingMoreResults = false;
+
+    /**
+     * Called when the activity is created. Initializes UI components.
+     *
+     * @param savedInstanceState The saved instance state from a previous session.
+     */
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_search);
+
+        repository = Repository.getInstance(this);
+        initViews();
+        initRecyclerView();
+    }
+
+    /**
+     * Initializes UI components and starts a search whenever the query changes.
+     */
+    private void initViews() {
+        editTextSearch = findViewById(R.id.editTextSearch);
+        textViewNoResult = findViewById(R.id.textViewNoResult);
+        recyclerView = findViewById(R.id.recyclerViewResults);
+
+        editTextSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                handler.removeCallbacks(searchRunnable);
+                handler.postDelayed(searchRunnable, SEARCH_DELAY_MS);
+            }
+        });
+        editTextSearch.setOnEditorActionListener((view, actionId, event) -> {
+            handler.removeCallbacks(searchRunnable);
+            search();
+            return true;
+        });
+    }
+
+    /**
+     * Initializes the RecyclerView that displays the results.
+     */
+    private void initRecyclerView() {
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        resultAdapter = new SearchResultAdapter(resultList);
+        resultAdapter.setOnBottomReachedListener(() -> recyclerView.post(this::loadMoreResults));
+        recyclerView.setAdapter(resultAdapter);
+    }
+
+    /**
+     * Runs the current query from its first result, replacing the displayed results.
+     * A search still in flight for a previous query is cancelled.
+     */
+    private void search() {
+        String newQuery = editTextSearch.getText().toString().trim();
+        if (newQuery.equals(query) && searchTask != null) {
+            return;
+        }
+        query = newQuery;
+        cancelSearch();
+
+        searchTask = repository.searchMessages(this, query, DatabaseHelper.FIRST_RESULT, PAGE_SIZE, results -> {
+            hasMoreResults = results.size() == PAGE_SIZE;
+            resultList.clear();
+            resultList.addAll(results);
+            resultAdapter.notifyDataSetChanged();
+            recyclerView.scrollToPosition(0);
+            textViewNoResult.setVisibility(results.isEmpty() && !query.isEmpty() ? View.VISIBLE : View.GONE);
+        });
+    }
+
+    /**
+     * Loads the page of results following the last one displayed.
+     */
+    private void loadMoreResults() {
+        if (loadingMoreResults || !hasMoreResults || resultList.isEmpty()) {
+            return;
+        }
+        loadingMoreResults = true;
+
+        SearchResult last = resultList.get(resultList.size() - 1);
+        searchTask = repository.searchMessages(this, query, last.getMessageId(), PAGE_SIZE, results -> {
+            hasMoreResults = results.size() == PAGE_SIZE;
+            resultAdapter.appendResults(results);
+            loadingMoreResults = false;
+        });
+    }
+
+    /**
+     * Cancels the search or page load in flight, if any.
+     */
+    private void cancelSearch() {
+        if (searchTask != null) {
+            searchTask.cancel();
+        }
+        loadingMoreResults = false;
+    }
+
+    /**
+     * Stops any pending search when the activity is destroyed.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        handler.removeCallbacks(searchRunnable);
+    }
+}
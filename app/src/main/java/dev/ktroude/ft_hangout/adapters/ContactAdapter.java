@@ -2,16 +2,26 @@ package dev.ktroude.ft_hangout.adapters;
 
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
 import dev.ktroude.ft_hangout.R;
 import dev.ktroude.ft_hangout.activities.ContactDetailsActivity;
-import dev.ktroude.ft_hangout.models.Contact;
+import dev.ktroude.ft_hangout.models.ContactSummary;
+import dev.ktroude.ft_hangout.utils.ThumbnailLoader;
 
 /**
  * ContactAdapter is a RecyclerView adapter responsible for displaying a list of contacts
@@ -22,22 +32,40 @@ import dev.ktroude.ft_hangout.models.Contact;
  * instead of creating new ones each time an item is displayed.
 
  * Features:
- * - Displays contact names and phone numbers in a list format.
+ * - Displays contact names and phone numbers in a list format, with the last message
+ *   and the number of unread messages when the summary carries them.
  * - Uses a ViewHolder to hold references to views for efficient recycling.
+ * - Shows the thumbnail of each contact's picture, loaded in the background by {@link ThumbnailLoader},
+ *   or a placeholder with the contact's initial when it has none. A thumbnail that arrives after
+ *   its row was recycled for another contact is dropped.
  * - Implements click handling to open ContactDetailsActivity when a contact is selected.
+ * - Applies new lists as incremental updates, so filtering only rebinds the rows that change.
+ *   The differences are computed on a background thread, and rows have stable IDs.
  *
  */
 public class ContactAdapter extends RecyclerView.Adapter<ContactAdapter.ContactViewHolder> {
 
-    private final List<Contact> contactList;
+    private final AsyncListDiffer<ContactSummary> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM HH:mm", Locale.getDefault());
+    private ThumbnailLoader thumbnailLoader;
 
     /**
-     * Constructor for ContactAdapter.
+     * Constructor for ContactAdapter. The list starts empty; see {@link #updateContacts}.
+     */
+    public ContactAdapter() {
+        setHasStableIds(true);
+    }
+
+    /**
+     * Replaces the displayed contacts, notifying only the insertions, removals, moves and changes
+     * between the current list and the new one. The differences are computed on a background
+     * thread; if another list is submitted meanwhile, this one is never applied.
      *
-     * @param contactList The list of contacts to be displayed.
+     * @param newContacts The contact summaries to display, in display order. The list must not be modified afterwards.
+     * @param onApplied   Runs on the main thread once the list is displayed, may be null.
      */
-    public ContactAdapter(List<Contact> contactList) {
-        this.contactList = contactList;
+    public void updateContacts(List<ContactSummary> newContacts, @Nullable Runnable onApplied) {
+        differ.submitList(newContacts, onApplied);
     }
 
     /**
@@ -50,31 +78,95 @@ public class ContactAdapter extends RecyclerView.Adapter<ContactAdapter.ContactV
     @NonNull
     @Override
     public ContactViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        if (thumbnailLoader == null) {
+            thumbnailLoader = ThumbnailLoader.getInstance(parent.getContext());
+        }
         View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_contact, parent, false);
         return new ContactViewHolder(view);
     }
 
     /**
-     * Binds the data from a Contact object to the ViewHolder.
+     * Binds the data from a ContactSummary object to the ViewHolder.
      *
      * @param holder   The ViewHolder that should be updated with the contact data.
      * @param position The position of the item within the adapter's data set.
      */
     @Override
     public void onBindViewHolder(@NonNull ContactViewHolder holder, int position) {
-        Contact contact = contactList.get(position);
-        holder.textViewName.setText(String.format("%s %s", contact.getFirstname(), contact.getLastname()));
+        ContactSummary contact = differ.getCurrentList().get(position);
+        Context context = holder.itemView.getContext();
+        String name = String.format("%s %s", contact.getFirstname(), contact.getLastname());
+        if (contact.getUnreadCount() > 0) {
+            holder.textViewName.setText(context.getString(R.string.unread_count, name, contact.getUnreadCount()));
+        } else {
+            holder.textViewName.setText(name);
+        }
         holder.textViewPhone.setText(contact.getTelNumber());
+        bindAvatar(holder, contact, name);
+
+        if (contact.getLastMessage() != null) {
+            holder.textViewLastMessage.setText(context.getString(R.string.last_message,
+                    dateFormat.format(new Date(contact.getLastDate())), contact.getLastMessage()));
+            holder.textViewLastMessage.setVisibility(View.VISIBLE);
+        } else {
+            holder.textViewLastMessage.setVisibility(View.GONE);
+        }
 
         // Handles click event for opening ContactDetailsActivity
         holder.itemView.setOnClickListener(view -> {
-            Context context = view.getContext();
             Intent intent = new Intent(context, ContactDetailsActivity.class);
             intent.putExtra("contact_id", contact.getId());
             context.startActivity(intent);
         });
     }
 
+    /**
+     * Shows the thumbnail of a contact. A thumbnail already in memory is shown right away;
+     * otherwise the placeholder is shown while the thumbnail loads.
+     *
+     * @param holder  The ViewHolder being bound.
+     * @param contact The contact it is bound to.
+     * @param name    The displayed name of the contact, for the placeholder.
+     */
+    private void bindAvatar(ContactViewHolder holder, ContactSummary contact, String name) {
+        String picture = contact.getPicture();
+        if (picture != null && picture.equals(holder.pictureKey) && holder.thumbnailRequest != null) {
+            // The same thumbnail is already on its way
+            return;
+        }
+        holder.cancelThumbnail();
+        holder.pictureKey = picture;
+
+        Bitmap thumbnail = thumbnailLoader.getCached(picture);
+        if (thumbnail != null) {
+            holder.imageViewAvatar.setImageBitmap(thumbnail);
+            return;
+        }
+        Bitmap placeholder = thumbnailLoader.getPlaceholder(name);
+        holder.imageViewAvatar.setImageBitmap(placeholder);
+        if (picture == null || picture.isEmpty()) {
+            return;
+        }
+        holder.thumbnailRequest = thumbnailLoader.load(picture, loaded -> {
+            holder.thumbnailRequest = null;
+            if (loaded != null && picture.equals(holder.pictureKey)) {
+                holder.imageViewAvatar.setImageBitmap(loaded);
+            }
+        });
+    }
+
+    /**
+     * Stops loading the thumbnail of a row that scrolled out of view.
+     *
+     * @param holder The ViewHolder being recycled.
+     */
+    @Override
+    public void onViewRecycled(@NonNull ContactViewHolder holder) {
+        super.onViewRecycled(holder);
+        holder.cancelThumbnail();
+        holder.pictureKey = null;
+    }
+
     /**
      * Returns the total number of items in the contact list.
      *
@@ -82,15 +174,55 @@ public class ContactAdapter extends RecyclerView.Adapter<ContactAdapter.ContactV
      */
     @Override
     public int getItemCount() {
-        return contactList.size();
+        return differ.getCurrentList().size();
     }
 
+    /**
+     * Identifies rows by contact ID, so a contact keeps its ViewHolder when the list is reordered.
+     *
+     * @param position The position of the item within the adapter's data set.
+     * @return The ID of the contact at that position.
+     */
+    @Override
+    public long getItemId(int position) {
+        return differ.getCurrentList().get(position).getId();
+    }
+
+    /**
+     * Compares contacts: they are the same item when they share their ID,
+     * and their row only needs rebinding when a displayed field changed.
+     */
+    private static final DiffUtil.ItemCallback<ContactSummary> DIFF_CALLBACK = new DiffUtil.ItemCallback<ContactSummary>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ContactSummary oldContact, @NonNull ContactSummary newContact) {
+            return oldContact.getId().equals(newContact.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull ContactSummary oldContact, @NonNull ContactSummary newContact) {
+            return Objects.equals(oldContact.getFirstname(), newContact.getFirstname())
+                    && Objects.equals(oldContact.getLastname(), newContact.getLastname())
+                    && Objects.equals(oldContact.getTelNumber(), newContact.getTelNumber())
+                    && Objects.equals(oldContact.getLastMessage(), newContact.getLastMessage())
+                    && oldContact.getLastDate() == newContact.getLastDate()
+                    && oldContact.getUnreadCount() == newContact.getUnreadCount()
+                    && Objects.equals(oldContact.getPicture(), newContact.getPicture());
+        }
+    };
+
     /**
      * ViewHolder class for Contact items.
      * Holds references to the views for each contact item.
      */
     static class ContactViewHolder extends RecyclerView.ViewHolder {
-        TextView textViewName, textViewPhone;
+        TextView textViewName, textViewPhone, textViewLastMessage;
+        ImageView imageViewAvatar;
+
+        /**
+         * Avatar key of the picture this row is showing or waiting for.
+         */
+        String pictureKey;
+        ThumbnailLoader.Request thumbnailRequest;
 
         /**
          * Constructor for ContactViewHolder.
@@ -101,6 +233,18 @@ public class ContactAdapter extends RecyclerView.Adapter<ContactAdapter.ContactV
             super(itemView);
             textViewName = itemView.findViewById(R.id.textViewName);
             textViewPhone = itemView.findViewById(R.id.textViewPhone);
+            textViewLastMessage = itemView.findViewById(R.id.textViewLastMessage);
+            imageViewAvatar = itemView.findViewById(R.id.imageViewAvatar);
+        }
+
+        /**
+         * Cancels the thumbnail load in flight, if any.
+         */
+        void cancelThumbnail() {
+            if (thumbnailRequest != null) {
+                thumbnailRequest.cancel();
+                thumbnailRequest = null;
+            }
         }
     }
 }
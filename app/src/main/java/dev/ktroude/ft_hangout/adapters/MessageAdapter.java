@@ -1,23 +1,18 @@
 package dev.ktroude.ft_hangout.adapters;
 
-import android.graphics.Color;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
-import androidx.cardview.widget.CardView;
-import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 
 import dev.ktroude.ft_hangout.R;
 import dev.ktroude.ft_hangout.models.Message;
+import dev.ktroude.ft_hangout.models.MessageItem;
 
 /**
  * MessageAdapter is a RecyclerView adapter responsible for displaying a list of messages
@@ -25,40 +20,251 @@ import dev.ktroude.ft_hangout.models.Message;
  * and differentiates between sent and received messages with distinct alignments and styles.
  *
  * Features:
- * - Displays messages with timestamps in a structured conversation format.
+ * - Displays messages with timestamps in a structured conversation format, with the day
+ *   above the first message of each day.
  * - Uses the ViewHolder pattern to optimize performance by recycling views.
- * - Differentiates between sent and received messages:
+ * - Differentiates between sent and received messages with one view type each:
  *   - Sent messages are aligned to the right with a distinct background color.
  *   - Received messages are aligned to the left with a different background.
+ *   A bubble is never restyled, and binding only sets texts formatted in advance by
+ *   {@link MessageItem}, so scrolling neither allocates nor changes layout parameters.
+ * - Uses the message IDs as stable IDs.
+ * - Asks for older messages when the user scrolls close to the top of the loaded history,
+ *   so only the pages the user actually reads are loaded. When the conversation was opened in
+ *   the middle of its history, newer messages are requested the same way at the bottom.
+ *   Messages far from the viewport can be dropped at either end, to be requested again later.
+ * - Adds sent and received messages one by one at the bottom, so only the new bubbles are bound.
+ * - Shows under each sent bubble whether the message is being sent, sent, delivered or failed,
+ *   rebinding only that label when the outbox reports a change.
  *
  * @author Your Name
  * @version 1.0
  */
 public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageViewHolder> {
 
-    private final List<Message> messageList;
+    /**
+     * Number of items from either end at which the next page is requested.
+     */
+    private static final int PREFETCH_DISTANCE = 10;
+
+    private static final int VIEW_TYPE_SENT = 0;
+    private static final int VIEW_TYPE_RECEIVED = 1;
+
+    /**
+     * Payload of a change that only affects the status of a sent message.
+     */
+    private static final Object PAYLOAD_STATUS = new Object();
+
+    private final List<MessageItem> messageList;
+    private Runnable onTopReachedListener;
+    private Runnable onBottomReachedListener;
 
     /**
      * Constructor for MessageAdapter.
      *
-     * @param messages The list of messages to be displayed in the RecyclerView.
+     * @param messages The list of messages to be displayed in the RecyclerView, oldest first.
      */
-    public MessageAdapter(List<Message> messages) {
+    public MessageAdapter(List<MessageItem> messages) {
         this.messageList = messages;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Sets the callback invoked when the user scrolls close to the oldest loaded message.
+     * The callback is expected to load the previous page and hand it to {@link #prependMessages(List)}.
+     *
+     * @param listener The callback to invoke, or null to stop loading older pages.
+     */
+    public void setOnTopReachedListener(Runnable listener) {
+        this.onTopReachedListener = listener;
+    }
+
+    /**
+     * Sets the callback invoked when the user scrolls close to the newest loaded message.
+     * The callback is expected to load the next page and hand it to {@link #appendMessages(List)}.
+     *
+     * @param listener The callback to invoke, or null when the newest message is already loaded.
+     */
+    public void setOnBottomReachedListener(Runnable listener) {
+        this.onBottomReachedListener = listener;
+    }
+
+    /**
+     * Adds a newer page of messages below the ones already displayed.
+     *
+     * @param newerMessages The newer messages, oldest first.
+     */
+    public void appendMessages(List<MessageItem> newerMessages) {
+        if (newerMessages.isEmpty()) {
+            return;
+        }
+        int start = messageList.size();
+        messageList.addAll(newerMessages);
+        notifyItemRangeInserted(start, newerMessages.size());
+    }
+
+    /**
+     * Adds messages that were just stored below the ones already displayed, notifying one
+     * insertion per new message. Messages already displayed are skipped, since a send and a
+     * receive may both report the same message.
+     * <p>
+     * Nothing is added when one of the messages does not come after the newest displayed one
+     * and is not displayed either: there is a gap in the sequence, which only a reload can fill.
+     * </p>
+     *
+     * @param newMessages The new messages, oldest first, as read from the database.
+     * @return True if the list is up to date, false if the conversation has to be reloaded.
+     */
+    public boolean appendNewMessages(List<MessageItem> newMessages) {
+        int newestIndex = messageList.size() - 1;
+        int firstNew = 0;
+        while (firstNew < newMessages.size() && newestIndex >= 0
+                && !isAfter(newMessages.get(firstNew), messageList.get(newestIndex))) {
+            if (!isDisplayed(newMessages.get(firstNew))) {
+                return false;
+            }
+            firstNew++;
+        }
+
+        for (int i = firstNew; i < newMessages.size(); i++) {
+            messageList.add(newMessages.get(i));
+            notifyItemInserted(messageList.size() - 1);
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether a message sorts after another one in the conversation, by date then by ID.
+     */
+    private static boolean isAfter(MessageItem item, MessageItem otherItem) {
+        Message message = item.getMessage();
+        Message other = otherItem.getMessage();
+        if (message.getDate() != other.getDate()) {
+            return message.getDate() > other.getDate();
+        }
+        return message.getId() > other.getId();
+    }
+
+    /**
+     * Tells whether a message is displayed, looking only at the messages that do not sort before it.
+     */
+    private boolean isDisplayed(MessageItem item) {
+        for (int i = messageList.size() - 1; i >= 0; i--) {
+            MessageItem displayed = messageList.get(i);
+            if (displayed.getMessage().getId().equals(item.getMessage().getId())) {
+                return true;
+            }
+            if (isAfter(item, displayed)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Updates the status of a displayed message and rebinds only its status label.
+     * Messages that are not displayed are ignored; they are read with their current status when loaded.
+     *
+     * @param messageId The ID of the message.
+     * @param status    The new status.
+     */
+    public void updateStatus(int messageId, int status) {
+        // The outbox reports on recent messages, so the search starts from the newest one.
+        for (int i = messageList.size() - 1; i >= 0; i--) {
+            Message message = messageList.get(i).getMessage();
+            if (message.getId() == messageId) {
+                if (message.getStatus() != status) {
+                    message.setStatus(status);
+                    notifyItemChanged(i, PAYLOAD_STATUS);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Inserts an older page of messages above the ones already displayed.
+     * The previously oldest message is rebound when it no longer starts its day.
+     *
+     * @param olderMessages The older messages, oldest first.
+     */
+    public void prependMessages(List<MessageItem> olderMessages) {
+        if (olderMessages.isEmpty()) {
+            return;
+        }
+        boolean sameDay = !messageList.isEmpty()
+                && messageList.get(0).getDay() == olderMessages.get(olderMessages.size() - 1).getDay();
+        messageList.addAll(0, olderMessages);
+        notifyItemRangeInserted(0, olderMessages.size());
+        if (sameDay) {
+            notifyItemChanged(olderMessages.size());
+        }
+    }
+
+    /**
+     * Removes the newest messages, once they are far enough from the viewport
+     * to be loaded again through the bottom callback.
+     *
+     * @param count The number of messages to remove.
+     */
+    public void removeNewest(int count) {
+        int start = messageList.size() - count;
+        messageList.subList(start, messageList.size()).clear();
+        notifyItemRangeRemoved(start, count);
+    }
+
+    /**
+     * Removes the oldest messages, once they are far enough from the viewport
+     * to be loaded again through the top callback.
+     * The new oldest message is rebound when it did not start its day, since it now shows it.
+     *
+     * @param count The number of messages to remove.
+     */
+    public void removeOldest(int count) {
+        boolean sameDay = count < messageList.size()
+                && messageList.get(count - 1).getDay() == messageList.get(count).getDay();
+        messageList.subList(0, count).clear();
+        notifyItemRangeRemoved(0, count);
+        if (sameDay) {
+            notifyItemChanged(0);
+        }
+    }
+
+    /**
+     * Returns the view type of a message: sent and received bubbles have layouts of their own.
+     *
+     * @param position The position of the message in the list.
+     * @return {@link #VIEW_TYPE_SENT} or {@link #VIEW_TYPE_RECEIVED}.
+     */
+    @Override
+    public int getItemViewType(int position) {
+        return messageList.get(position).getMessage().isSend() ? VIEW_TYPE_SENT : VIEW_TYPE_RECEIVED;
+    }
+
+    /**
+     * Identifies bubbles by message ID.
+     *
+     * @param position The position of the message in the list.
+     * @return The ID of the message.
+     */
+    @Override
+    public long getItemId(int position) {
+        return messageList.get(position).getMessage().getId();
     }
 
     /**
      * Inflates the layout for individual message items and creates a new ViewHolder.
      *
      * @param parent   The parent ViewGroup.
-     * @param viewType The type of view (not used in this case).
+     * @param viewType {@link #VIEW_TYPE_SENT} or {@link #VIEW_TYPE_RECEIVED}.
      * @return A new MessageViewHolder containing the inflated layout.
      */
     @NonNull
     @Override
     public MessageViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        int layout = viewType == VIEW_TYPE_SENT ? R.layout.item_message_sent : R.layout.item_message_received;
         View view = LayoutInflater.from(parent.getContext())
-                .inflate(R.layout.item_message, parent, false);
+                .inflate(layout, parent, false);
         return new MessageViewHolder(view);
     }
 
@@ -70,32 +276,76 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
      */
     @Override
     public void onBindViewHolder(@NonNull MessageViewHolder holder, int position) {
-        Message message = messageList.get(position);
-        holder.textViewMessage.setText(message.getMsg());
-
-        // Formatting the date into a readable format (dd/MM/yyyy HH:mm)
-        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault());
-        String formattedDate = sdf.format(new Date(message.getDate()));
-        holder.textViewDate.setText(formattedDate);
-
-        // Adjusting layout parameters dynamically based on whether the message is sent or received
-        ConstraintLayout.LayoutParams params = (ConstraintLayout.LayoutParams) holder.cardView.getLayoutParams();
-
-        if (message.isSend()) {
-            // Align sent messages to the right
-            params.endToEnd = ConstraintLayout.LayoutParams.PARENT_ID;
-            params.startToStart = ConstraintLayout.LayoutParams.UNSET;
-            holder.textViewMessage.setBackgroundResource(R.drawable.bg_message_sent);
-            holder.textViewMessage.setTextColor(Color.WHITE);
+        MessageItem item = messageList.get(position);
+        holder.textViewMessage.setText(item.getMessage().getMsg());
+        holder.textViewDate.setText(item.getTime());
+        bindStatus(holder, item.getMessage());
+
+        if (position == 0 || messageList.get(position - 1).getDay() != item.getDay()) {
+            holder.textViewDay.setText(item.getDayLabel());
+            holder.textViewDay.setVisibility(View.VISIBLE);
         } else {
-            // Align received messages to the left
-            params.startToStart = ConstraintLayout.LayoutParams.PARENT_ID;
-            params.endToEnd = ConstraintLayout.LayoutParams.UNSET;
-            holder.textViewMessage.setBackgroundResource(R.drawable.bg_message_received);
-            holder.textViewMessage.setTextColor(Color.BLACK);
+            holder.textViewDay.setVisibility(View.GONE);
         }
 
-        holder.cardView.setLayoutParams(params);
+        if (position < PREFETCH_DISTANCE && onTopReachedListener != null) {
+            onTopReachedListener.run();
+        }
+        if (position >= messageList.size() - PREFETCH_DISTANCE && onBottomReachedListener != null) {
+            onBottomReachedListener.run();
+        }
+    }
+
+    /**
+     * Rebinds only the status label when that is all that changed.
+     *
+     * @param holder   The ViewHolder to bind data to.
+     * @param position The position of the message in the list.
+     * @param payloads The changes to apply, empty for a full bind.
+     */
+    @Override
+    public void onBindViewHolder(@NonNull MessageViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty() || !payloads.contains(PAYLOAD_STATUS)) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        bindStatus(holder, messageList.get(position).getMessage());
+    }
+
+    /**
+     * Shows the status of a sent message below its bubble. Received bubbles have no status label.
+     */
+    private static void bindStatus(MessageViewHolder holder, Message message) {
+        if (holder.textViewStatus == null) {
+            return;
+        }
+        int label = getStatusLabel(message.getStatus());
+        if (label == 0) {
+            holder.textViewStatus.setVisibility(View.GONE);
+        } else {
+            holder.textViewStatus.setText(label);
+            holder.textViewStatus.setVisibility(View.VISIBLE);
+        }
+    }
+
+    /**
+     * @param status The status of a message.
+     * @return The string resource describing it, or 0 if it is not shown.
+     */
+    private static int getStatusLabel(int status) {
+        switch (status) {
+            case Message.STATUS_QUEUED:
+            case Message.STATUS_SENDING:
+                return R.string.message_status_sending;
+            case Message.STATUS_SENT:
+                return R.string.message_status_sent;
+            case Message.STATUS_DELIVERED:
+                return R.string.message_status_delivered;
+            case Message.STATUS_FAILED:
+                return R.string.message_status_failed;
+            default:
+                return 0;
+        }
     }
 
     /**
@@ -113,8 +363,7 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
      * This helps optimize performance by reducing redundant view lookups.
      */
     public static class MessageViewHolder extends RecyclerView.ViewHolder {
-        TextView textViewMessage, textViewDate;
-        CardView cardView;
+        TextView textViewMessage, textViewDate, textViewDay, textViewStatus;
 
         /**
          * Constructor for MessageViewHolder.
@@ -125,7 +374,8 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
             super(itemView);
             textViewMessage = itemView.findViewById(R.id.textViewMessage);
             textViewDate = itemView.findViewById(R.id.textViewDate);
-            cardView = itemView.findViewById(R.id.cardView);
+            textViewDay = itemView.findViewById(R.id.textViewDay);
+            textViewStatus = itemView.findViewById(R.id.textViewStatus);
         }
     }
 }
@@ -0,0 +1,176 @@
+package dev.ktroude.ft_hangout.adapters;
+
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import dev.ktroude.ft_hangout.R;
+import dev.ktroude.ft_hangout.activities.MessageActivity;
+import dev.ktroude.ft_hangout.models.SearchResult;
+
+/**
+ * SearchResultAdapter displays the messages matching a full-text search.
+ * Each item shows the contact, the date and an excerpt of the message with the matching words
+ * in bold. Selecting an item opens the conversation scrolled to that message.
+ * Like {@link MessageAdapter}, it asks for the next page when the user scrolls close to the end.
+ */
+public class SearchResultAdapter extends RecyclerView.Adapter<SearchResultAdapter.SearchResultViewHolder> {
+
+    /**
+     * Number of items from the end at which the next page is requested.
+     */
+    private static final int PREFETCH_DISTANCE = 10;
+
+    private final List<SearchResult> resultList;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault());
+    private Runnable onBottomReachedListener;
+
+    /**
+     * Constructor for SearchResultAdapter.
+     *
+     * @param results The results to be displayed, best-ranked first.
+     */
+    public SearchResultAdapter(List<SearchResult> results) {
+        this.resultList = results;
+    }
+
+    /**
+     * Sets the callback invoked when the user scrolls close to the last loaded result.
+     * The callback is expected to load the next page and hand it to {@link #appendResults(List)}.
+     *
+     * @param listener The callback to invoke, or null to stop loading pages.
+     */
+    public void setOnBottomReachedListener(Runnable listener) {
+        this.onBottomReachedListener = listener;
+    }
+
+    /**
+     * Adds the next page of results below the ones already displayed.
+     *
+     * @param results The next results.
+     */
+    public void appendResults(List<SearchResult> results) {
+        if (results.isEmpty()) {
+            return;
+        }
+        int start = resultList.size();
+        resultList.addAll(results);
+        notifyItemRangeInserted(start, results.size());
+    }
+
+    /**
+     * Creates a new ViewHolder instance for each item in the RecyclerView.
+     *
+     * @param parent   The parent ViewGroup into which the new View will be added.
+     * @param viewType The view type of the new View.
+     * @return A new instance of SearchResultViewHolder.
+     */
+    @NonNull
+    @Override
+    public SearchResultViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_search_result, parent, false);
+        return new SearchResultViewHolder(view);
+    }
+
+    /**
+     * Binds the data from a SearchResult object to the ViewHolder.
+     *
+     * @param holder   The ViewHolder that should be updated with the result data.
+     * @param position The position of the item within the adapter's data set.
+     */
+    @Override
+    public void onBindViewHolder(@NonNull SearchResultViewHolder holder, int position) {
+        SearchResult result = resultList.get(position);
+        Context context = holder.itemView.getContext();
+
+        if (result.getFirstname() == null && result.getLastname() == null) {
+            holder.textViewName.setText(context.getString(R.string.search_unknown_contact));
+        } else {
+            holder.textViewName.setText(String.format("%s %s", result.getFirstname(), result.getLastname()));
+        }
+        holder.textViewDate.setText(dateFormat.format(new Date(result.getDate())));
+        holder.textViewSnippet.setText(highlight(result.getSnippet()));
+
+        // Handles click event for opening the conversation at the matching message
+        holder.itemView.setOnClickListener(view -> {
+            Intent intent = new Intent(context, MessageActivity.class);
+            intent.putExtra("contact_id", result.getContactId());
+            intent.putExtra(MessageActivity.EXTRA_MESSAGE_ID, result.getMessageId());
+            intent.putExtra(MessageActivity.EXTRA_MESSAGE_DATE, result.getDate());
+            context.startActivity(intent);
+        });
+
+        if (position >= resultList.size() - PREFETCH_DISTANCE && onBottomReachedListener != null) {
+            onBottomReachedListener.run();
+        }
+    }
+
+    /**
+     * Returns the total number of results in the list.
+     *
+     * @return The number of results.
+     */
+    @Override
+    public int getItemCount() {
+        return resultList.size();
+    }
+
+    /**
+     * Turns the matching words of a snippet, which the database puts between
+     * {@link SearchResult#MATCH_START} and {@link SearchResult#MATCH_END}, into bold text.
+     *
+     * @param snippet The snippet returned by the search.
+     * @return The text to display.
+     */
+    private static CharSequence highlight(String snippet) {
+        SpannableStringBuilder text = new SpannableStringBuilder();
+        int matchStart = -1;
+        for (int i = 0; i < snippet.length(); i++) {
+            char c = snippet.charAt(i);
+            if (c == SearchResult.MATCH_START) {
+                matchStart = text.length();
+            } else if (c == SearchResult.MATCH_END && matchStart != -1) {
+                text.setSpan(new StyleSpan(Typeface.BOLD), matchStart, text.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                matchStart = -1;
+            } else {
+                text.append(c);
+            }
+        }
+        return text;
+    }
+
+    /**
+     * ViewHolder class for search result items.
+     * Holds references to the views for each result item.
+     */
+    static class SearchResultViewHolder extends RecyclerView.ViewHolder {
+        TextView textViewName, textViewDate, textViewSnippet;
+
+        /**
+         * Constructor for SearchResultViewHolder.
+         *
+         * @param itemView The view representing a single result item.
+         */
+        public SearchResultViewHolder(@NonNull View itemView) {
+            super(itemView);
+            textViewName = itemView.findViewById(R.id.textViewName);
+            textViewDate = itemView.findViewById(R.id.textViewDate);
+            textViewSnippet = itemView.findViewById(R.id.textViewSnippet);
+        }
+    }
+}
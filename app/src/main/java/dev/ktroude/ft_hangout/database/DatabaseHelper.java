@@ -5,31 +5,181 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import java.util.ArrayList;
 import java.util.List;
 
 import dev.ktroude.ft_hangout.models.Contact;
+import dev.ktroude.ft_hangout.models.ContactSummary;
 import dev.ktroude.ft_hangout.models.Message;
+import dev.ktroude.ft_hangout.models.OutgoingSms;
+import dev.ktroude.ft_hangout.models.SearchResult;
+import dev.ktroude.ft_hangout.utils.AvatarStore;
+import dev.ktroude.ft_hangout.utils.PhoneNumberNormalizer;
 
 /**
  * DatabaseHelper is a SQLite database helper class for managing the storage of contacts and messages.
  * It provides methods to create, update, delete, and retrieve contacts and messages.
+ * <p>
+ * A single, application-scoped instance is shared by every component. The underlying connection
+ * stays open for as long as at least one component holds a reference obtained through
+ * {@link #acquire(Context)}; it is only closed when the last holder calls {@link #release()}.
+ * Write-ahead logging is enabled so that readers are never blocked behind the SMS receiver's writes.
+ * </p>
  */
 public class DatabaseHelper extends SQLiteOpenHelper {
 
     private static final String DATABASE_NAME = "contacts.db";
-    private static final int DATABASE_VERSION = 2;
+    static final int DATABASE_VERSION = 11;
+
+    static final String SQL_CONTACT_BY_ID = "SELECT * FROM contacts WHERE id = ?";
+    static final String SQL_CONTACT_ID_BY_NUMBER = "SELECT id FROM contacts WHERE numberKey = ? ORDER BY id LIMIT 1";
+    static final String SQL_FILTER_CONTACT_SUMMARIES =
+            "SELECT c.id, c.firstname, c.lastname, c.telNumber, v.lastMessage, v.lastDate, v.unreadCount, c.picture " +
+                    "FROM contacts c LEFT JOIN conversations v ON v.contactId = c.id " +
+                    "WHERE c.firstname LIKE ?1 OR c.lastname LIKE ?1 OR c.telNumber LIKE ?1";
+    static final String SQL_FILTER_CONTACT_SUMMARIES_BY_NUMBER =
+            "SELECT c.id, c.firstname, c.lastname, c.telNumber, v.lastMessage, v.lastDate, v.unreadCount, c.picture " +
+                    "FROM contacts c LEFT JOIN conversations v ON v.contactId = c.id " +
+                    "WHERE c.numberKey >= ?1 AND c.numberKey < ?2";
+    static final String SQL_INBOX =
+            "SELECT c.id, c.firstname, c.lastname, c.telNumber, v.lastMessage, v.lastDate, v.unreadCount, c.picture " +
+                    "FROM conversations v JOIN contacts c ON c.id = v.contactId " +
+                    "ORDER BY v.lastDate DESC, v.contactId DESC";
+    static final String SQL_CONTACT_PICTURE = "SELECT picture FROM contacts WHERE id = ?";
+    static final String SQL_PICTURE_IN_USE = "SELECT 1 FROM contacts WHERE picture = ? LIMIT 1";
+    static final String SQL_MESSAGES_FROM_CONTACT = "SELECT * FROM messages WHERE contactId = ? ORDER BY date, id";
+    static final String SQL_MESSAGES_PAGE =
+            "SELECT * FROM messages WHERE contactId = ? AND date <= ? AND (date < ? OR id < ?) " +
+                    "ORDER BY date DESC, id DESC LIMIT ?";
+    static final String SQL_MESSAGES_PAGE_AFTER =
+            "SELECT * FROM messages WHERE contactId = ? AND date >= ? AND (date > ? OR id > ?) " +
+                    "ORDER BY date, id LIMIT ?";
+    static final String SQL_UPDATE_CONVERSATION =
+            "UPDATE conversations SET messageCount = messageCount + 1, unreadCount = unreadCount + ?1, " +
+                    "lastMessageId = CASE WHEN ?2 >= lastDate THEN ?3 ELSE lastMessageId END, " +
+                    "lastMessage = CASE WHEN ?2 >= lastDate THEN ?4 ELSE lastMessage END, " +
+                    "lastDate = MAX(lastDate, ?2) " +
+                    "WHERE contactId = ?5";
+    static final String SQL_MARK_CONVERSATION_READ =
+            "UPDATE conversations SET unreadCount = 0, lastReadId = IFNULL((SELECT MAX(id) FROM messages), 0) " +
+                    "WHERE contactId = ?";
+    static final String SQL_OUTBOX =
+            "SELECT m.id, m.contactId, c.telNumber, m.msg, m.attempts, m.nextAttempt, m.parts " +
+                    "FROM messages m LEFT JOIN contacts c ON c.id = m.contactId " +
+                    "WHERE m.status = ? ORDER BY m.id LIMIT ?";
+    static final String SQL_UPDATE_MESSAGE_STATUS = "UPDATE messages SET status = ? WHERE id = ? AND status = ?";
+    static final String SQL_UPDATE_PENDING_PARTS = "UPDATE messages SET parts = ? WHERE id = ?";
+    static final String SQL_RECORD_SEND_FAILURE =
+            "UPDATE messages SET status = ?, attempts = ?, nextAttempt = ? WHERE id = ?";
+
+    /**
+     * The conversations table as it should be, recomputed from the contacts and messages tables.
+     * Read marks are kept from the current table, since they are not recorded anywhere else.
+     */
+    static final String SQL_EXPECTED_CONVERSATIONS =
+            "SELECT s.contactId, m.id AS lastMessageId, m.msg AS lastMessage, IFNULL(m.date, 0) AS lastDate, " +
+                    "s.messageCount, " +
+                    "(SELECT COUNT(*) FROM messages u " +
+                    "WHERE u.contactId = s.contactId AND u.isSend = 0 AND u.id > s.lastReadId) AS unreadCount, " +
+                    "s.lastReadId " +
+                    "FROM (SELECT c.id AS contactId, " +
+                    "(SELECT id FROM messages WHERE contactId = c.id ORDER BY date DESC, id DESC LIMIT 1) AS lastMessageId, " +
+                    "(SELECT COUNT(*) FROM messages WHERE contactId = c.id) AS messageCount, " +
+                    "IFNULL((SELECT lastReadId FROM conversations WHERE contactId = c.id), 0) AS lastReadId " +
+                    "FROM contacts c) s " +
+                    "LEFT JOIN messages m ON m.id = s.lastMessageId";
+    private static final String CONVERSATION_COLUMNS =
+            "contactId, lastMessageId, lastMessage, lastDate, messageCount, unreadCount, lastReadId";
+
+    static final String SQL_SEARCH_MESSAGES =
+            "SELECT m.id, m.contactId, c.firstname, c.lastname, " +
+                    "snippet(messages_fts, char(2), char(3), '…', -1, 12), m.date, m.isSend " +
+                    "FROM messages_fts JOIN messages m ON m.id = messages_fts.docid " +
+                    "LEFT JOIN contacts c ON c.id = m.contactId " +
+                    "WHERE messages_fts MATCH ? AND messages_fts.docid < ? " +
+                    "ORDER BY messages_fts.docid DESC LIMIT ?";
+
+    /**
+     * Cursor values that make {@link #getMessagesPage} start from the newest message.
+     */
+    public static final long NEWEST_DATE = Long.MAX_VALUE;
+    public static final int NEWEST_ID = Integer.MAX_VALUE;
+
+    /**
+     * Cursor value that makes {@link #searchMessages} start from the newest result.
+     */
+    public static final int FIRST_RESULT = Integer.MAX_VALUE;
+
+    /**
+     * Number of senders whose contact ID is kept in memory, enough for every active conversation.
+     */
+    private static final int SENDER_CACHE_SIZE = 256;
+
+    private static DatabaseHelper instance;
+    private int referenceCount = 0;
+    private final Context context;
+    private final SenderCache senderCache = new SenderCache(SENDER_CACHE_SIZE);
+
+    /**
+     * Sender cache invalidations made inside a {@link #runInTransaction} block, replayed once
+     * the transaction has ended so that no lookup can cache the rows it was hiding.
+     */
+    private final ThreadLocal<List<Runnable>> pendingSenderInvalidations = new ThreadLocal<List<Runnable>>() {
+        @Override
+        protected List<Runnable> initialValue() {
+            return new ArrayList<>();
+        }
+    };
 
     /**
      * Constructor for DatabaseHelper.
+     * Use {@link #acquire(Context)} instead, so that every component shares the same connection.
      *
      * @param context The context of the application.
+     * @param name    The database file name, or null for an in-memory database.
+     */
+    @VisibleForTesting
+    public DatabaseHelper(@Nullable Context context, @Nullable String name) {
+        super(context, name, null, DATABASE_VERSION);
+        this.context = context;
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Returns the shared DatabaseHelper and registers the caller as one of its holders.
+     * Every call must be balanced by a call to {@link #release()}.
+     *
+     * @param context Any context; only its application context is retained.
+     * @return The application-scoped DatabaseHelper.
+     */
+    public static synchronized DatabaseHelper acquire(Context context) {
+        if (instance == null) {
+            instance = new DatabaseHelper(context.getApplicationContext(), DATABASE_NAME);
+        }
+        instance.referenceCount++;
+        return instance;
+    }
+
+    /**
+     * Releases a reference obtained through {@link #acquire(Context)}.
+     * The connection is closed once the last holder has released it.
      */
-    public DatabaseHelper(@Nullable Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    public void release() {
+        synchronized (DatabaseHelper.class) {
+            if (referenceCount == 0) {
+                throw new IllegalStateException("DatabaseHelper released more times than acquired");
+            }
+            referenceCount--;
+            if (referenceCount == 0) {
+                close();
+            }
+        }
     }
 
     /**
@@ -47,7 +197,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                         "email TEXT, " +
                         "address TEXT, " +
                         "telNumber TEXT NOT NULL, " +
-                        "picture TEXT)";
+                        "picture TEXT, " +
+                        "numberKey TEXT)";
         db.execSQL(createTable);
 
         String createMessagesTable =
@@ -57,12 +208,33 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                         "msg TEXT NOT NULL, " +
                         "date INTEGER NOT NULL, " +
                         "isSend INTEGER NOT NULL, " +
+                        "status INTEGER NOT NULL DEFAULT 0, " +
+                        "attempts INTEGER NOT NULL DEFAULT 0, " +
+                        "nextAttempt INTEGER NOT NULL DEFAULT 0, " +
+                        "parts INTEGER NOT NULL DEFAULT 0, " +
                         "FOREIGN KEY(contactId) REFERENCES contacts(id))";
         db.execSQL(createMessagesTable);
+
+        db.execSQL(Migrations.CREATE_INDEX_MESSAGES_CONTACT_DATE);
+        db.execSQL(Migrations.CREATE_INDEX_MESSAGES_STATUS);
+        db.execSQL(Migrations.CREATE_INDEX_CONTACTS_PICTURE);
+        db.execSQL(Migrations.CREATE_INDEX_CONTACTS_FIRSTNAME_NOCASE);
+        db.execSQL(Migrations.CREATE_INDEX_CONTACTS_LASTNAME_NOCASE);
+        db.execSQL(Migrations.CREATE_INDEX_CONTACTS_TEL_NUMBER_NOCASE);
+        db.execSQL(Migrations.CREATE_INDEX_CONTACTS_NUMBER_KEY);
+
+        db.execSQL(Migrations.CREATE_MESSAGES_FTS);
+        for (String trigger : Migrations.CREATE_MESSAGES_FTS_TRIGGERS) {
+            db.execSQL(trigger);
+        }
+
+        db.execSQL(Migrations.CREATE_CONVERSATIONS);
+        db.execSQL(Migrations.CREATE_INDEX_CONVERSATIONS_LAST_DATE);
     }
 
     /**
-     * Handles database upgrades by dropping and recreating the tables.
+     * Handles database upgrades by running every registered {@link Migration} between the two versions.
+     * Existing contacts and messages are preserved.
      *
      * @param db         The database instance.
      * @param oldVersion The previous database version.
@@ -70,13 +242,11 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS messages");
-        db.execSQL("DROP TABLE IF EXISTS contacts");
-        onCreate(db);
+        Migrations.run(context, db, oldVersion, newVersion);
     }
 
     /**
-     * Adds a new contact to the database.
+     * Adds a new contact to the database, along with its empty conversation summary.
      *
      * @param contact The contact object to be added.
      * @return The ID of the newly added contact or 0 if the insertion failed.
@@ -90,10 +260,22 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         values.put("email", contact.getEmail());
         values.put("address", contact.getAddress());
         values.put("telNumber", contact.getTelNumber());
+        values.put("numberKey", PhoneNumberNormalizer.toKey(contact.getTelNumber()));
         values.put("picture", contact.getPicture());
 
-        long contactId = db.insert("contacts", null, values);
-        db.close();
+        long contactId;
+        db.beginTransaction();
+        try {
+            contactId = db.insert("contacts", null, values);
+            if (contactId != -1) {
+                db.execSQL("INSERT OR IGNORE INTO conversations (contactId) VALUES (?)", new Object[]{contactId});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        String numberKey = values.getAsString("numberKey");
+        invalidateSenders(db, () -> senderCache.invalidate(numberKey));
         return (contactId != -1) ? (int) contactId : 0;
     }
 
@@ -107,8 +289,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getReadableDatabase();
         Contact contact = null;
 
-        String query = "SELECT * FROM contacts WHERE id = ?";
-        Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(id)});
+        Cursor cursor = db.rawQuery(SQL_CONTACT_BY_ID, new String[]{String.valueOf(id)});
 
         if (cursor.moveToFirst()) {
             contact = new Contact(
@@ -118,63 +299,94 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     cursor.getString(3), // email
                     cursor.getString(4), // address
                     cursor.getString(5), // telNumber
-                    cursor.getString(6)  // picture (Base64)
+                    cursor.getString(6)  // picture (avatar key)
             );
         }
 
         cursor.close();
-        db.close();
         return contact;
     }
 
     /**
-     * Retrieves a contact by their phone number.
+     * Finds the ID of the contact a phone number belongs to, going through the in-memory
+     * {@link SenderCache} first. Used for every incoming SMS.
+     * Numbers are compared by their {@link PhoneNumberNormalizer} key, so "06 12 34 56 78"
+     * finds the contact saved as "+33612345678".
      *
-     * @param telNumber The phone number of the contact.
-     * @return The corresponding Contact object or null if not found.
+     * @param telNumber The phone number, in any format.
+     * @return The ID of the oldest contact with that number, or null if there is none.
      */
-    public Contact getContactByNumber(String telNumber) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Contact contact = null;
+    public Integer getContactIdByNumber(String telNumber) {
+        String numberKey = PhoneNumberNormalizer.toKey(telNumber);
+        Integer cached = senderCache.get(numberKey);
+        if (cached != null) {
+            return cached == SenderCache.NO_CONTACT ? null : cached;
+        }
 
-        String query = "SELECT * FROM contacts WHERE telNumber = ?";
-        Cursor cursor = db.rawQuery(query, new String[]{telNumber});
+        long generation = senderCache.generation();
+        Integer contactId = null;
+        try (Cursor cursor = this.getReadableDatabase().rawQuery(SQL_CONTACT_ID_BY_NUMBER, new String[]{numberKey})) {
+            if (cursor.moveToFirst()) {
+                contactId = cursor.getInt(0);
+            }
+        }
+        senderCache.putIfCurrent(numberKey, contactId != null ? contactId : SenderCache.NO_CONTACT, generation);
+        return contactId;
+    }
 
-        if (cursor.moveToFirst()) {
-            contact = new Contact(
-                    cursor.getInt(0),    // id
-                    cursor.getString(1), // firstname
-                    cursor.getString(2), // lastname
-                    cursor.getString(3), // email
-                    cursor.getString(4), // address
-                    cursor.getString(5), // telNumber
-                    cursor.getString(6)  // picture (Base64)
-            );
+    /**
+     * @return The cache of sender numbers to contact IDs, for its hit and miss counters.
+     */
+    public SenderCache getSenderCache() {
+        return senderCache;
+    }
+
+    /**
+     * Applies a sender cache invalidation now and, when called inside an enclosing transaction,
+     * once more after it ends: until then, other connections still read the previous contacts
+     * and could cache them again.
+     *
+     * @param db           The database instance.
+     * @param invalidation The invalidation to apply.
+     */
+    private void invalidateSenders(SQLiteDatabase db, Runnable invalidation) {
+        invalidation.run();
+        if (db.inTransaction()) {
+            pendingSenderInvalidations.get().add(invalidation);
         }
-        cursor.close();
-        db.close();
-        return contact;
     }
 
 
     /**
-     * Deletes a contact by ID.
+     * Deletes a contact by ID, along with its conversation summary
+     * and its picture if no other contact uses it.
      *
      * @param id The ID of the contact to be deleted.
      */
     public void deleteContact(Integer id) {
         SQLiteDatabase db = this.getWritableDatabase();
-        db.delete("contacts", "id = ?", new String[]{String.valueOf(id)});
-        db.close();
+        String oldPicture = getPictureKey(db, id);
+        db.beginTransaction();
+        try {
+            db.delete("contacts", "id = ?", new String[]{String.valueOf(id)});
+            db.delete("conversations", "contactId = ?", new String[]{String.valueOf(id)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        invalidateSenders(db, () -> senderCache.invalidateContact(id));
+        deletePictureIfUnused(db, oldPicture);
     }
 
     /**
      * Updates an existing contact in the database.
+     * The previous picture is deleted if it was replaced and no other contact uses it.
      *
      * @param contact The updated contact object.
      */
     public void updateContact(Contact contact) {
         SQLiteDatabase db = this.getWritableDatabase();
+        String oldPicture = getPictureKey(db, contact.getId());
 
         ContentValues values = new ContentValues();
         values.put("firstname", contact.getFirstname());
@@ -182,43 +394,135 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         values.put("email", contact.getEmail());
         values.put("address", contact.getAddress());
         values.put("telNumber", contact.getTelNumber());
+        values.put("numberKey", PhoneNumberNormalizer.toKey(contact.getTelNumber()));
         values.put("picture", contact.getPicture());
 
         db.update("contacts", values, "id = ?", new String[]{String.valueOf(contact.getId())});
-        db.close();
+        String numberKey = values.getAsString("numberKey");
+        int contactId = contact.getId();
+        invalidateSenders(db, () -> {
+            senderCache.invalidateContact(contactId);
+            senderCache.invalidate(numberKey);
+        });
+        deletePictureIfUnused(db, oldPicture);
     }
 
     /**
-     * Retrieves all contacts from the database.
+     * Reads the avatar key of a contact.
      *
-     * @return A list of all contacts.
+     * @param db The database instance.
+     * @param id The ID of the contact.
+     * @return The avatar key, or null if the contact has no picture.
      */
-    public List<Contact> getAllContacts() {
+    private String getPictureKey(SQLiteDatabase db, Integer id) {
+        Cursor cursor = db.rawQuery(SQL_CONTACT_PICTURE, new String[]{String.valueOf(id)});
+        String key = cursor.moveToFirst() ? cursor.getString(0) : null;
+        cursor.close();
+        return key;
+    }
+
+    /**
+     * Deletes a picture from the {@link AvatarStore} once no contact references it anymore.
+     *
+     * @param db  The database instance.
+     * @param key The avatar key, may be null or empty.
+     */
+    private void deletePictureIfUnused(SQLiteDatabase db, String key) {
+        if (key == null || key.isEmpty()) {
+            return;
+        }
+        Cursor cursor = db.rawQuery(SQL_PICTURE_IN_USE, new String[]{key});
+        boolean inUse = cursor.moveToFirst();
+        cursor.close();
+        if (!inUse) {
+            AvatarStore.getInstance(context).delete(key);
+        }
+    }
+
+    /**
+     * Retrieves every contact with the summary of its conversation, most recently active first.
+     * Contacts that never exchanged a message come last. This is a single ordered read of the
+     * conversations index: no message is read.
+     *
+     * @return A list of contact summaries, including their last message, unread count and avatar key.
+     */
+    public List<ContactSummary> getInbox() {
         SQLiteDatabase db = this.getReadableDatabase();
-        List<Contact> contactList = new ArrayList<>();
+        List<ContactSummary> summaryList = new ArrayList<>();
 
-        Cursor cursor = db.rawQuery("SELECT * FROM contacts", null);
-        if (cursor.moveToFirst()) {
-            do {
-                Contact contact = new Contact(
-                        cursor.getInt(0),  // id
-                        cursor.getString(1), // firstname
-                        cursor.getString(2), // lastname
-                        cursor.getString(3), // email
-                        cursor.getString(4), // address
-                        cursor.getString(5), // telNumber
-                        cursor.getString(6)  // picture (Base64)
-                );
-                contactList.add(contact);
-            } while (cursor.moveToNext());
+        Cursor cursor = db.rawQuery(SQL_INBOX, null);
+        while (cursor.moveToNext()) {
+            summaryList.add(readInboxSummary(cursor));
         }
         cursor.close();
-        db.close();
-        return contactList;
+        return summaryList;
     }
 
     /**
-     * Retrieves all messages for a specific contact.
+     * Reads a row of {@link #SQL_INBOX}, {@link #SQL_FILTER_CONTACT_SUMMARIES}
+     * or {@link #SQL_FILTER_CONTACT_SUMMARIES_BY_NUMBER}.
+     *
+     * @param cursor The cursor, positioned on the row.
+     * @return The contact summary.
+     */
+    private ContactSummary readInboxSummary(Cursor cursor) {
+        return new ContactSummary(
+                cursor.getInt(0),    // id
+                cursor.getString(1), // firstname
+                cursor.getString(2), // lastname
+                cursor.getString(3), // telNumber
+                cursor.getString(4), // lastMessage
+                cursor.getLong(5),   // lastDate
+                cursor.getInt(6),    // unreadCount
+                cursor.getString(7)  // picture (avatar key)
+        );
+    }
+
+    /**
+     * Retrieves a summary of the contacts whose first name, last name or phone number starts
+     * with the given text, ignoring case. Each prefix is looked up through its own index,
+     * so the cost depends on the number of matches rather than on the number of contacts.
+     * The LIKE wildcards {@code %} and {@code _} in the text are ignored.
+     * Text that looks like the beginning of a phone number is normalized and matched against
+     * the number keys instead, so that "06 12" finds a contact saved as "+33 6 12 34 56 78".
+     *
+     * @param prefix The text typed by the user.
+     * @param signal Cancels the query while it runs, may be null.
+     * @return The matching contact summaries, in the same order as {@link #getInbox()}.
+     * @throws android.os.OperationCanceledException If the query was cancelled.
+     */
+    public List<ContactSummary> filterContactSummaries(String prefix, @Nullable CancellationSignal signal) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        List<ContactSummary> summaryList = new ArrayList<>();
+
+        Cursor cursor;
+        String keyPrefix = PhoneNumberNormalizer.toKeyPrefix(prefix);
+        if (keyPrefix != null) {
+            // LIKE is case-insensitive and cannot use the BINARY index on numberKey, so the prefix
+            // is matched as a range: every key from the prefix up to the prefix with its last character bumped.
+            char last = keyPrefix.charAt(keyPrefix.length() - 1);
+            String upperBound = keyPrefix.substring(0, keyPrefix.length() - 1) + (char) (last + 1);
+            cursor = db.rawQuery(SQL_FILTER_CONTACT_SUMMARIES_BY_NUMBER, new String[]{keyPrefix, upperBound}, signal);
+        } else {
+            // LIKE wildcards are dropped rather than escaped: older SQLite versions do not use
+            // the indexes for LIKE patterns with an ESCAPE clause.
+            String pattern = prefix.replace("%", "").replace("_", "") + "%";
+            cursor = db.rawQuery(SQL_FILTER_CONTACT_SUMMARIES, new String[]{pattern}, signal);
+        }
+        while (cursor.moveToNext()) {
+            summaryList.add(readInboxSummary(cursor));
+        }
+        cursor.close();
+
+        // The indexes return the matches in no particular order
+        summaryList.sort((a, b) -> a.getLastDate() != b.getLastDate()
+                ? Long.compare(b.getLastDate(), a.getLastDate())
+                : Integer.compare(b.getId(), a.getId()));
+        return summaryList;
+    }
+
+    /**
+     * Retrieves all messages for a specific contact, oldest first.
      *
      * @param contactId The ID of the contact.
      * @return A list of messages associated with the contact.
@@ -227,30 +531,164 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getReadableDatabase();
         List<Message> messageList = new ArrayList<>();
 
-        Cursor cursor = db.rawQuery("SELECT * FROM messages WHERE contactId = ?", new String[]{String.valueOf(contactId)});
+        Cursor cursor = db.rawQuery(SQL_MESSAGES_FROM_CONTACT, new String[]{String.valueOf(contactId)});
         if (cursor.moveToFirst()) {
             do {
-                Message message = new Message(
-                        cursor.getInt(0),       // id
-                        cursor.getInt(1),       // contactId
-                        cursor.getString(2),    // msg
-                        cursor.getLong(3),      // date
-                        cursor.getInt(4) == 1   // isSend
-                );
-                messageList.add(message);
+                messageList.add(readMessage(cursor));
             } while (cursor.moveToNext());
         }
         cursor.close();
-        db.close();
         return messageList;
     }
 
     /**
-     * Adds a new message to the database.
+     * Retrieves one page of a conversation, newest message first, using keyset pagination.
+     * The page contains the messages strictly older than the {@code (beforeDate, beforeId)} cursor,
+     * so the cost of a page does not depend on how deep into the history it is.
+     * Pass {@link #NEWEST_DATE} and {@link #NEWEST_ID} to get the most recent page.
+     *
+     * @param contactId  The ID of the contact.
+     * @param beforeDate The date of the oldest message already loaded.
+     * @param beforeId   The ID of the oldest message already loaded.
+     * @param limit      The maximum number of messages to return.
+     * @return Up to {@code limit} messages, ordered from newest to oldest.
+     */
+    public List<Message> getMessagesPage(Integer contactId, long beforeDate, int beforeId, int limit) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        List<Message> messageList = new ArrayList<>(limit);
+
+        String date = String.valueOf(beforeDate);
+        Cursor cursor = db.rawQuery(SQL_MESSAGES_PAGE, new String[]{
+                String.valueOf(contactId), date, date, String.valueOf(beforeId), String.valueOf(limit)});
+        while (cursor.moveToNext()) {
+            messageList.add(readMessage(cursor));
+        }
+        cursor.close();
+        return messageList;
+    }
+
+    /**
+     * Retrieves one page of a conversation, oldest message first, starting right after a given message.
+     * This is the counterpart of {@link #getMessagesPage} used when a conversation is opened
+     * in the middle of its history and the user scrolls towards the newest messages.
+     *
+     * @param contactId The ID of the contact.
+     * @param afterDate The date of the newest message already loaded.
+     * @param afterId   The ID of the newest message already loaded.
+     * @param limit     The maximum number of messages to return.
+     * @return Up to {@code limit} messages, ordered from oldest to newest.
+     */
+    public List<Message> getMessagesPageAfter(Integer contactId, long afterDate, int afterId, int limit) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        List<Message> messageList = new ArrayList<>(limit);
+
+        String date = String.valueOf(afterDate);
+        Cursor cursor = db.rawQuery(SQL_MESSAGES_PAGE_AFTER, new String[]{
+                String.valueOf(contactId), date, date, String.valueOf(afterId), String.valueOf(limit)});
+        while (cursor.moveToNext()) {
+            messageList.add(readMessage(cursor));
+        }
+        cursor.close();
+        return messageList;
+    }
+
+    /**
+     * Reads the message at the current position of a cursor over whole rows of the messages table.
+     *
+     * @param cursor The cursor, positioned on a row.
+     * @return The message.
+     */
+    private static Message readMessage(Cursor cursor) {
+        return new Message(
+                cursor.getInt(0),       // id
+                cursor.getInt(1),       // contactId
+                cursor.getString(2),    // msg
+                cursor.getLong(3),      // date
+                cursor.getInt(4) == 1,  // isSend
+                cursor.getInt(5)        // status
+        );
+    }
+
+    /**
+     * Searches every conversation for messages containing all the words of a query.
+     * Each word also matches longer words it is a prefix of, ignoring case and accents.
+     * <p>
+     * Results are ranked newest first and paginated on the message ID, which the full-text index
+     * can walk backwards without sorting, so a page costs the same wherever it is in the results.
+     * Pass {@link #FIRST_RESULT} to get the first page, then the ID of the last result of a page
+     * to get the next one.
+     * </p>
+     *
+     * @param query    The text typed by the user.
+     * @param beforeId The ID of the last result already loaded.
+     * @param limit    The maximum number of results to return.
+     * @return Up to {@code limit} results, or an empty list if the query has no searchable word.
+     */
+    public List<SearchResult> searchMessages(String query, int beforeId, int limit) {
+        List<SearchResult> results = new ArrayList<>(limit);
+        String match = toMatchQuery(query);
+        if (match == null) {
+            return results;
+        }
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(SQL_SEARCH_MESSAGES, new String[]{
+                match, String.valueOf(beforeId), String.valueOf(limit)});
+        while (cursor.moveToNext()) {
+            results.add(new SearchResult(
+                    cursor.getInt(0),       // message id
+                    cursor.getInt(1),       // contactId
+                    cursor.getString(2),    // contact firstname
+                    cursor.getString(3),    // contact lastname
+                    cursor.getString(4),    // snippet
+                    cursor.getLong(5),      // date
+                    cursor.getInt(6) == 1   // isSend
+            ));
+        }
+        cursor.close();
+        return results;
+    }
+
+    /**
+     * Turns the text typed by the user into an FTS MATCH expression.
+     * Every word becomes a prefix term and all of them must match; characters that have
+     * a meaning in the FTS query syntax are dropped so that no input can make the query invalid.
+     *
+     * @param query The text typed by the user, may be null.
+     * @return The MATCH expression, or null if the text contains no searchable word.
+     */
+    static String toMatchQuery(String query) {
+        if (query == null) {
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        for (String word : query.trim().split("\\s+")) {
+            StringBuilder term = new StringBuilder();
+            for (int i = 0; i < word.length(); i++) {
+                char c = word.charAt(i);
+                if (Character.isLetterOrDigit(c)) {
+                    term.append(c);
+                }
+            }
+            if (term.length() == 0) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append(term).append('*');
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    /**
+     * Adds a new message to the database and updates the conversation summary of its contact
+     * in the same transaction.
      *
      * @param message The message object to be stored.
+     * @return The ID of the newly added message or 0 if the insertion failed.
      */
-    public void addMessage(Message message) {
+    public Integer addMessage(Message message) {
         SQLiteDatabase db = this.getWritableDatabase();
 
         ContentValues values = new ContentValues();
@@ -258,9 +696,193 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         values.put("msg", message.getMsg());
         values.put("date", message.getDate());
         values.put("isSend", message.isSend());
+        values.put("status", message.getStatus());
+
+        long messageId;
+        db.beginTransaction();
+        try {
+            messageId = db.insert("messages", null, values);
+            if (messageId != -1) {
+                updateConversation(db, message, messageId);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return (messageId != -1) ? (int) messageId : 0;
+    }
 
-        db.insert("messages", null, values);
-        db.close();
+    /**
+     * Accounts for a new message in the conversation summary of its contact.
+     * A message older than the current last one is counted but does not replace it.
+     *
+     * @param db        The database instance, inside a transaction.
+     * @param message   The message that was added.
+     * @param messageId The ID of the message.
+     */
+    private void updateConversation(SQLiteDatabase db, Message message, long messageId) {
+        db.execSQL("INSERT OR IGNORE INTO conversations (contactId) SELECT id FROM contacts WHERE id = ?",
+                new Object[]{message.getContactId()});
+        db.execSQL(SQL_UPDATE_CONVERSATION, new Object[]{
+                message.isSend() ? 0 : 1, message.getDate(), messageId, message.getMsg(), message.getContactId()});
+    }
+
+    /**
+     * Retrieves the sent messages that are at a given stage of the outbox, in the order they were written.
+     *
+     * @param status The status of the messages, such as {@link Message#STATUS_QUEUED}.
+     * @param limit  The maximum number of messages to return.
+     * @return Up to {@code limit} messages, oldest first.
+     */
+    public List<OutgoingSms> getOutbox(int status, int limit) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        List<OutgoingSms> outbox = new ArrayList<>();
+
+        Cursor cursor = db.rawQuery(SQL_OUTBOX, new String[]{String.valueOf(status), String.valueOf(limit)});
+        while (cursor.moveToNext()) {
+            outbox.add(new OutgoingSms(
+                    cursor.getInt(0),       // message id
+                    cursor.getInt(1),       // contactId
+                    cursor.getString(2),    // contact telNumber, null if the contact was deleted
+                    cursor.getString(3),    // msg
+                    cursor.getInt(4),       // attempts
+                    cursor.getLong(5),      // nextAttempt
+                    cursor.getInt(6)        // parts
+            ));
+        }
+        cursor.close();
+        return outbox;
     }
-}
 
+    /**
+     * Moves a message from one status to another, unless it is no longer in the expected status,
+     * so that late or duplicate reports from the radio cannot move a message backwards.
+     *
+     * @param messageId The ID of the message.
+     * @param from      The status the message is expected to be in.
+     * @param to        The new status.
+     * @return True if the message was in the expected status and was updated.
+     */
+    public boolean updateMessageStatus(int messageId, int from, int to) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        try (SQLiteStatement statement = db.compileStatement(SQL_UPDATE_MESSAGE_STATUS)) {
+            statement.bindLong(1, to);
+            statement.bindLong(2, messageId);
+            statement.bindLong(3, from);
+            return statement.executeUpdateDelete() > 0;
+        }
+    }
+
+    /**
+     * Stores the number of parts of a message still to be reported by the radio.
+     *
+     * @param messageId The ID of the message.
+     * @param parts     The number of parts not reported yet.
+     */
+    public void updatePendingParts(int messageId, int parts) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.execSQL(SQL_UPDATE_PENDING_PARTS, new Object[]{parts, messageId});
+    }
+
+    /**
+     * Records a failed attempt to send a message.
+     *
+     * @param messageId   The ID of the message.
+     * @param status      {@link Message#STATUS_QUEUED} to try again, or {@link Message#STATUS_FAILED} to give up.
+     * @param attempts    The number of attempts that failed so far.
+     * @param nextAttempt The time before which the message must not be sent again.
+     */
+    public void recordSendFailure(int messageId, int status, int attempts, long nextAttempt) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.execSQL(SQL_RECORD_SEND_FAILURE, new Object[]{status, attempts, nextAttempt, messageId});
+    }
+
+    /**
+     * Marks every message of a conversation as read.
+     *
+     * @param contactId The ID of the contact.
+     */
+    public void markConversationRead(Integer contactId) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.execSQL(SQL_MARK_CONVERSATION_READ, new Object[]{contactId});
+    }
+
+    /**
+     * Compares the conversations table with what it should contain given the contacts and messages.
+     *
+     * @return The number of conversation rows that are missing, extra or out of date; 0 if it is consistent.
+     */
+    public int checkConversations() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            computeExpectedConversations(db);
+            Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM (" +
+                    "SELECT * FROM (SELECT " + CONVERSATION_COLUMNS + " FROM temp.conversations_expected " +
+                    "EXCEPT SELECT " + CONVERSATION_COLUMNS + " FROM conversations) " +
+                    "UNION ALL " +
+                    "SELECT * FROM (SELECT " + CONVERSATION_COLUMNS + " FROM conversations " +
+                    "EXCEPT SELECT " + CONVERSATION_COLUMNS + " FROM temp.conversations_expected))", null);
+            int differences = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+            cursor.close();
+            db.execSQL("DROP TABLE temp.conversations_expected");
+            db.setTransactionSuccessful();
+            return differences;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Recomputes the whole conversations table from the contacts and messages tables,
+     * keeping what has already been read.
+     */
+    public void rebuildConversations() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            computeExpectedConversations(db);
+            db.execSQL("DELETE FROM conversations");
+            db.execSQL("INSERT INTO conversations (" + CONVERSATION_COLUMNS + ") " +
+                    "SELECT " + CONVERSATION_COLUMNS + " FROM temp.conversations_expected");
+            db.execSQL("DROP TABLE temp.conversations_expected");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Fills the temporary table {@code conversations_expected} with {@link #SQL_EXPECTED_CONVERSATIONS}.
+     *
+     * @param db The database instance, inside a transaction.
+     */
+    private void computeExpectedConversations(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS temp.conversations_expected");
+        db.execSQL("CREATE TEMP TABLE conversations_expected AS " + SQL_EXPECTED_CONVERSATIONS);
+    }
+
+    /**
+     * Runs several operations of this helper as a single transaction.
+     * Either all of them are committed, or none of them if {@code work} throws.
+     *
+     * @param work The operations to run.
+     */
+    public void runInTransaction(Runnable work) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            work.run();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            if (!db.inTransaction()) {
+                List<Runnable> pending = pendingSenderInvalidations.get();
+                for (Runnable invalidation : pending) {
+                    invalidation.run();
+                }
+                pending.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package dev.ktroude.ft_hangout.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * A single, self-contained step of the database schema history.
+ * <p>
+ * Each Migration upgrades the schema from {@link #startVersion} to {@link #endVersion}.
+ * {@link Migrations} runs the steps in version order, all inside the transaction that
+ * {@code SQLiteOpenHelper} opens around an upgrade, so an upgrade either applies completely
+ * or not at all.
+ * </p>
+ */
+public abstract class Migration {
+
+    public final int startVersion;
+    public final int endVersion;
+
+    /**
+     * Constructor for Migration.
+     *
+     * @param startVersion The schema version this step upgrades from.
+     * @param endVersion   The schema version this step upgrades to.
+     */
+    protected Migration(int startVersion, int endVersion) {
+        this.startVersion = startVersion;
+        this.endVersion = endVersion;
+    }
+
+    /**
+     * Applies the schema changes of this step.
+     * Called inside a transaction; implementations must not open or end transactions themselves.
+     *
+     * @param context The context of the application, for steps that also move data out of the database.
+     * @param db      The database instance.
+     */
+    public abstract void migrate(Context context, SQLiteDatabase db);
+}
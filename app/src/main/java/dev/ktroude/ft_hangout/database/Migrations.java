@@ -0,0 +1,358 @@
+package dev.ktroude.ft_hangout.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import dev.ktroude.ft_hangout.utils.AvatarStore;
+import dev.ktroude.ft_hangout.utils.PhoneNumberNormalizer;
+
+/**
+ * Ordered registry of every {@link Migration} the database schema has gone through.
+ * <p>
+ * To change the schema, bump {@code DatabaseHelper.DATABASE_VERSION}, update
+ * {@code DatabaseHelper.onCreate} and append a new step here that upgrades from the
+ * previous version. Steps are never edited once released.
+ * </p>
+ */
+public final class Migrations {
+
+    private static final String TAG = "DEBUG_DB";
+
+    static final String CREATE_INDEX_MESSAGES_CONTACT_DATE =
+            "CREATE INDEX IF NOT EXISTS index_messages_contactId_date ON messages(contactId, date)";
+    static final String CREATE_INDEX_CONTACTS_TEL_NUMBER =
+            "CREATE INDEX IF NOT EXISTS index_contacts_telNumber ON contacts(telNumber)";
+    static final String CREATE_INDEX_CONTACTS_PICTURE =
+            "CREATE INDEX IF NOT EXISTS index_contacts_picture ON contacts(picture)";
+    static final String CREATE_INDEX_CONTACTS_FIRSTNAME_NOCASE =
+            "CREATE INDEX IF NOT EXISTS index_contacts_firstname_nocase ON contacts(firstname COLLATE NOCASE)";
+    static final String CREATE_INDEX_CONTACTS_LASTNAME_NOCASE =
+            "CREATE INDEX IF NOT EXISTS index_contacts_lastname_nocase ON contacts(lastname COLLATE NOCASE)";
+    static final String CREATE_INDEX_CONTACTS_TEL_NUMBER_NOCASE =
+            "CREATE INDEX IF NOT EXISTS index_contacts_telNumber_nocase ON contacts(telNumber COLLATE NOCASE)";
+    static final String CREATE_INDEX_CONTACTS_NUMBER_KEY =
+            "CREATE INDEX IF NOT EXISTS index_contacts_numberKey ON contacts(numberKey)";
+    static final String CREATE_INDEX_MESSAGES_STATUS =
+            "CREATE INDEX IF NOT EXISTS index_messages_status ON messages(status, id)";
+
+    /**
+     * One row per contact summarizing its conversation, kept up to date by {@code DatabaseHelper}
+     * as messages are added. {@code lastReadId} is the highest message ID when the conversation
+     * was last opened: received messages above it are the unread ones.
+     */
+    static final String CREATE_CONVERSATIONS =
+            "CREATE TABLE IF NOT EXISTS conversations (" +
+                    "contactId INTEGER PRIMARY KEY, " +
+                    "lastMessageId INTEGER, " +
+                    "lastMessage TEXT, " +
+                    "lastDate INTEGER NOT NULL DEFAULT 0, " +
+                    "messageCount INTEGER NOT NULL DEFAULT 0, " +
+                    "unreadCount INTEGER NOT NULL DEFAULT 0, " +
+                    "lastReadId INTEGER NOT NULL DEFAULT 0, " +
+                    "FOREIGN KEY(contactId) REFERENCES contacts(id))";
+    static final String CREATE_INDEX_CONVERSATIONS_LAST_DATE =
+            "CREATE INDEX IF NOT EXISTS index_conversations_lastDate ON conversations(lastDate)";
+
+    /**
+     * Full-text index of the message bodies. It is an external-content table: the text itself
+     * stays in {@code messages}, and the index rows share the message IDs as their docid.
+     */
+    static final String CREATE_MESSAGES_FTS =
+            "CREATE VIRTUAL TABLE IF NOT EXISTS messages_fts USING fts4(content=\"messages\", msg, tokenize=unicode61)";
+
+    /**
+     * Triggers keeping {@code messages_fts} in sync with {@code messages}. Entries are removed
+     * before the row changes, since an external-content index reads the old text from the table.
+     */
+    static final String[] CREATE_MESSAGES_FTS_TRIGGERS = {
+            "CREATE TRIGGER IF NOT EXISTS messages_fts_ai AFTER INSERT ON messages BEGIN " +
+                    "INSERT INTO messages_fts(docid, msg) VALUES (new.id, new.msg); END",
+            "CREATE TRIGGER IF NOT EXISTS messages_fts_bd BEFORE DELETE ON messages BEGIN " +
+                    "DELETE FROM messages_fts WHERE docid = old.id; END",
+            "CREATE TRIGGER IF NOT EXISTS messages_fts_bu BEFORE UPDATE OF msg ON messages BEGIN " +
+                    "DELETE FROM messages_fts WHERE docid = old.id; END",
+            "CREATE TRIGGER IF NOT EXISTS messages_fts_au AFTER UPDATE OF msg ON messages BEGIN " +
+                    "INSERT INTO messages_fts(docid, msg) VALUES (new.id, new.msg); END"
+    };
+
+    /**
+     * Number of contacts whose pictures are moved to the avatar store per batch.
+     * Kept small so a batch of Base64 pictures always fits in one cursor window.
+     */
+    private static final int AVATAR_BATCH_SIZE = 20;
+
+    /**
+     * Number of contacts whose phone-number key is computed per batch.
+     */
+    private static final int NUMBER_KEY_BATCH_SIZE = 500;
+
+    /**
+     * Version 1 shipped the same contacts and messages tables as version 2.
+     * The step only makes sure both tables exist, without touching their rows.
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(Context context, SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS contacts (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "firstname TEXT NOT NULL, " +
+                    "lastname TEXT, " +
+                    "email TEXT, " +
+                    "address TEXT, " +
+                    "telNumber TEXT NOT NULL, " +
+                    "picture TEXT)");
+            db.execSQL("CREATE TABLE IF NOT EXISTS messages (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "contactId INTEGER NOT NULL, " +
+                    "msg TEXT NOT NULL, " +
+                    "date INTEGER NOT NULL, " +
+                    "isSend INTEGER NOT NULL, " +
+                    "FOREIGN KEY(contactId) REFERENCES contacts(id))");
+        }
+    };
+
+    /**
+     * Adds the indexes used by the conversation and phone-number lookups,
+     * which were previously full table scans.
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(Context context, SQLiteDatabase db) {
+            db.execSQL(CREATE_INDEX_MESSAGES_CONTACT_DATE);
+            db.execSQL(CREATE_INDEX_CONTACTS_TEL_NUMBER);
+        }
+    };
+
+    /**
+     * Moves contact pictures out of the picture column, where they were stored as Base64 PNG,
+     * into the {@link AvatarStore}. The column keeps only the avatar key afterwards.
+     * Contacts are processed in batches so that large pictures never overflow the cursor window.
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(Context context, SQLiteDatabase db) {
+            AvatarStore store = AvatarStore.getInstance(context);
+            long lastId = -1;
+            List<Long> ids = new ArrayList<>(AVATAR_BATCH_SIZE);
+            List<String> pictures = new ArrayList<>(AVATAR_BATCH_SIZE);
+
+            do {
+                ids.clear();
+                pictures.clear();
+                try (Cursor cursor = db.rawQuery(
+                        "SELECT id, picture FROM contacts WHERE id > ? AND picture IS NOT NULL AND picture <> '' " +
+                                "ORDER BY id LIMIT ?",
+                        new String[]{String.valueOf(lastId), String.valueOf(AVATAR_BATCH_SIZE)})) {
+                    while (cursor.moveToNext()) {
+                        ids.add(cursor.getLong(0));
+                        pictures.add(cursor.getString(1));
+                    }
+                }
+
+                for (int i = 0; i < ids.size(); i++) {
+                    lastId = ids.get(i);
+                    String key;
+                    try {
+                        key = store.save(Base64.decode(pictures.get(i), Base64.DEFAULT));
+                    } catch (IOException | IllegalArgumentException e) {
+                        Log.w(TAG, "Dropping unreadable picture of contact " + lastId, e);
+                        key = null;
+                    }
+                    db.execSQL("UPDATE contacts SET picture = ? WHERE id = ?", new Object[]{key, lastId});
+                }
+            } while (!ids.isEmpty());
+
+            db.execSQL(CREATE_INDEX_CONTACTS_PICTURE);
+        }
+    };
+
+    /**
+     * Adds the full-text index used by message search, with the triggers that keep it in sync,
+     * and indexes every existing message.
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(Context context, SQLiteDatabase db) {
+            db.execSQL(CREATE_MESSAGES_FTS);
+            for (String trigger : CREATE_MESSAGES_FTS_TRIGGERS) {
+                db.execSQL(trigger);
+            }
+            db.execSQL("INSERT INTO messages_fts(messages_fts) VALUES ('rebuild')");
+        }
+    };
+
+    /**
+     * Adds the case-insensitive indexes that let the contact filter match name and number
+     * prefixes with LIKE without scanning the contacts table.
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(Context context, SQLiteDatabase db) {
+            db.execSQL(CREATE_INDEX_CONTACTS_FIRSTNAME_NOCASE);
+            db.execSQL(CREATE_INDEX_CONTACTS_LASTNAME_NOCASE);
+            db.execSQL(CREATE_INDEX_CONTACTS_TEL_NUMBER_NOCASE);
+        }
+    };
+
+    /**
+     * Adds the conversation summaries used by the inbox and fills them from the existing messages.
+     * Every existing message is considered read, so upgrading does not flood the inbox with unread counts.
+     */
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(Context context, SQLiteDatabase db) {
+            db.execSQL(CREATE_CONVERSATIONS);
+            db.execSQL(CREATE_INDEX_CONVERSATIONS_LAST_DATE);
+            db.execSQL("INSERT INTO conversations " +
+                    "(contactId, lastMessageId, lastMessage, lastDate, messageCount, unreadCount, lastReadId) " +
+                    "SELECT s.contactId, m.id, m.msg, IFNULL(m.date, 0), s.messageCount, 0, " +
+                    "IFNULL((SELECT MAX(id) FROM messages), 0) " +
+                    "FROM (SELECT c.id AS contactId, " +
+                    "(SELECT id FROM messages WHERE contactId = c.id ORDER BY date DESC, id DESC LIMIT 1) AS lastMessageId, " +
+                    "(SELECT COUNT(*) FROM messages WHERE contactId = c.id) AS messageCount " +
+                    "FROM contacts c) s " +
+                    "LEFT JOIN messages m ON m.id = s.lastMessageId");
+        }
+    };
+
+    /**
+     * Adds the canonical phone-number key used by every number lookup, computes it for
+     * the existing contacts with {@link PhoneNumberNormalizer}, then indexes it.
+     * Contacts that already share a key are left as they are; lookups return the oldest one.
+     */
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(Context context, SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE contacts ADD COLUMN numberKey TEXT");
+            long lastId = -1;
+            List<Long> ids = new ArrayList<>(NUMBER_KEY_BATCH_SIZE);
+            List<String> numbers = new ArrayList<>(NUMBER_KEY_BATCH_SIZE);
+
+            do {
+                ids.clear();
+                numbers.clear();
+                try (Cursor cursor = db.rawQuery(
+                        "SELECT id, telNumber FROM contacts WHERE id > ? ORDER BY id LIMIT ?",
+                        new String[]{String.valueOf(lastId), String.valueOf(NUMBER_KEY_BATCH_SIZE)})) {
+                    while (cursor.moveToNext()) {
+                        ids.add(cursor.getLong(0));
+                        numbers.add(cursor.getString(1));
+                    }
+                }
+
+                for (int i = 0; i < ids.size(); i++) {
+                    lastId = ids.get(i);
+                    db.execSQL("UPDATE contacts SET numberKey = ? WHERE id = ?",
+                            new Object[]{PhoneNumberNormalizer.toKey(numbers.get(i)), lastId});
+                }
+            } while (!ids.isEmpty());
+
+            db.execSQL(CREATE_INDEX_CONTACTS_NUMBER_KEY);
+        }
+    };
+
+    /**
+     * Adds the delivery status of the messages and the retry state of the outbox.
+     * Existing messages keep the default status, since their delivery was never tracked.
+     */
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(Context context, SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE messages ADD COLUMN status INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE messages ADD COLUMN attempts INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE messages ADD COLUMN nextAttempt INTEGER NOT NULL DEFAULT 0");
+            db.execSQL(CREATE_INDEX_MESSAGES_STATUS);
+        }
+    };
+
+    /**
+     * Drops the plain phone-number index, unused since every number lookup goes through
+     * the key added by {@link #MIGRATION_7_8}. Prefix matching uses the case-insensitive one.
+     */
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(Context context, SQLiteDatabase db) {
+            db.execSQL("DROP INDEX IF EXISTS index_contacts_telNumber");
+        }
+    };
+
+    /**
+     * Adds the number of parts of a message still to be reported by the radio, so that a process
+     * recovering a message sent by a previous one waits for the right number of reports.
+     */
+    static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(Context context, SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE messages ADD COLUMN parts INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    static final List<Migration> ALL = Collections.unmodifiableList(Arrays.asList(
+            MIGRATION_1_2,
+            MIGRATION_2_3,
+            MIGRATION_3_4,
+            MIGRATION_4_5,
+            MIGRATION_5_6,
+            MIGRATION_6_7,
+            MIGRATION_7_8,
+            MIGRATION_8_9,
+            MIGRATION_9_10,
+            MIGRATION_10_11
+    ));
+
+    private Migrations() {
+    }
+
+    /**
+     * Runs every step between two versions, in order, logging how long each one takes.
+     * The steps do not open transactions of their own: the caller runs them inside one,
+     * as {@code SQLiteOpenHelper} does around {@code onUpgrade}.
+     *
+     * @param context    The context of the application.
+     * @param db         The database instance.
+     * @param oldVersion The version the database is currently at.
+     * @param newVersion The version to upgrade to.
+     * @throws IllegalStateException If no step upgrades from one of the intermediate versions.
+     */
+    static void run(Context context, SQLiteDatabase db, int oldVersion, int newVersion) {
+        int version = oldVersion;
+        while (version < newVersion) {
+            Migration migration = find(version);
+            if (migration == null || migration.endVersion > newVersion) {
+                throw new IllegalStateException("No migration from database version " + version + " to " + newVersion);
+            }
+
+            long start = SystemClock.elapsedRealtime();
+            migration.migrate(context, db);
+            Log.d(TAG, "Migrated database " + migration.startVersion + " -> " + migration.endVersion
+                    + " in " + (SystemClock.elapsedRealtime() - start) + " ms");
+
+            version = migration.endVersion;
+        }
+    }
+
+    /**
+     * Finds the step that upgrades from the given version.
+     *
+     * @param startVersion The version to upgrade from.
+     * @return The matching Migration or null if none is registered.
+     */
+    private static Migration find(int startVersion) {
+        for (Migration migration : ALL) {
+            if (migration.startVersion == startVersion) {
+                return migration;
+            }
+        }
+        return null;
+    }
+}
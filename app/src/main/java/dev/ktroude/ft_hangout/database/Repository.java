@@ -0,0 +1,399 @@
+package dev.ktroude.ft_hangout.database;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import dev.ktroude.ft_hangout.models.Contact;
+import dev.ktroude.ft_hangout.models.ContactSummary;
+import dev.ktroude.ft_hangout.models.Message;
+import dev.ktroude.ft_hangout.models.MessageItem;
+import dev.ktroude.ft_hangout.models.SearchResult;
+import dev.ktroude.ft_hangout.receivers.SmsOutbox;
+import dev.ktroude.ft_hangout.utils.AvatarStore;
+import dev.ktroude.ft_hangout.utils.ImageHelper;
+
+/**
+ * Asynchronous access to the application's data for the UI.
+ * <p>
+ * Every operation runs on a small, bounded I/O executor and delivers its result on the main
+ * looper. Operations are bound to a {@link LifecycleOwner}: when the owning activity is destroyed,
+ * their callbacks are never invoked. Pending reads are cancelled, while writes still run,
+ * so that nothing the user saved is lost.
+ * Activities must go through this class instead of calling {@link DatabaseHelper} directly.
+ * </p>
+ */
+public class Repository {
+
+    private static final String TAG = "DEBUG_DB";
+    private static final int IO_THREADS = 2;
+
+    /**
+     * Receives the result of an asynchronous operation on the main thread.
+     *
+     * @param <T> The type of the result.
+     */
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    private static Repository instance;
+
+    private final DatabaseHelper dbHelper;
+    private final AvatarStore avatarStore;
+    private final SmsOutbox outbox;
+    private final ThreadPoolExecutor ioExecutor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Pictures are stored under a hash of their content, so two contacts may share one file.
+     * Saving a picture and storing the contact that uses it must not interleave with the
+     * deletion of that same file as another contact stops using it.
+     */
+    private final Object pictureLock = new Object();
+
+    /**
+     * Constructor for Repository.
+     * Use {@link #getInstance(Context)} instead, so that every screen shares the same executor.
+     *
+     * @param dbHelper    Instance of DatabaseHelper for database operations.
+     * @param avatarStore The store contact pictures are read from.
+     * @param outbox      The outbox sent messages are queued in.
+     */
+    Repository(DatabaseHelper dbHelper, AvatarStore avatarStore, SmsOutbox outbox) {
+        this.dbHelper = dbHelper;
+        this.avatarStore = avatarStore;
+        this.outbox = outbox;
+        this.ioExecutor = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> new Thread(runnable, "repository-io"));
+        this.ioExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the application-wide repository.
+     * The repository holds a reference to the shared {@link DatabaseHelper} for the lifetime of the process.
+     *
+     * @param context Any context; only its application context is retained.
+     * @return The shared Repository.
+     */
+    public static synchronized Repository getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new Repository(DatabaseHelper.acquire(appContext), AvatarStore.getInstance(appContext),
+                    SmsOutbox.getInstance(appContext));
+        }
+        return instance;
+    }
+
+    /**
+     * Loads every contact with the summary of its conversation, most recently active first.
+     */
+    public Task getInbox(LifecycleOwner owner, Callback<List<ContactSummary>> callback) {
+        return execute(owner, dbHelper::getInbox, callback);
+    }
+
+    /**
+     * Loads the summary of the contacts whose name or number starts with the given text.
+     * Cancelling the returned task also interrupts the query if it is already running.
+     *
+     * @see DatabaseHelper#filterContactSummaries(String, CancellationSignal)
+     */
+    public Task filterContactSummaries(LifecycleOwner owner, String prefix, Callback<List<ContactSummary>> callback) {
+        CancellationSignal signal = new CancellationSignal();
+        return execute(owner, () -> dbHelper.filterContactSummaries(prefix, signal), callback, signal);
+    }
+
+    /**
+     * Loads a contact by its ID. The result is null if the contact does not exist.
+     */
+    public Task getContact(LifecycleOwner owner, Integer id, Callback<Contact> callback) {
+        return execute(owner, () -> dbHelper.getContactById(id), callback);
+    }
+
+    /**
+     * Adds a contact, saving its new picture, if any, in the same task.
+     * The result is its new ID, or 0 if the insertion failed.
+     */
+    public Task addContact(LifecycleOwner owner, Contact contact, Bitmap picture, Callback<Integer> callback) {
+        return executeWrite(owner, () -> {
+            synchronized (pictureLock) {
+                savePicture(contact, picture);
+                return dbHelper.addContact(contact);
+            }
+        }, callback);
+    }
+
+    /**
+     * Updates a contact, saving its new picture, if any, in the same task.
+     * The result is always null.
+     */
+    public Task updateContact(LifecycleOwner owner, Contact contact, Bitmap picture, Callback<Void> callback) {
+        return executeWrite(owner, () -> {
+            synchronized (pictureLock) {
+                savePicture(contact, picture);
+                dbHelper.updateContact(contact);
+            }
+            return null;
+        }, callback);
+    }
+
+    /**
+     * Deletes a contact. The result is always null.
+     */
+    public Task deleteContact(LifecycleOwner owner, Integer id, Callback<Void> callback) {
+        return executeWrite(owner, () -> {
+            synchronized (pictureLock) {
+                dbHelper.deleteContact(id);
+            }
+            return null;
+        }, callback);
+    }
+
+    /**
+     * Saves a picture picked for a contact in the {@link AvatarStore} and points the contact to it.
+     * A picture that cannot be written is only logged, so that the rest of the contact is kept.
+     * Must be called while holding {@link #pictureLock}.
+     *
+     * @param contact The contact about to be stored.
+     * @param picture The picked picture, or null to keep the contact's current one.
+     */
+    private void savePicture(Contact contact, Bitmap picture) {
+        if (picture == null) {
+            return;
+        }
+        try {
+            contact.setPicture(ImageHelper.saveAvatar(avatarStore, picture));
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot save the picture of " + contact.getFirstname(), e);
+        }
+    }
+
+    /**
+     * Loads one page of a conversation preceding a given message, formatted for display.
+     * Unlike {@link DatabaseHelper#getMessagesPage}, the page is delivered oldest message first.
+     *
+     * @see DatabaseHelper#getMessagesPage(Integer, long, int, int)
+     */
+    public Task getMessagesPage(LifecycleOwner owner, Integer contactId, long beforeDate, int beforeId, int limit,
+                                Callback<List<MessageItem>> callback) {
+        return execute(owner, () -> {
+            List<Message> page = dbHelper.getMessagesPage(contactId, beforeDate, beforeId, limit);
+            Collections.reverse(page);
+            return MessageItem.fromMessages(page);
+        }, callback);
+    }
+
+    /**
+     * Loads one page of a conversation, oldest message first, following a given message,
+     * formatted for display.
+     *
+     * @see DatabaseHelper#getMessagesPageAfter(Integer, long, int, int)
+     */
+    public Task getMessagesPageAfter(LifecycleOwner owner, Integer contactId, long afterDate, int afterId, int limit,
+                                     Callback<List<MessageItem>> callback) {
+        return execute(owner, () -> MessageItem.fromMessages(
+                dbHelper.getMessagesPageAfter(contactId, afterDate, afterId, limit)), callback);
+    }
+
+    /**
+     * Searches every conversation for messages matching a query, one page at a time.
+     *
+     * @see DatabaseHelper#searchMessages(String, int, int)
+     */
+    public Task searchMessages(LifecycleOwner owner, String query, int beforeId, int limit,
+                               Callback<List<SearchResult>> callback) {
+        return execute(owner, () -> dbHelper.searchMessages(query, beforeId, limit), callback);
+    }
+
+    /**
+     * Marks every message of a conversation as read. The result is always null.
+     */
+    public Task markConversationRead(LifecycleOwner owner, Integer contactId, Callback<Void> callback) {
+        return executeWrite(owner, () -> {
+            dbHelper.markConversationRead(contactId);
+            return null;
+        }, callback);
+    }
+
+    /**
+     * Stores a message written by the user and queues it in the outbox, which sends it in the background.
+     * The result is the stored message, with its ID, formatted for display; or null if the insertion failed.
+     */
+    public Task sendMessage(LifecycleOwner owner, Message message, Callback<MessageItem> callback) {
+        return executeWrite(owner, () -> outbox.enqueue(message) == 0
+                ? null
+                : MessageItem.fromMessages(Collections.singletonList(message)).get(0), callback);
+    }
+
+    /**
+     * Decodes a contact picture. The result is null if the contact has no picture.
+     * A picture that is already decoded is delivered before this method returns.
+     */
+    public Task loadAvatar(LifecycleOwner owner, String pictureKey, Callback<Bitmap> callback) {
+        Bitmap cached = avatarStore.getCachedBitmap(pictureKey);
+        if (cached != null) {
+            if (callback != null) {
+                callback.onResult(cached);
+            }
+            return new Task(owner.getLifecycle(), null, false);
+        }
+        return execute(owner, () -> avatarStore.decodeBitmap(pictureKey), callback);
+    }
+
+    /**
+     * Runs any operation on the I/O executor and delivers its result on the main thread,
+     * unless the owner is destroyed first. Must be called from the main thread.
+     * <p>
+     * If the operation throws, the failure is logged and the callback is not invoked.
+     * Use {@link #execute(LifecycleOwner, Callable, Callback, Callback)} to handle expected failures.
+     * </p>
+     *
+     * @param owner    The lifecycle the operation is bound to.
+     * @param work     The operation to run in the background.
+     * @param callback Receives the result on the main thread, may be null.
+     * @param <T>      The type of the result.
+     * @return A handle that can be used to cancel the operation.
+     */
+    public <T> Task execute(LifecycleOwner owner, Callable<T> work, Callback<T> callback) {
+        return execute(owner, work, callback, null, null, false);
+    }
+
+    /**
+     * Same as {@link #execute(LifecycleOwner, Callable, Callback)}, with a callback receiving
+     * the exception thrown by the operation, such as an {@link java.io.IOException} when a file
+     * chosen by the user cannot be read.
+     *
+     * @param onError Receives the exception on the main thread, unless the owner is destroyed first.
+     */
+    public <T> Task execute(LifecycleOwner owner, Callable<T> work, Callback<T> callback,
+                            Callback<Exception> onError) {
+        return execute(owner, work, callback, onError, null, false);
+    }
+
+    /**
+     * Same as {@link #execute(LifecycleOwner, Callable, Callback)}, for operations that can be
+     * interrupted while they run. Cancelling the task also cancels {@code signal}.
+     */
+    private <T> Task execute(LifecycleOwner owner, Callable<T> work, Callback<T> callback,
+                             CancellationSignal signal) {
+        return execute(owner, work, callback, null, signal, false);
+    }
+
+    /**
+     * Same as {@link #execute(LifecycleOwner, Callable, Callback)}, for operations that change
+     * the data. They always run to completion, even if the owner is destroyed while they are
+     * queued, so that a rotation or a back press right after saving never loses what the user saved;
+     * only their callback is dropped.
+     */
+    private <T> Task executeWrite(LifecycleOwner owner, Callable<T> work, Callback<T> callback) {
+        return execute(owner, work, callback, null, null, true);
+    }
+
+    private <T> Task execute(LifecycleOwner owner, Callable<T> work, Callback<T> callback,
+                             Callback<Exception> onError, CancellationSignal signal, boolean write) {
+        Task task = new Task(owner.getLifecycle(), signal, write);
+        if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+            task.cancel();
+            if (!write) {
+                return task;
+            }
+        } else {
+            owner.getLifecycle().addObserver(task);
+        }
+
+        task.future = ioExecutor.submit(() -> {
+            if (task.isCancelled() && !task.write) {
+                return;
+            }
+            T result;
+            try {
+                result = work.call();
+            } catch (Exception e) {
+                if (task.isCancelled() && !task.write) {
+                    return;
+                }
+                Log.e(TAG, "Background operation failed", e);
+                mainHandler.post(() -> {
+                    task.detach();
+                    if (!task.isCancelled() && onError != null) {
+                        onError.onResult(e);
+                    }
+                });
+                return;
+            }
+            mainHandler.post(() -> {
+                task.detach();
+                if (!task.isCancelled() && callback != null) {
+                    callback.onResult(result);
+                }
+            });
+        });
+        return task;
+    }
+
+    /**
+     * Handle on a pending operation. It is cancelled automatically when its owner is destroyed.
+     */
+    public static final class Task implements DefaultLifecycleObserver {
+        private final Lifecycle lifecycle;
+        private final CancellationSignal signal;
+        private final boolean write;
+        private volatile boolean cancelled = false;
+        private Future<?> future;
+
+        private Task(Lifecycle lifecycle, CancellationSignal signal, boolean write) {
+            this.lifecycle = lifecycle;
+            this.signal = signal;
+            this.write = write;
+        }
+
+        /**
+         * Cancels the operation. Its callback will not be invoked. A read that has not started yet
+         * will not run at all, and interruptible reads are also stopped while they run;
+         * a write still runs to completion. Must be called from the main thread.
+         */
+        public void cancel() {
+            cancelled = true;
+            if (future != null && !write) {
+                future.cancel(false);
+            }
+            if (signal != null) {
+                signal.cancel();
+            }
+            detach();
+        }
+
+        /**
+         * @return true if the operation was cancelled.
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void onDestroy(@NonNull LifecycleOwner owner) {
+            cancel();
+        }
+
+        private void detach() {
+            lifecycle.removeObserver(this);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package dev.ktroude.ft_hangout.database;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, least-recently-used cache of phone-number key to contact ID, consulted by
+ * {@link DatabaseHelper#getContactIdByNumber(String)} before it queries the contacts table.
+ * <p>
+ * Numbers without a contact are cached too, as {@link #NO_CONTACT}, so that an unknown number
+ * is looked up only once until a contact is created for it.
+ * </p>
+ * <p>
+ * A lookup that misses reads the database and then stores its result. If the contacts change
+ * in between, the result may already be stale: every invalidation therefore bumps a generation
+ * counter, and {@link #putIfCurrent} drops results read before the last invalidation.
+ * </p>
+ */
+public class SenderCache {
+
+    /**
+     * Cached value of a number known to have no contact. Contact IDs start at 1.
+     */
+    public static final int NO_CONTACT = 0;
+
+    private final Map<String, Integer> entries;
+    private long generation = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * Constructor for SenderCache.
+     *
+     * @param maxSize The maximum number of numbers kept; the least recently used one is evicted first.
+     */
+    public SenderCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.entries = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Looks a number up and records a hit or a miss.
+     *
+     * @param key The canonical key of the number.
+     * @return The contact ID, {@link #NO_CONTACT} if the number is known to have no contact,
+     * or null if the number is not cached.
+     */
+    public synchronized Integer get(String key) {
+        Integer contactId = entries.get(key);
+        if (contactId != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return contactId;
+    }
+
+    /**
+     * @return The current generation, to be read before querying the database and passed
+     * to {@link #putIfCurrent}.
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Stores the result of a lookup, unless the cache was invalidated since it was started.
+     *
+     * @param key        The canonical key of the number.
+     * @param contactId  The contact ID found, or {@link #NO_CONTACT}.
+     * @param generation The generation read before the lookup.
+     * @return Whether the result was stored.
+     */
+    public synchronized boolean putIfCurrent(String key, int contactId, long generation) {
+        if (generation != this.generation) {
+            return false;
+        }
+        entries.put(key, contactId);
+        return true;
+    }
+
+    /**
+     * Forgets a number, after a contact was created or given that number.
+     *
+     * @param key The canonical key of the number.
+     */
+    public synchronized void invalidate(String key) {
+        entries.remove(key);
+        generation++;
+    }
+
+    /**
+     * Forgets every number leading to a contact, after the contact was updated or deleted.
+     *
+     * @param contactId The ID of the contact.
+     */
+    public synchronized void invalidateContact(int contactId) {
+        Iterator<Integer> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == contactId) {
+                iterator.remove();
+            }
+        }
+        generation++;
+    }
+
+    /**
+     * Forgets every number.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        generation++;
+    }
+
+    /**
+     * @return The number of numbers currently cached.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of lookups answered from the cache.
+     */
+    public synchronized long hitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return The number of lookups that had to query the database.
+     */
+    public synchronized long missCount() {
+        return missCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hitCount + missCount;
+        return "SenderCache{" +
+                "size=" + entries.size() +
+                ", hits=" + hitCount +
+                ", misses=" + missCount +
+                ", hitRate=" + (lookups == 0 ? 0 : hitCount * 100 / lookups) + "%" +
+                '}';
+    }
+}
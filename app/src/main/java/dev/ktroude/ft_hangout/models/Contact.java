@@ -2,6 +2,10 @@ package dev.ktroude.ft_hangout.models;
 
 import androidx.annotation.NonNull;
 
+/**
+ * A contact as stored in the contacts table.
+ * The picture is the {@code AvatarStore} key of the contact's photo, not the image itself.
+ */
 public class Contact {
     private Integer id;
     private String firstname;
@@ -0,0 +1,112 @@
+package dev.ktroude.ft_hangout.models;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Lightweight projection of a {@link Contact} holding only what the contact list displays,
+ * optionally with the summary of its conversation.
+ * It never carries the picture itself, only its avatar key, from which the list loads a thumbnail.
+ */
+public class ContactSummary {
+    private final Integer id;
+    private final String firstname;
+    private final String lastname;
+    private final String telNumber;
+    private final String lastMessage;
+    private final long lastDate;
+    private final int unreadCount;
+    private final String picture;
+
+    public ContactSummary(Integer id, String firstname, String lastname, String telNumber) {
+        this(id, firstname, lastname, telNumber, null, 0, 0, null);
+    }
+
+    public ContactSummary(Integer id, String firstname, String lastname, String telNumber,
+                          String lastMessage, long lastDate, int unreadCount) {
+        this(id, firstname, lastname, telNumber, lastMessage, lastDate, unreadCount, null);
+    }
+
+    public ContactSummary(Integer id, String firstname, String lastname, String telNumber,
+                          String lastMessage, long lastDate, int unreadCount, String picture) {
+        this.id = id;
+        this.firstname = firstname;
+        this.lastname = lastname;
+        this.telNumber = telNumber;
+        this.lastMessage = lastMessage;
+        this.lastDate = lastDate;
+        this.unreadCount = unreadCount;
+        this.picture = picture;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getFirstname() {
+        return firstname;
+    }
+
+    public String getLastname() {
+        return lastname;
+    }
+
+    public String getTelNumber() {
+        return telNumber;
+    }
+
+    /**
+     * @return The text of the most recent message exchanged with the contact, or null if there is none.
+     */
+    public String getLastMessage() {
+        return lastMessage;
+    }
+
+    /**
+     * @return The date of the most recent message, or 0 if there is none.
+     */
+    public long getLastDate() {
+        return lastDate;
+    }
+
+    /**
+     * @return The number of received messages not read yet.
+     */
+    public int getUnreadCount() {
+        return unreadCount;
+    }
+
+    /**
+     * @return The avatar key of the contact's picture, or null or empty if it has none.
+     */
+    public String getPicture() {
+        return picture;
+    }
+
+    /**
+     * Returns the summary updated with a message received from the contact, as the database
+     * updates it: the message is counted as unread, and becomes the last one unless it is older.
+     *
+     * @param message The received message.
+     * @return A new ContactSummary.
+     */
+    public ContactSummary withReceivedMessage(Message message) {
+        boolean newest = message.getDate() >= lastDate;
+        return new ContactSummary(id, firstname, lastname, telNumber,
+                newest ? message.getMsg() : lastMessage,
+                newest ? message.getDate() : lastDate,
+                unreadCount + 1, picture);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ContactSummary{" +
+                "telNumber='" + telNumber + '\'' +
+                ", lastname='" + lastname + '\'' +
+                ", firstname='" + firstname + '\'' +
+                ", id=" + id +
+                ", lastDate=" + lastDate +
+                ", unreadCount=" + unreadCount +
+                '}';
+    }
+}
@@ -0,0 +1,40 @@
+package dev.ktroude.ft_hangout.models;
+
+import androidx.annotation.NonNull;
+
+/**
+ * An SMS received from the network, before it is attached to a contact and stored as a {@link Message}.
+ */
+public class IncomingSms {
+    private final String sender;
+    private final String body;
+    private final long timestamp;
+
+    public IncomingSms(String sender, String body, long timestamp) {
+        this.sender = sender;
+        this.body = body;
+        this.timestamp = timestamp;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "IncomingSms{" +
+                "sender='" + sender + '\'' +
+                ", body='" + body + '\'' +
+                ", timestamp=" + timestamp +
+                '}';
+    }
+}
@@ -4,18 +4,36 @@ import androidx.annotation.NonNull;
 
 public class Message {
 
+    /**
+     * Delivery status of a message. Received messages, and those sent before the outbox existed,
+     * are not tracked. Sent messages wait in the outbox until the radio reports them sent,
+     * then the recipient's phone may report them delivered.
+     */
+    public static final int STATUS_NONE = 0;
+    public static final int STATUS_QUEUED = 1;
+    public static final int STATUS_SENDING = 2;
+    public static final int STATUS_SENT = 3;
+    public static final int STATUS_DELIVERED = 4;
+    public static final int STATUS_FAILED = 5;
+
     private Integer id;
     private Integer contactId;
     private String msg;
     private long date;
     private boolean isSend;
+    private int status;
 
     public Message(Integer id, Integer contactId, String msg, long date, boolean isSend) {
+        this(id, contactId, msg, date, isSend, STATUS_NONE);
+    }
+
+    public Message(Integer id, Integer contactId, String msg, long date, boolean isSend, int status) {
         this.id = id;
         this.contactId = contactId;
         this.msg = msg;
         this.date = date;
         this.isSend = isSend;
+        this.status = status;
     }
 
     public Integer getId() {
@@ -58,6 +76,14 @@ public class Message {
         isSend = send;
     }
 
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
     @NonNull
     @Override
     public String toString() {
@@ -67,6 +93,7 @@ public class Message {
                 ", msg='" + msg + '\'' +
                 ", date=" + date +
                 ", isSend=" + isSend +
+                ", status=" + status +
                 '}';
     }
 }
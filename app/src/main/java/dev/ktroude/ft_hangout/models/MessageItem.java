@@ -0,0 +1,94 @@
+package dev.ktroude.ft_hangout.models;
+
+import androidx.annotation.NonNull;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Message} with the texts the conversation displays for it, formatted in advance.
+ * Items are created in the background, one page at a time, so that showing a message
+ * only sets precomputed strings.
+ */
+public class MessageItem {
+    private final Message message;
+    private final String time;
+    private final long day;
+    private final String dayLabel;
+
+    public MessageItem(Message message, String time, long day, String dayLabel) {
+        this.message = message;
+        this.time = time;
+        this.day = day;
+        this.dayLabel = dayLabel;
+    }
+
+    /**
+     * Formats a page of messages. The date formats are created once for the whole page.
+     * Must not be called on the main thread.
+     *
+     * @param messages The messages, in any order.
+     * @return One item per message, in the same order.
+     */
+    public static List<MessageItem> fromMessages(List<Message> messages) {
+        SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm", Locale.getDefault());
+        DateFormat dayFormat = DateFormat.getDateInstance(DateFormat.FULL, Locale.getDefault());
+        TimeZone timeZone = TimeZone.getDefault();
+
+        List<MessageItem> items = new ArrayList<>(messages.size());
+        long previousDay = Long.MIN_VALUE;
+        String previousDayLabel = null;
+        for (Message message : messages) {
+            Date date = new Date(message.getDate());
+            long day = Math.floorDiv(message.getDate() + timeZone.getOffset(message.getDate()), TimeUnit.DAYS.toMillis(1));
+            if (day != previousDay) {
+                previousDay = day;
+                previousDayLabel = dayFormat.format(date);
+            }
+            items.add(new MessageItem(message, timeFormat.format(date), day, previousDayLabel));
+        }
+        return items;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * @return The time of the message, shown in its bubble.
+     */
+    public String getTime() {
+        return time;
+    }
+
+    /**
+     * @return The local day of the message, as a number of days since the epoch.
+     * Two messages are on the same day when their values are equal.
+     */
+    public long getDay() {
+        return day;
+    }
+
+    /**
+     * @return The day of the message, shown above the first message of each day.
+     */
+    public String getDayLabel() {
+        return dayLabel;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "MessageItem{" +
+                "message=" + message +
+                ", time='" + time + '\'' +
+                ", dayLabel='" + dayLabel + '\'' +
+                '}';
+    }
+}
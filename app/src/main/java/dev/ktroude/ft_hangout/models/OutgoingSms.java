@@ -0,0 +1,80 @@
+package dev.ktroude.ft_hangout.models;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A sent {@link Message} waiting in the outbox, with the number it goes to and its past attempts.
+ */
+public class OutgoingSms {
+    private final int messageId;
+    private final int contactId;
+    private final String destination;
+    private final String body;
+    private final int attempts;
+    private final long nextAttempt;
+    private final int parts;
+
+    public OutgoingSms(int messageId, int contactId, String destination, String body, int attempts, long nextAttempt,
+                       int parts) {
+        this.messageId = messageId;
+        this.contactId = contactId;
+        this.destination = destination;
+        this.body = body;
+        this.attempts = attempts;
+        this.nextAttempt = nextAttempt;
+        this.parts = parts;
+    }
+
+    public int getMessageId() {
+        return messageId;
+    }
+
+    public int getContactId() {
+        return contactId;
+    }
+
+    /**
+     * @return The phone number of the contact, or null if the contact was deleted.
+     */
+    public String getDestination() {
+        return destination;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * @return The number of attempts that already failed.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return The time before which the message must not be sent again, in milliseconds since the epoch.
+     */
+    public long getNextAttempt() {
+        return nextAttempt;
+    }
+
+    /**
+     * @return The number of parts of the message the radio has not reported yet, or 0 if unknown.
+     */
+    public int getParts() {
+        return parts;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "OutgoingSms{" +
+                "messageId=" + messageId +
+                ", contactId=" + contactId +
+                ", destination='" + destination + '\'' +
+                ", attempts=" + attempts +
+                ", nextAttempt=" + nextAttempt +
+                ", parts=" + parts +
+                '}';
+    }
+}
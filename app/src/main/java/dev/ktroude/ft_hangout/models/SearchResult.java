@@ -0,0 +1,78 @@
+package dev.ktroude.ft_hangout.models;
+
+import androidx.annotation.NonNull;
+
+/**
+ * One message matching a full-text search, with what the results screen displays:
+ * the name of the contact and an excerpt of the message around the matching words.
+ */
+public class SearchResult {
+
+    /**
+     * Control characters surrounding the matching words in {@link #getSnippet()}.
+     * They cannot be typed in an SMS, so they never clash with the text of the message.
+     */
+    public static final char MATCH_START = '\u0002';
+    public static final char MATCH_END = '\u0003';
+
+    private final Integer messageId;
+    private final Integer contactId;
+    private final String firstname;
+    private final String lastname;
+    private final String snippet;
+    private final long date;
+    private final boolean isSend;
+
+    public SearchResult(Integer messageId, Integer contactId, String firstname, String lastname,
+                        String snippet, long date, boolean isSend) {
+        this.messageId = messageId;
+        this.contactId = contactId;
+        this.firstname = firstname;
+        this.lastname = lastname;
+        this.snippet = snippet;
+        this.date = date;
+        this.isSend = isSend;
+    }
+
+    public Integer getMessageId() {
+        return messageId;
+    }
+
+    public Integer getContactId() {
+        return contactId;
+    }
+
+    public String getFirstname() {
+        return firstname;
+    }
+
+    public String getLastname() {
+        return lastname;
+    }
+
+    /**
+     * @return An excerpt of the message, with the matching words between {@link #MATCH_START} and {@link #MATCH_END}.
+     */
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public long getDate() {
+        return date;
+    }
+
+    public boolean isSend() {
+        return isSend;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "SearchResult{" +
+                "messageId=" + messageId +
+                ", contactId=" + contactId +
+                ", snippet='" + snippet + '\'' +
+                ", date=" + date +
+                '}';
+    }
+}
@@ -0,0 +1,26 @@
+package dev.ktroude.ft_hangout.receivers;
+
+/**
+ * Published on the {@link dev.ktroude.ft_hangout.utils.EventBus} by the {@link SmsOutbox}
+ * each time a sent message changes status, once the change is stored.
+ */
+public class MessageStatusEvent {
+    private final int messageId;
+    private final int status;
+
+    public MessageStatusEvent(int messageId, int status) {
+        this.messageId = messageId;
+        this.status = status;
+    }
+
+    public int getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * @return The new status, one of the {@code STATUS_} constants of {@link dev.ktroude.ft_hangout.models.Message}.
+     */
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,22 @@
+package dev.ktroude.ft_hangout.receivers;
+
+/**
+ * Hands outgoing SMS to the radio for the {@link SmsOutbox}.
+ * {@link SmsManagerGateway} sends them for real; tests use a fake that records the messages
+ * and reports their outcome itself.
+ */
+public interface SmsGateway {
+
+    /**
+     * Sends a message. Its outcome is reported later, on another thread: each part is reported
+     * once to {@link SmsOutbox#onSent}, then the delivery report, if any, to {@link SmsOutbox#onDelivered}.
+     *
+     * @param messageId   The ID of the message, passed back in the reports.
+     * @param destination The phone number to send the message to.
+     * @param text        The content of the message.
+     * @return The number of parts the message was split into.
+     * @throws RuntimeException If the message could not be handed to the radio,
+     *                          for instance when the SEND_SMS permission is not granted.
+     */
+    int send(int messageId, String destination, String text);
+}
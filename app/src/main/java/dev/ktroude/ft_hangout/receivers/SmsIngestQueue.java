@@ -0,0 +1,201 @@
+package dev.ktroude.ft_hangout.receivers;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dev.ktroude.ft_hangout.database.DatabaseHelper;
+import dev.ktroude.ft_hangout.models.IncomingSms;
+import dev.ktroude.ft_hangout.models.MessageItem;
+import dev.ktroude.ft_hangout.utils.EventBus;
+
+/**
+ * Single-threaded queue that takes all SMS database work off the main thread.
+ * <p>
+ * {@link SmsReceiver} decodes the PDUs and enqueues them; a dedicated ingest thread then
+ * reassembles, stores and announces them. Because there is only one ingest thread, messages
+ * are stored in the order they were received. The queue also keeps metrics on its depth
+ * and on the latency between a broadcast being received and its messages being stored.
+ * </p>
+ */
+public class SmsIngestQueue {
+
+    private static final String TAG = "DEBUG_SMS";
+
+    private static SmsIngestQueue instance;
+
+    private final DatabaseHelper dbHelper;
+    private final EventBus eventBus;
+    private final SmsIngestor ingestor;
+    private final SmsReassembler reassembler = new SmsReassembler();
+    private final ScheduledThreadPoolExecutor executor;
+    private boolean expiryFlushScheduled = false;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong processedBatches = new AtomicLong();
+    private final AtomicLong totalLatencyMs = new AtomicLong();
+    private final AtomicLong maxLatencyMs = new AtomicLong();
+
+    /**
+     * Constructor for SmsIngestQueue.
+     * Use {@link #getInstance(Context)} instead, so that every broadcast goes through the same thread.
+     *
+     * @param dbHelper Instance of DatabaseHelper for database operations.
+     * @param eventBus The bus the stored messages are published on.
+     */
+    @VisibleForTesting
+    SmsIngestQueue(DatabaseHelper dbHelper, EventBus eventBus) {
+        this.dbHelper = dbHelper;
+        this.eventBus = eventBus;
+        this.ingestor = new SmsIngestor(dbHelper);
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "sms-ingest");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the process-wide ingest queue.
+     * The queue holds a reference to the shared {@link DatabaseHelper} for the lifetime of the process.
+     *
+     * @param context Any context; only its application context is retained.
+     * @return The shared SmsIngestQueue.
+     */
+    public static synchronized SmsIngestQueue getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new SmsIngestQueue(DatabaseHelper.acquire(appContext), EventBus.getInstance());
+        }
+        return instance;
+    }
+
+    /**
+     * Queues the segments of one broadcast for ingestion.
+     *
+     * @param segments The decoded segments, in PDU order.
+     * @param onDone   Invoked on the ingest thread once the segments have been processed,
+     *                 typically to finish the receiver's pending result.
+     */
+    public void enqueue(List<SmsReassembler.Segment> segments, Runnable onDone) {
+        long enqueuedAt = SystemClock.elapsedRealtime();
+        int depth = queueDepth.incrementAndGet();
+        maxQueueDepth.accumulateAndGet(depth, Math::max);
+
+        executor.execute(() -> {
+            try {
+                ingest(reassembler.add(segments, System.currentTimeMillis()));
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to ingest " + segments.size() + " SMS segments", e);
+            } finally {
+                scheduleExpiryFlush();
+                queueDepth.decrementAndGet();
+                recordLatency(SystemClock.elapsedRealtime() - enqueuedAt);
+                onDone.run();
+            }
+        });
+    }
+
+    /**
+     * Stores a batch of complete messages and publishes them to the UI as a single
+     * {@link SmsReceivedEvent}, so that the screens update once for the whole batch.
+     * The messages are formatted here, so that the conversation screen only has to add them.
+     * Runs on the ingest thread.
+     *
+     * @param batch The complete messages.
+     */
+    private void ingest(List<IncomingSms> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        SmsIngestor.Result result = ingestor.ingest(batch);
+        eventBus.publish(new SmsReceivedEvent(MessageItem.fromMessages(result.getMessages()), result.getNewContacts()));
+    }
+
+    /**
+     * Makes sure incomplete concatenated messages are stored once they expire,
+     * even if no other SMS arrives to trigger it. A failed flush is logged, and the flush
+     * is armed again for the messages still pending. Runs on the ingest thread.
+     */
+    private void scheduleExpiryFlush() {
+        if (expiryFlushScheduled || reassembler.getPendingCount() == 0) {
+            return;
+        }
+        expiryFlushScheduled = true;
+        executor.schedule(() -> {
+            expiryFlushScheduled = false;
+            try {
+                ingest(reassembler.flushExpired(System.currentTimeMillis()));
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to ingest expired SMS segments", e);
+            } finally {
+                scheduleExpiryFlush();
+            }
+        }, SmsReassembler.DEFAULT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void recordLatency(long latencyMs) {
+        long batches = processedBatches.incrementAndGet();
+        totalLatencyMs.addAndGet(latencyMs);
+        maxLatencyMs.accumulateAndGet(latencyMs, Math::max);
+        if (batches % 100 == 0) {
+            Log.d(TAG, "Ingested " + batches + " batches, queue depth " + queueDepth.get()
+                    + " (max " + maxQueueDepth.get() + "), latency avg " + getAverageLatencyMs()
+                    + " ms (max " + maxLatencyMs.get() + " ms), " + dbHelper.getSenderCache());
+        }
+    }
+
+    /**
+     * @return The number of broadcasts waiting to be ingested or being ingested.
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return The highest queue depth observed since the queue was created.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * @return The number of broadcasts ingested since the queue was created.
+     */
+    public long getProcessedBatches() {
+        return processedBatches.get();
+    }
+
+    /**
+     * @return The average time between a broadcast being enqueued and its messages being stored.
+     */
+    public long getAverageLatencyMs() {
+        long batches = processedBatches.get();
+        return batches == 0 ? 0 : totalLatencyMs.get() / batches;
+    }
+
+    /**
+     * @return The longest time between a broadcast being enqueued and its messages being stored.
+     */
+    public long getMaxLatencyMs() {
+        return maxLatencyMs.get();
+    }
+
+    /**
+     * Stops the ingest thread once the queued work is done. Only meant for tests.
+     */
+    @VisibleForTesting
+    void shutdown() {
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.shutdown();
+    }
+}
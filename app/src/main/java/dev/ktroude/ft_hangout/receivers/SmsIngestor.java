@@ -0,0 +1,105 @@
+package dev.ktroude.ft_hangout.receivers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dev.ktroude.ft_hangout.database.DatabaseHelper;
+import dev.ktroude.ft_hangout.models.Contact;
+import dev.ktroude.ft_hangout.models.IncomingSms;
+import dev.ktroude.ft_hangout.models.Message;
+import dev.ktroude.ft_hangout.utils.PhoneNumberNormalizer;
+
+/**
+ * Stores batches of incoming SMS.
+ * <p>
+ * All the messages of a batch are written in a single transaction, and each distinct sender
+ * is resolved to a contact only once per batch, creating the contact if the number is unknown.
+ * </p>
+ */
+public class SmsIngestor {
+
+    private final DatabaseHelper dbHelper;
+
+    /**
+     * Constructor for SmsIngestor.
+     *
+     * @param dbHelper Instance of DatabaseHelper for database operations.
+     */
+    public SmsIngestor(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Stores a batch of incoming SMS in one transaction.
+     *
+     * @param batch The received messages, in arrival order.
+     * @return A summary of what was written, used to notify the UI once for the whole batch.
+     *         If the transaction fails, the exception is thrown and nothing is reported.
+     */
+    public Result ingest(List<IncomingSms> batch) {
+        Result result = new Result();
+        if (batch.isEmpty()) {
+            return result;
+        }
+
+        dbHelper.runInTransaction(() -> {
+            Map<String, Integer> contactIdsBySender = new HashMap<>();
+            for (IncomingSms sms : batch) {
+                Integer contactId = contactIdsBySender.get(sms.getSender());
+                if (contactId == null) {
+                    contactId = resolveSender(sms.getSender(), result);
+                    contactIdsBySender.put(sms.getSender(), contactId);
+                }
+                Message message = new Message(0, contactId, sms.getBody(), sms.getTimestamp(), false);
+                message.setId(dbHelper.addMessage(message));
+                result.messages.add(message);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Finds the contact matching a sender, creating one named after the number if there is none.
+     * The new contact gets the number as it is written nationally, like a number typed in by the user.
+     *
+     * @param sender The canonical phone-number key of the sender.
+     * @param result The result to record a created contact in.
+     * @return The ID of the contact associated with the sender.
+     */
+    private Integer resolveSender(String sender, Result result) {
+        Integer contactId = dbHelper.getContactIdByNumber(sender);
+        if (contactId != null) {
+            return contactId;
+        }
+        String number = PhoneNumberNormalizer.toNational(sender);
+        Contact contact = new Contact(0, number, "", "", "", number, "");
+        contact.setId(dbHelper.addContact(contact));
+        result.newContacts.add(contact);
+        return contact.getId();
+    }
+
+    /**
+     * Summary of one ingested batch.
+     */
+    public static class Result {
+        private final List<Message> messages = new ArrayList<>();
+        private final List<Contact> newContacts = new ArrayList<>();
+
+        /**
+         * @return The messages written, with their IDs, in arrival order.
+         */
+        public List<Message> getMessages() {
+            return Collections.unmodifiableList(messages);
+        }
+
+        /**
+         * @return The contacts created for unknown senders, with their IDs.
+         */
+        public List<Contact> getNewContacts() {
+            return Collections.unmodifiableList(newContacts);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package dev.ktroude.ft_hangout.receivers;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.telephony.SmsManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Sends SMS through the {@link SmsManager}, with a sent and a delivery {@link PendingIntent}
+ * that {@link SmsStatusReceiver} forwards to the {@link SmsOutbox}.
+ * Messages too long for one SMS are sent as a concatenated SMS; only its last part asks
+ * for a delivery report.
+ */
+public class SmsManagerGateway implements SmsGateway {
+
+    private final Context context;
+
+    /**
+     * Constructor for SmsManagerGateway.
+     *
+     * @param context Any context; only its application context is retained.
+     */
+    public SmsManagerGateway(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    @Override
+    public int send(int messageId, String destination, String text) {
+        SmsManager smsManager = SmsManager.getDefault();
+        PendingIntent sentIntent =
+                SmsStatusReceiver.createPendingIntent(context, SmsStatusReceiver.ACTION_SENT, messageId);
+        PendingIntent deliveryIntent =
+                SmsStatusReceiver.createPendingIntent(context, SmsStatusReceiver.ACTION_DELIVERED, messageId);
+
+        ArrayList<String> parts = smsManager.divideMessage(text);
+        if (parts.size() <= 1) {
+            smsManager.sendTextMessage(destination, null, text, sentIntent, deliveryIntent);
+            return 1;
+        }
+
+        ArrayList<PendingIntent> sentIntents = new ArrayList<>(Collections.nCopies(parts.size(), sentIntent));
+        ArrayList<PendingIntent> deliveryIntents = new ArrayList<>(Collections.<PendingIntent>nCopies(parts.size(), null));
+        deliveryIntents.set(parts.size() - 1, deliveryIntent);
+        smsManager.sendMultipartTextMessage(destination, null, parts, sentIntents, deliveryIntents);
+        return parts.size();
+    }
+}
@@ -0,0 +1,381 @@
+package dev.ktroude.ft_hangout.receivers;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dev.ktroude.ft_hangout.database.DatabaseHelper;
+import dev.ktroude.ft_hangout.models.Message;
+import dev.ktroude.ft_hangout.models.OutgoingSms;
+import dev.ktroude.ft_hangout.utils.EventBus;
+
+/**
+ * Persistent queue of the SMS written by the user, sent one at a time on a dedicated thread.
+ * <p>
+ * A message is stored as {@link Message#STATUS_QUEUED} before anything is sent, so that none is
+ * lost if the process dies. The outbox thread hands the oldest queued message to the
+ * {@link SmsGateway} and waits until the radio reports it sent before moving to the next one,
+ * so that messages leave in the order they were written. A failed attempt is retried with
+ * exponential backoff, up to {@link #MAX_ATTEMPTS} attempts; an attempt that gets no report
+ * in time counts as failed. A report of success that arrives after its attempt timed out
+ * still marks the message sent, so that it is not sent twice. Every status change is stored,
+ * then published on the {@link EventBus} as a {@link MessageStatusEvent}.
+ * </p>
+ * Retries are only scheduled while the process is alive: queued messages left by a previous
+ * process are resumed by {@link #start()} when the application starts.
+ */
+public class SmsOutbox {
+
+    private static final String TAG = "DEBUG_SMS";
+
+    static final int MAX_ATTEMPTS = 5;
+    static final long DEFAULT_INITIAL_BACKOFF_MS = TimeUnit.SECONDS.toMillis(5);
+    static final long MAX_BACKOFF_MS = TimeUnit.MINUTES.toMillis(5);
+    static final long DEFAULT_SEND_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static SmsOutbox instance;
+
+    private final DatabaseHelper dbHelper;
+    private final EventBus eventBus;
+    private final SmsGateway gateway;
+    private final long initialBackoffMs;
+    private final long sendTimeoutMs;
+    private final ScheduledThreadPoolExecutor executor;
+
+    // Only accessed from the outbox thread.
+    private boolean recovered = false;
+    private OutgoingSms inFlight;
+    private int pendingParts;
+    private ScheduledFuture<?> timeout;
+    private ScheduledFuture<?> wakeUp;
+    private final Set<Integer> timedOut = new HashSet<>();
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedAttemptCount = new AtomicLong();
+
+    /**
+     * Constructor for SmsOutbox.
+     * Use {@link #getInstance(Context)} instead, so that every message goes through the same thread.
+     *
+     * @param dbHelper         Instance of DatabaseHelper for database operations.
+     * @param eventBus         The bus the status changes are published on.
+     * @param gateway          Sends the messages.
+     * @param initialBackoffMs The delay before the first retry; each following one waits twice as long.
+     * @param sendTimeoutMs    The time after which an attempt that was not reported counts as failed.
+     */
+    @VisibleForTesting
+    SmsOutbox(DatabaseHelper dbHelper, EventBus eventBus, SmsGateway gateway, long initialBackoffMs,
+              long sendTimeoutMs) {
+        this.dbHelper = dbHelper;
+        this.eventBus = eventBus;
+        this.gateway = gateway;
+        this.initialBackoffMs = initialBackoffMs;
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> new Thread(runnable, "sms-outbox"));
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Returns the process-wide outbox.
+     * The outbox holds a reference to the shared {@link DatabaseHelper} for the lifetime of the process.
+     *
+     * @param context Any context; only its application context is retained.
+     * @return The shared SmsOutbox.
+     */
+    public static synchronized SmsOutbox getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new SmsOutbox(DatabaseHelper.acquire(appContext), EventBus.getInstance(),
+                    new SmsManagerGateway(appContext), DEFAULT_INITIAL_BACKOFF_MS, DEFAULT_SEND_TIMEOUT_MS);
+        }
+        return instance;
+    }
+
+    /**
+     * Resumes sending the messages left in the outbox by a previous process.
+     */
+    public void start() {
+        executor.execute(this::drain);
+    }
+
+    /**
+     * Stores a message written by the user as queued and wakes the outbox thread up to send it.
+     * Must not be called from the main thread.
+     *
+     * @param message The message to send. Its status and, once stored, its ID are set.
+     * @return The ID of the stored message or 0 if the insertion failed.
+     */
+    public int enqueue(Message message) {
+        message.setStatus(Message.STATUS_QUEUED);
+        int messageId = dbHelper.addMessage(message);
+        if (messageId != 0) {
+            message.setId(messageId);
+            executor.execute(this::drain);
+        }
+        return messageId;
+    }
+
+    /**
+     * Records the report of the radio for one part of a message.
+     *
+     * @param messageId The ID of the message.
+     * @param success   Whether the part was sent.
+     * @param onDone    Invoked on the outbox thread once the report has been recorded,
+     *                  typically to finish the receiver's pending result.
+     */
+    public void onSent(int messageId, boolean success, Runnable onDone) {
+        executor.execute(() -> {
+            try {
+                handleSent(messageId, success);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to record the sent report of message " + messageId, e);
+            } finally {
+                onDone.run();
+            }
+        });
+    }
+
+    /**
+     * Records the delivery report of a message.
+     *
+     * @param messageId The ID of the message.
+     * @param delivered Whether the message reached the recipient; false if it never will.
+     * @param onDone    Invoked on the outbox thread once the report has been recorded,
+     *                  typically to finish the receiver's pending result.
+     */
+    public void onDelivered(int messageId, boolean delivered, Runnable onDone) {
+        executor.execute(() -> {
+            try {
+                int status = delivered ? Message.STATUS_DELIVERED : Message.STATUS_FAILED;
+                if (dbHelper.updateMessageStatus(messageId, Message.STATUS_SENT, status)) {
+                    eventBus.publish(new MessageStatusEvent(messageId, status));
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to record the delivery report of message " + messageId, e);
+            } finally {
+                onDone.run();
+            }
+        });
+    }
+
+    /**
+     * Sends the oldest queued message, unless one is already waiting for its report or the oldest
+     * one must wait before it is retried. Runs on the outbox thread.
+     */
+    private void drain() {
+        try {
+            if (!recovered) {
+                recovered = true;
+                recoverInFlight();
+            }
+            if (inFlight != null) {
+                return;
+            }
+            if (wakeUp != null) {
+                wakeUp.cancel(false);
+                wakeUp = null;
+            }
+
+            List<OutgoingSms> head = dbHelper.getOutbox(Message.STATUS_QUEUED, 1);
+            if (head.isEmpty()) {
+                return;
+            }
+            OutgoingSms sms = head.get(0);
+            long wait = sms.getNextAttempt() - System.currentTimeMillis();
+            if (wait > 0) {
+                wakeUp = executor.schedule(this::drain, wait, TimeUnit.MILLISECONDS);
+            } else {
+                send(sms);
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to drain the outbox", e);
+        }
+    }
+
+    /**
+     * Waits for the reports of a message that a previous process handed to the radio, one per part
+     * it had not reported yet. The reports may still arrive; if they do not, the attempt times out
+     * and is retried. Runs on the outbox thread.
+     */
+    private void recoverInFlight() {
+        List<OutgoingSms> sending = dbHelper.getOutbox(Message.STATUS_SENDING, 1);
+        if (!sending.isEmpty()) {
+            OutgoingSms sms = sending.get(0);
+            Log.d(TAG, "Waiting for the report of " + sms + ", sent by a previous process");
+            // The part count is unknown if the process died before the radio accepted the message.
+            awaitReport(sms, Math.max(sms.getParts(), 1));
+        }
+    }
+
+    /**
+     * Hands a message to the gateway. Runs on the outbox thread.
+     *
+     * @param sms The oldest queued message.
+     */
+    private void send(OutgoingSms sms) {
+        if (sms.getDestination() == null) {
+            Log.w(TAG, "Dropping " + sms + ", its contact was deleted");
+            dbHelper.recordSendFailure(sms.getMessageId(), Message.STATUS_FAILED, sms.getAttempts(), 0);
+            eventBus.publish(new MessageStatusEvent(sms.getMessageId(), Message.STATUS_FAILED));
+            executor.execute(this::drain);
+            return;
+        }
+
+        timedOut.remove(sms.getMessageId());
+        dbHelper.updateMessageStatus(sms.getMessageId(), Message.STATUS_QUEUED, Message.STATUS_SENDING);
+        eventBus.publish(new MessageStatusEvent(sms.getMessageId(), Message.STATUS_SENDING));
+        awaitReport(sms, 1);
+        try {
+            pendingParts = gateway.send(sms.getMessageId(), sms.getDestination(), sms.getBody());
+            dbHelper.updatePendingParts(sms.getMessageId(), pendingParts);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not send " + sms, e);
+            failAttempt();
+        }
+    }
+
+    /**
+     * Marks a message as in flight until its parts are reported or the timeout expires.
+     * Runs on the outbox thread.
+     *
+     * @param sms   The message handed to the radio.
+     * @param parts The number of parts still to be reported.
+     */
+    private void awaitReport(OutgoingSms sms, int parts) {
+        inFlight = sms;
+        pendingParts = parts;
+        timeout = executor.schedule(() -> {
+            if (inFlight == sms) {
+                Log.w(TAG, "No report for " + sms + " after " + sendTimeoutMs + " ms");
+                timedOut.add(sms.getMessageId());
+                failAttempt();
+            }
+        }, sendTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records the report of one part of the message in flight. Reports for any other message come
+     * after its attempt timed out or another part failed. A success after a timeout means the radio
+     * did send the message, so if it is waiting to be retried or was given up, it is marked sent
+     * instead of being sent again. Other late reports are ignored. Runs on the outbox thread.
+     *
+     * @param messageId The ID of the message.
+     * @param success   Whether the part was sent.
+     */
+    private void handleSent(int messageId, boolean success) {
+        if (inFlight == null || inFlight.getMessageId() != messageId) {
+            if (success && timedOut.remove(messageId) && markSentAfterTimeout(messageId)) {
+                drain();
+            } else {
+                Log.d(TAG, "Ignoring a late report for message " + messageId);
+            }
+            return;
+        }
+        if (!success) {
+            failAttempt();
+            return;
+        }
+        if (--pendingParts > 0) {
+            dbHelper.updatePendingParts(messageId, pendingParts);
+            return;
+        }
+
+        clearInFlight();
+        sentCount.incrementAndGet();
+        if (dbHelper.updateMessageStatus(messageId, Message.STATUS_SENDING, Message.STATUS_SENT)) {
+            eventBus.publish(new MessageStatusEvent(messageId, Message.STATUS_SENT));
+        }
+        drain();
+    }
+
+    /**
+     * Marks a message whose attempt timed out as sent, if it is still waiting to be retried
+     * or was given up. Runs on the outbox thread.
+     *
+     * @param messageId The ID of the message.
+     * @return True if the message was marked sent.
+     */
+    private boolean markSentAfterTimeout(int messageId) {
+        if (!dbHelper.updateMessageStatus(messageId, Message.STATUS_QUEUED, Message.STATUS_SENT)
+                && !dbHelper.updateMessageStatus(messageId, Message.STATUS_FAILED, Message.STATUS_SENT)) {
+            return false;
+        }
+        Log.d(TAG, "Message " + messageId + " was reported sent after its attempt timed out");
+        sentCount.incrementAndGet();
+        eventBus.publish(new MessageStatusEvent(messageId, Message.STATUS_SENT));
+        return true;
+    }
+
+    /**
+     * Records a failed attempt to send the message in flight, and either schedules it again
+     * or gives up on it after {@link #MAX_ATTEMPTS} attempts. Runs on the outbox thread.
+     */
+    private void failAttempt() {
+        OutgoingSms sms = inFlight;
+        clearInFlight();
+        failedAttemptCount.incrementAndGet();
+
+        int attempts = sms.getAttempts() + 1;
+        if (attempts >= MAX_ATTEMPTS) {
+            Log.w(TAG, "Giving up on " + sms + " after " + attempts + " attempts");
+            dbHelper.recordSendFailure(sms.getMessageId(), Message.STATUS_FAILED, attempts, 0);
+            eventBus.publish(new MessageStatusEvent(sms.getMessageId(), Message.STATUS_FAILED));
+        } else {
+            long backoffMs = getBackoffMs(attempts);
+            Log.d(TAG, "Retrying " + sms + " in " + backoffMs + " ms");
+            dbHelper.recordSendFailure(sms.getMessageId(), Message.STATUS_QUEUED, attempts,
+                    System.currentTimeMillis() + backoffMs);
+            eventBus.publish(new MessageStatusEvent(sms.getMessageId(), Message.STATUS_QUEUED));
+        }
+        drain();
+    }
+
+    private void clearInFlight() {
+        inFlight = null;
+        pendingParts = 0;
+        if (timeout != null) {
+            timeout.cancel(false);
+            timeout = null;
+        }
+    }
+
+    /**
+     * @param attempts The number of attempts that failed so far, at least 1.
+     * @return The delay before the next attempt, doubling after each failure up to {@link #MAX_BACKOFF_MS}.
+     */
+    long getBackoffMs(int attempts) {
+        return Math.min(initialBackoffMs << Math.min(attempts - 1, 30), MAX_BACKOFF_MS);
+    }
+
+    /**
+     * @return The number of messages reported sent since the outbox was created.
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * @return The number of attempts that failed or timed out since the outbox was created.
+     */
+    public long getFailedAttemptCount() {
+        return failedAttemptCount.get();
+    }
+
+    /**
+     * Stops the outbox thread once the queued work is done. Only meant for tests.
+     */
+    @VisibleForTesting
+    void shutdown() {
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,230 @@
+package dev.ktroude.ft_hangout.receivers;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import dev.ktroude.ft_hangout.models.IncomingSms;
+
+/**
+ * Joins the segments of concatenated (multipart) SMS back into whole messages before they are stored.
+ * <p>
+ * Segments of the same message are matched by sender and concatenation reference. Segments that
+ * arrive in separate broadcasts are held in a small pending buffer until the message is complete.
+ * A message that stays incomplete longer than the timeout, or that is pushed out because the buffer
+ * is full, is released with the segments received so far rather than being lost.
+ * </p>
+ */
+public class SmsReassembler {
+
+    static final long DEFAULT_TIMEOUT_MS = 3 * 60 * 1000;
+    static final int DEFAULT_MAX_PENDING = 32;
+
+    private final long timeoutMs;
+    private final int maxPending;
+    private final Map<String, PendingMessage> pending = new LinkedHashMap<>();
+
+    /**
+     * Constructor for SmsReassembler with the default timeout and buffer size.
+     */
+    public SmsReassembler() {
+        this(DEFAULT_TIMEOUT_MS, DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * Constructor for SmsReassembler.
+     *
+     * @param timeoutMs  How long an incomplete message is held before being released as is.
+     * @param maxPending The maximum number of incomplete messages held at once.
+     */
+    public SmsReassembler(long timeoutMs, int maxPending) {
+        this.timeoutMs = timeoutMs;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Adds the segments received in one broadcast and returns the messages they complete.
+     * Incomplete messages that have expired are returned too, joined from the segments received so far.
+     *
+     * @param segments The segments received, in PDU order.
+     * @param now      The current time, in milliseconds.
+     * @return The messages ready to be stored, in completion order.
+     */
+    public synchronized List<IncomingSms> add(List<Segment> segments, long now) {
+        List<IncomingSms> ready = new ArrayList<>();
+        releaseExpired(now, ready);
+
+        for (Segment segment : segments) {
+            if (segment.count <= 1) {
+                ready.add(new IncomingSms(segment.sender, segment.body, segment.timestamp));
+                continue;
+            }
+
+            String key = segment.sender + '/' + segment.reference + '/' + segment.count;
+            PendingMessage message = pending.get(key);
+            if (message == null) {
+                message = new PendingMessage(segment.sender, segment.count, segment.timestamp, now);
+                pending.put(key, message);
+            }
+            message.put(segment);
+
+            if (message.isComplete()) {
+                pending.remove(key);
+                ready.add(message.join());
+            }
+        }
+
+        while (pending.size() > maxPending) {
+            Iterator<PendingMessage> oldest = pending.values().iterator();
+            ready.add(oldest.next().join());
+            oldest.remove();
+        }
+        return ready;
+    }
+
+    /**
+     * Releases every incomplete message that has been pending for longer than the timeout.
+     *
+     * @param now The current time, in milliseconds.
+     * @return The released messages, joined from the segments received so far.
+     */
+    public synchronized List<IncomingSms> flushExpired(long now) {
+        List<IncomingSms> released = new ArrayList<>();
+        releaseExpired(now, released);
+        return released;
+    }
+
+    /**
+     * @return The number of incomplete messages currently held.
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    private void releaseExpired(long now, List<IncomingSms> out) {
+        Iterator<PendingMessage> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            PendingMessage message = iterator.next();
+            if (now - message.firstSeen >= timeoutMs) {
+                out.add(message.join());
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Reads the concatenation information element of a 3GPP SMS-DELIVER PDU.
+     *
+     * @param pdu The raw PDU, starting with the SMSC address as delivered in SMS_RECEIVED intents.
+     * @return {@code {reference, count, sequence}}, or null if the PDU is not part of a concatenated SMS.
+     */
+    public static int[] parseConcatenationHeader(byte[] pdu) {
+        try {
+            int i = 0;
+            int smscLength = pdu[i++] & 0xFF;
+            i += smscLength;
+
+            int firstOctet = pdu[i++] & 0xFF;
+            boolean isDeliver = (firstOctet & 0x03) == 0;
+            boolean hasHeader = (firstOctet & 0x40) != 0;
+            if (!isDeliver || !hasHeader) {
+                return null;
+            }
+
+            int addressDigits = pdu[i++] & 0xFF;
+            i += 1 + (addressDigits + 1) / 2; // type of address + semi-octets
+            i += 1 + 1 + 7 + 1;               // PID, DCS, SCTS, UDL
+
+            int headerLength = pdu[i++] & 0xFF;
+            int end = i + headerLength;
+            while (i + 1 < end) {
+                int id = pdu[i++] & 0xFF;
+                int length = pdu[i++] & 0xFF;
+                if (id == 0x00 && length == 3) {
+                    return new int[]{pdu[i] & 0xFF, pdu[i + 1] & 0xFF, pdu[i + 2] & 0xFF};
+                }
+                if (id == 0x08 && length == 4) {
+                    return new int[]{((pdu[i] & 0xFF) << 8) | (pdu[i + 1] & 0xFF), pdu[i + 2] & 0xFF, pdu[i + 3] & 0xFF};
+                }
+                i += length;
+            }
+            return null;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * One PDU of a received SMS.
+     */
+    public static class Segment {
+        final String sender;
+        final int reference;
+        final int count;
+        final int sequence;
+        final String body;
+        final long timestamp;
+
+        /**
+         * Constructor for Segment.
+         *
+         * @param sender    The phone number of the sender.
+         * @param reference The concatenation reference shared by all segments of the message.
+         * @param count     The number of segments of the message, 1 for a single-part SMS.
+         * @param sequence  The 1-based position of this segment in the message.
+         * @param body      The text carried by this segment.
+         * @param timestamp The reception time of the segment.
+         */
+        public Segment(String sender, int reference, int count, int sequence, String body, long timestamp) {
+            this.sender = sender;
+            this.reference = reference;
+            this.count = count;
+            this.sequence = sequence;
+            this.body = body;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * The segments received so far for one concatenated message.
+     */
+    private static class PendingMessage {
+        private final String sender;
+        private final String[] parts;
+        private final long timestamp;
+        private final long firstSeen;
+        private int received = 0;
+
+        PendingMessage(String sender, int count, long timestamp, long firstSeen) {
+            this.sender = sender;
+            this.parts = new String[count];
+            this.timestamp = timestamp;
+            this.firstSeen = firstSeen;
+        }
+
+        void put(Segment segment) {
+            int index = segment.sequence - 1;
+            if (index < 0 || index >= parts.length || parts[index] != null) {
+                return;
+            }
+            parts[index] = segment.body != null ? segment.body : "";
+            received++;
+        }
+
+        boolean isComplete() {
+            return received == parts.length;
+        }
+
+        IncomingSms join() {
+            StringBuilder sb = new StringBuilder();
+            for (String part : parts) {
+                if (part != null) {
+                    sb.append(part);
+                }
+            }
+            return new IncomingSms(sender, sb.toString(), timestamp);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package dev.ktroude.ft_hangout.receivers;
+
+import java.util.List;
+
+import dev.ktroude.ft_hangout.models.Contact;
+import dev.ktroude.ft_hangout.models.MessageItem;
+
+/**
+ * Published on the {@link dev.ktroude.ft_hangout.utils.EventBus} once a batch of incoming SMS
+ * is stored. It carries the stored objects, so that screens can show them without reading them back,
+ * and the messages are already formatted for the conversation screen.
+ */
+public class SmsReceivedEvent {
+    private final List<MessageItem> messages;
+    private final List<Contact> newContacts;
+
+    public SmsReceivedEvent(List<MessageItem> messages, List<Contact> newContacts) {
+        this.messages = messages;
+        this.newContacts = newContacts;
+    }
+
+    /**
+     * @return The stored messages, with their IDs, in arrival order.
+     */
+    public List<MessageItem> getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return The contacts created for unknown senders, with their IDs.
+     */
+    public List<Contact> getNewContacts() {
+        return newContacts;
+    }
+}
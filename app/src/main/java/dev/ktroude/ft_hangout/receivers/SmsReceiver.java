@@ -5,95 +5,64 @@ import android.content.Context;
 import android.content.Intent;
 import android.telephony.SmsMessage;
 
-import dev.ktroude.ft_hangout.database.DatabaseHelper;
-import dev.ktroude.ft_hangout.models.Contact;
-import dev.ktroude.ft_hangout.models.Message;
+import java.util.ArrayList;
+import java.util.List;
+
+import dev.ktroude.ft_hangout.utils.PhoneNumberNormalizer;
 
 
 /**
  * SmsReceiver is a BroadcastReceiver that listens for incoming SMS messages.
- * It extracts message data, checks if the sender is known, saves the message to the database,
- * and broadcasts an event to update the UI.
+ * It only decodes the PDUs on the main thread; joining concatenated SMS, storing the messages
+ * and publishing them to the UI as a {@link SmsReceivedEvent} all happen on the
+ * {@link SmsIngestQueue} thread. The broadcast is kept alive with {@link #goAsync()}
+ * until the queue has processed it.
  */
 public class SmsReceiver extends BroadcastReceiver {
 
     @Override
     public void onReceive(Context context, Intent intent) {
-        DatabaseHelper dbHelper = new DatabaseHelper(context);
-
-        processReceivedSms(context, intent, dbHelper);
+        List<SmsReassembler.Segment> segments = extractSegments(intent);
+        if (segments.isEmpty()) {
+            return;
+        }
 
-        dbHelper.close();
+        PendingResult pendingResult = goAsync();
+        SmsIngestQueue.getInstance(context).enqueue(segments, pendingResult::finish);
     }
 
     /**
-     * Extracts and processes SMS messages from the received intent.
+     * Decodes the PDUs carried by an SMS_RECEIVED intent.
      *
-     * @param context  The application context.
-     * @param intent   The intent containing the SMS data.
-     * @param dbHelper Instance of DatabaseHelper for database operations.
+     * @param intent The intent containing the SMS data.
+     * @return The decoded segments, in PDU order. Segments without a sender are skipped.
      */
-    private void processReceivedSms(Context context, Intent intent, DatabaseHelper dbHelper) {
-        Object[] pdus = (Object[]) intent.getExtras().get("pdus");
-
-        if (pdus != null) {
-            for (Object pdu : pdus) {
-                SmsMessage sms = SmsMessage.createFromPdu((byte[]) pdu);
-                String sender = sms.getOriginatingAddress();
-
-                if (sender == null) {
-                    continue;
-                }
-
-                sender = sender.replaceFirst("^\\+33", "0");
-                String text = sms.getMessageBody();
-                long timestamp = System.currentTimeMillis();
-
-                Contact contact = handleUnknownSender(context, sender, dbHelper);
-
-                saveMessageAndBroadcast(context, contact, text, timestamp, dbHelper);
-            }
+    private List<SmsReassembler.Segment> extractSegments(Intent intent) {
+        List<SmsReassembler.Segment> segments = new ArrayList<>();
+        Object[] pdus = intent.getExtras() != null ? (Object[]) intent.getExtras().get("pdus") : null;
+        if (pdus == null) {
+            return segments;
         }
-    }
 
-    /**
-     * Checks if the sender exists in the database. If not, creates a new contact.
-     *
-     * @param context  The application context.
-     * @param sender   The phone number of the sender.
-     * @param dbHelper Instance of DatabaseHelper for database operations.
-     * @return The contact associated with the sender.
-     */
-    private Contact handleUnknownSender(Context context, String sender, DatabaseHelper dbHelper) {
-        Contact contact = dbHelper.getContactByNumber(sender);
+        String format = intent.getStringExtra("format");
+        long timestamp = System.currentTimeMillis();
+        for (Object pdu : pdus) {
+            SmsMessage sms = SmsMessage.createFromPdu((byte[]) pdu, format);
+            String sender = sms.getOriginatingAddress();
 
-        if (contact == null) {
-            contact = new Contact(0, sender, "", "", "", sender, "");
-            Integer contactId = dbHelper.addContact(contact);
-            contact.setId(contactId);
+            if (sender == null) {
+                continue;
+            }
 
-            Intent newContactIntent = new Intent("dev.ktroude.ft_hangout.NEW_UNKNOWN_SMS_RECEIVED");
-            context.sendBroadcast(newContactIntent);
+            sender = PhoneNumberNormalizer.toKey(sender);
+            int[] concatenation = "3gpp".equals(format) ? SmsReassembler.parseConcatenationHeader((byte[]) pdu) : null;
+            if (concatenation == null) {
+                segments.add(new SmsReassembler.Segment(sender, 0, 1, 1, sms.getMessageBody(), timestamp));
+            } else {
+                segments.add(new SmsReassembler.Segment(sender, concatenation[0], concatenation[1],
+                        concatenation[2], sms.getMessageBody(), timestamp));
+            }
         }
-        return contact;
-    }
-
-    /**
-     * Saves the received message to the database and broadcasts an update event.
-     *
-     * @param context  The application context.
-     * @param contact  The contact associated with the message.
-     * @param text     The content of the SMS.
-     * @param timestamp The timestamp of the message.
-     * @param dbHelper Instance of DatabaseHelper for database operations.
-     */
-    private void saveMessageAndBroadcast(Context context, Contact contact, String text, long timestamp, DatabaseHelper dbHelper) {
-        Message message = new Message(0, contact.getId(), text, timestamp, false);
-        dbHelper.addMessage(message);
-
-        // Broadcast an event to notify the UI that a new SMS has been received
-        Intent smsReceivedIntent = new Intent("dev.ktroude.ft_hangout.NEW_SMS_RECEIVED");
-        smsReceivedIntent.putExtra("contact_id", contact.getId());
-        context.sendBroadcast(smsReceivedIntent);
+        return segments;
     }
 }
@@ -0,0 +1,100 @@
+package dev.ktroude.ft_hangout.receivers;
+
+import android.app.Activity;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.provider.Telephony;
+import android.telephony.SmsMessage;
+import android.util.Log;
+
+/**
+ * SmsStatusReceiver receives the sent and delivery reports of the SMS sent by {@link SmsManagerGateway}
+ * and forwards them to the {@link SmsOutbox}. The broadcast is kept alive with {@link #goAsync()}
+ * until the outbox has recorded the report.
+ */
+public class SmsStatusReceiver extends BroadcastReceiver {
+
+    private static final String TAG = "DEBUG_SMS";
+
+    static final String ACTION_SENT = "dev.ktroude.ft_hangout.action.SMS_SENT";
+    static final String ACTION_DELIVERED = "dev.ktroude.ft_hangout.action.SMS_DELIVERED";
+    private static final String EXTRA_MESSAGE_ID = "message_id";
+
+    /**
+     * Creates the intent the system broadcasts back to this receiver once a message is sent or delivered.
+     * It is mutable because the system adds the error code or the delivery report to it.
+     *
+     * @param context   The context of the application.
+     * @param action    {@link #ACTION_SENT} or {@link #ACTION_DELIVERED}.
+     * @param messageId The ID of the message.
+     * @return The pending intent, distinct for every message and action.
+     */
+    static PendingIntent createPendingIntent(Context context, String action, int messageId) {
+        Intent intent = new Intent(context, SmsStatusReceiver.class)
+                .setAction(action)
+                .putExtra(EXTRA_MESSAGE_ID, messageId);
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            flags |= PendingIntent.FLAG_MUTABLE;
+        }
+        return PendingIntent.getBroadcast(context, messageId, intent, flags);
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        int messageId = intent.getIntExtra(EXTRA_MESSAGE_ID, 0);
+        if (messageId == 0) {
+            return;
+        }
+
+        if (ACTION_SENT.equals(intent.getAction())) {
+            int resultCode = getResultCode();
+            if (resultCode != Activity.RESULT_OK) {
+                Log.w(TAG, "Message " + messageId + " not sent, result code " + resultCode
+                        + ", error code " + intent.getIntExtra("errorCode", 0));
+            }
+            PendingResult pendingResult = goAsync();
+            SmsOutbox.getInstance(context).onSent(messageId, resultCode == Activity.RESULT_OK, pendingResult::finish);
+        } else if (ACTION_DELIVERED.equals(intent.getAction())) {
+            Boolean delivered = readDeliveryReport(intent);
+            if (delivered == null) {
+                return;
+            }
+            PendingResult pendingResult = goAsync();
+            SmsOutbox.getInstance(context).onDelivered(messageId, delivered, pendingResult::finish);
+        }
+    }
+
+    /**
+     * Decodes the status report that the system adds to a delivery intent.
+     *
+     * @param intent The delivery intent.
+     * @return True if the message was delivered, false if it will not be, or null if the report
+     * is missing or the network is still trying.
+     */
+    private static Boolean readDeliveryReport(Intent intent) {
+        byte[] pdu = intent.getByteArrayExtra("pdu");
+        if (pdu == null) {
+            return null;
+        }
+        String format = intent.getStringExtra("format");
+        SmsMessage report = SmsMessage.createFromPdu(pdu, format);
+        if (report == null) {
+            return null;
+        }
+
+        int status = report.getStatus();
+        if ("3gpp2".equals(format)) {
+            // CDMA reports carry the error class in the top byte: 0 for success, 2 for a temporary error.
+            int errorClass = status >>> 24;
+            return errorClass == 2 ? null : errorClass == 0;
+        }
+        if (status >= Telephony.Sms.STATUS_PENDING && status < Telephony.Sms.STATUS_FAILED) {
+            return null;
+        }
+        return status < Telephony.Sms.STATUS_PENDING;
+    }
+}
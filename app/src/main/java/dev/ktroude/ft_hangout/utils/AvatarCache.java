@@ -0,0 +1,88 @@
+package dev.ktroude.ft_hangout.utils;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.LruCache;
+
+/**
+ * Process-wide cache of decoded contact pictures, so that a picture is decoded from the
+ * {@link AvatarStore} once and then shared by every screen showing it.
+ * <p>
+ * Entries are keyed by avatar key. Since an avatar key is the hash of the picture's content,
+ * it changes whenever a contact's picture changes: a contact can never be shown an outdated
+ * picture, and the previous one simply ages out of the cache.
+ * The cache is limited to a share of the heap, counting the memory actually held by each
+ * Bitmap, and shrinks when the system asks the app to release memory.
+ * Cached bitmaps are shared and must not be recycled or modified.
+ * </p>
+ */
+public class AvatarCache extends LruCache<String, Bitmap> {
+
+    private static final String TAG = "DEBUG_AVATAR";
+
+    /**
+     * Share of the maximum heap the cache may use: 1/16th, which holds a few dozen contact pictures.
+     */
+    private static final int HEAP_FRACTION = 16;
+
+    private static AvatarCache instance;
+
+    /**
+     * Constructor for AvatarCache.
+     * Use {@link #getInstance()} instead, so that every screen shares the same pictures.
+     *
+     * @param maxBytes The maximum number of bytes of Bitmap memory held by the cache.
+     */
+    public AvatarCache(int maxBytes) {
+        super(maxBytes);
+    }
+
+    /**
+     * Returns the process-wide picture cache, sized after the maximum heap of the process.
+     *
+     * @return The shared AvatarCache.
+     */
+    public static synchronized AvatarCache getInstance() {
+        if (instance == null) {
+            instance = new AvatarCache((int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / HEAP_FRACTION));
+        }
+        return instance;
+    }
+
+    /**
+     * Releases memory in response to {@link ComponentCallbacks2#onTrimMemory(int)}.
+     * Half of the cache is dropped once the app is in the background or memory is running low,
+     * and all of it when the process is likely to be killed.
+     *
+     * @param level The trim level received from the system.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(maxSize() / 2);
+        }
+        Log.d(TAG, "Trimmed avatar cache (level " + level + "): " + size() + " bytes held, " + this);
+    }
+
+    /**
+     * @return The share of lookups answered from the cache, in percent.
+     */
+    public int getHitRate() {
+        int hits = hitCount();
+        int lookups = hits + missCount();
+        return lookups == 0 ? 0 : hits * 100 / lookups;
+    }
+
+    /**
+     * Measures entries by the memory their pixels actually use, which can exceed what their
+     * dimensions suggest when a Bitmap was reused for a smaller image.
+     */
+    @Override
+    protected int sizeOf(String key, Bitmap bitmap) {
+        return bitmap.getAllocationByteCount();
+    }
+}
@@ -0,0 +1,110 @@
+package dev.ktroude.ft_hangout.utils;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Encodes contact pictures before they are written to the {@link AvatarStore}.
+ * <p>
+ * An encoder is a format and a quality. Contact pictures are photos, for which lossy formats are
+ * several times smaller than PNG and faster to encode and decode; {@link #DEFAULT} was chosen from
+ * the results of {@code AvatarEncodingBenchmark}. Pictures already stored in another format stay
+ * readable, since decoding does not depend on the encoder.
+ * </p>
+ */
+public final class AvatarEncoder {
+
+    /**
+     * The encodings a picture can be stored in.
+     */
+    public enum Format {
+        /**
+         * Lossless; quality is ignored.
+         */
+        PNG,
+        JPEG,
+        WEBP_LOSSY
+    }
+
+    /**
+     * Lossless encoding, as every picture was stored before.
+     */
+    public static final AvatarEncoder PNG = new AvatarEncoder(Format.PNG, 100);
+
+    /**
+     * Encoder used for new contact pictures.
+     */
+    public static final AvatarEncoder DEFAULT = new AvatarEncoder(Format.WEBP_LOSSY, 80);
+
+    /**
+     * Expected size of an encoded avatar, to avoid growing the output buffer while encoding.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    private final Format format;
+    private final int quality;
+
+    /**
+     * Constructor for AvatarEncoder.
+     *
+     * @param format  The encoding to use.
+     * @param quality The quality from 0 to 100, for the lossy formats.
+     */
+    public AvatarEncoder(Format format, int quality) {
+        if (quality < 0 || quality > 100) {
+            throw new IllegalArgumentException("quality must be between 0 and 100: " + quality);
+        }
+        this.format = format;
+        this.quality = quality;
+    }
+
+    /**
+     * Encodes a picture.
+     *
+     * @param bitmap The Bitmap to encode.
+     * @return The encoded bytes.
+     */
+    public byte[] encode(Bitmap bitmap) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        if (!bitmap.compress(getCompressFormat(), quality, out)) {
+            throw new IllegalStateException("Cannot encode picture as " + this);
+        }
+        return out.toByteArray();
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    /**
+     * Maps the format to the platform's compress format. Before Android 11, WEBP is lossy
+     * for every quality below 100.
+     *
+     * @return The Bitmap.CompressFormat to pass to {@link Bitmap#compress}.
+     */
+    @SuppressWarnings("deprecation")
+    private Bitmap.CompressFormat getCompressFormat() {
+        switch (format) {
+            case JPEG:
+                return Bitmap.CompressFormat.JPEG;
+            case WEBP_LOSSY:
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                        ? Bitmap.CompressFormat.WEBP_LOSSY
+                        : Bitmap.CompressFormat.WEBP;
+            case PNG:
+            default:
+                return Bitmap.CompressFormat.PNG;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return format == Format.PNG ? format.name() : format.name() + "@" + quality;
+    }
+}
@@ -0,0 +1,254 @@
+package dev.ktroude.ft_hangout.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * On-disk store for contact pictures.
+ * <p>
+ * Each picture is written once to the app's private storage, under a key derived from a hash
+ * of its content. Contact rows only keep that short key, so the contact queries never carry
+ * image data. Files are written atomically and read back as streams.
+ * </p>
+ * <p>
+ * Decoded pictures are kept in an {@link AvatarCache}, so showing the same picture again
+ * does not read and decode the file another time.
+ * </p>
+ * <p>
+ * Each picture can also have a small thumbnail, stored under the same key, for the contact list.
+ * </p>
+ */
+public class AvatarStore {
+
+    private static final String TAG = "DEBUG_AVATAR";
+    private static final String DIRECTORY = "avatars";
+    private static final String THUMBNAIL_DIRECTORY = "thumbnails";
+
+    private static AvatarStore instance;
+
+    private final File directory;
+    private final File thumbnailDirectory;
+    private final AvatarCache cache;
+
+    /**
+     * Constructor for AvatarStore.
+     * Use {@link #getInstance(Context)} instead, so that every component shares the same store.
+     *
+     * @param directory The directory the pictures are stored in.
+     * @param cache     The cache decoded pictures are kept in.
+     */
+    public AvatarStore(File directory, AvatarCache cache) {
+        this.directory = directory;
+        this.thumbnailDirectory = new File(directory, THUMBNAIL_DIRECTORY);
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the application-wide avatar store.
+     *
+     * @param context Any context; only its application context is used.
+     * @return The shared AvatarStore.
+     */
+    public static synchronized AvatarStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new AvatarStore(new File(context.getApplicationContext().getFilesDir(), DIRECTORY),
+                    AvatarCache.getInstance());
+        }
+        return instance;
+    }
+
+    /**
+     * Stores an encoded picture and returns the key it can be read back with.
+     * Saving the same content twice returns the same key without rewriting the file.
+     *
+     * @param data The encoded picture.
+     * @return The key of the stored picture.
+     * @throws IOException If the file could not be written.
+     */
+    public String save(byte[] data) throws IOException {
+        String key = hash(data);
+        File file = fileFor(key);
+        if (!file.exists()) {
+            write(file, data);
+        }
+        return key;
+    }
+
+    /**
+     * Stores the thumbnail of a picture, replacing any previous one.
+     *
+     * @param key  The key of the picture the thumbnail was made from.
+     * @param data The encoded thumbnail.
+     * @throws IOException If the file could not be written.
+     */
+    public void saveThumbnail(String key, byte[] data) throws IOException {
+        write(thumbnailFileFor(key), data);
+    }
+
+    /**
+     * Decodes the thumbnail of a picture. Thumbnails are not cached here: the caller is expected to.
+     *
+     * @param key The key of the picture, may be null or empty.
+     * @return The decoded thumbnail, or null if the picture has none.
+     */
+    public Bitmap loadThumbnail(String key) {
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+        File file = thumbnailFileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return BitmapFactory.decodeStream(in);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read thumbnail " + key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a file atomically, so that a crash never leaves a truncated picture behind.
+     *
+     * @param file The file to write.
+     * @param data The content of the file.
+     * @throws IOException If the file could not be written.
+     */
+    private static void write(File file, byte[] data) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create avatar directory " + parent);
+        }
+
+        AtomicFile atomicFile = new AtomicFile(file);
+        FileOutputStream out = atomicFile.startWrite();
+        try {
+            out.write(data);
+            atomicFile.finishWrite(out);
+        } catch (IOException e) {
+            atomicFile.failWrite(out);
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a stored picture for reading.
+     *
+     * @param key The key returned by {@link #save(byte[])}.
+     * @return A buffered stream over the encoded picture. The caller must close it.
+     * @throws IOException If the picture does not exist or cannot be read.
+     */
+    public InputStream open(String key) throws IOException {
+        return new BufferedInputStream(new FileInputStream(fileFor(key)));
+    }
+
+    /**
+     * Returns a picture only if it is already decoded, without touching the disk.
+     *
+     * @param key The key returned by {@link #save(byte[])}, may be null or empty.
+     * @return The cached Bitmap or null if it has not been decoded yet.
+     */
+    public Bitmap getCachedBitmap(String key) {
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+        return cache.get(key);
+    }
+
+    /**
+     * Decodes a stored picture from its file and adds it to the cache.
+     * Reads the disk: callers check {@link #getCachedBitmap(String)} first, on the main thread,
+     * and only call this from a background thread on a miss.
+     *
+     * @param key The key returned by {@link #save(byte[])}, may be null or empty.
+     * @return The decoded Bitmap or null if there is no such picture.
+     */
+    public Bitmap decodeBitmap(String key) {
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+        Bitmap bitmap;
+        try (InputStream in = open(key)) {
+            bitmap = BitmapFactory.decodeStream(in);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read avatar " + key, e);
+            return null;
+        }
+        if (bitmap != null) {
+            cache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Deletes a stored picture and its thumbnail.
+     *
+     * @param key The key returned by {@link #save(byte[])}.
+     * @return true if the file was deleted.
+     */
+    public boolean delete(String key) {
+        cache.remove(key);
+        thumbnailFileFor(key).delete();
+        return fileFor(key).delete();
+    }
+
+    /**
+     * Resolves the file of a key, rejecting anything that is not a key produced by this store.
+     *
+     * @param key The picture key.
+     * @return The file holding the picture.
+     */
+    private File fileFor(String key) {
+        if (key.isEmpty()) {
+            throw new IllegalArgumentException("Empty avatar key");
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (Character.digit(key.charAt(i), 16) == -1) {
+                throw new IllegalArgumentException("Invalid avatar key: " + key);
+            }
+        }
+        return new File(directory, key);
+    }
+
+    /**
+     * Resolves the thumbnail file of a key.
+     *
+     * @param key The picture key.
+     * @return The file holding the thumbnail.
+     */
+    private File thumbnailFileFor(String key) {
+        return new File(thumbnailDirectory, fileFor(key).getName());
+    }
+
+    /**
+     * Computes the content key of a picture: the hexadecimal SHA-1 of its bytes.
+     *
+     * @param data The encoded picture.
+     * @return The content key.
+     */
+    static String hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package dev.ktroude.ft_hangout.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-process bus carrying typed events from the background threads to the screens.
+ * <p>
+ * Events carry the objects that were just written, so that screens can apply the change to what
+ * they display instead of querying the database again. Subscriptions are bound to a
+ * {@link LifecycleOwner}: events are delivered on the main thread until the owner is destroyed,
+ * then the subscription is removed. Events published while nobody subscribes are dropped, since
+ * a screen created later reads the current state from the database anyway.
+ * </p>
+ * Intent broadcasts are only needed for wakeups that come from outside the process,
+ * such as the incoming SMS that {@link dev.ktroude.ft_hangout.receivers.SmsReceiver} handles.
+ */
+public class EventBus {
+
+    /**
+     * Receives the events of one type on the main thread.
+     *
+     * @param <T> The type of the events.
+     */
+    public interface Subscriber<T> {
+        void onEvent(T event);
+    }
+
+    private static EventBus instance;
+
+    private final List<Subscription<?>> subscriptions = new CopyOnWriteArrayList<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Constructor for EventBus.
+     * Use {@link #getInstance()} instead, so that publishers and subscribers share the same bus.
+     */
+    public EventBus() {
+    }
+
+    /**
+     * Returns the process-wide event bus.
+     *
+     * @return The shared EventBus.
+     */
+    public static synchronized EventBus getInstance() {
+        if (instance == null) {
+            instance = new EventBus();
+        }
+        return instance;
+    }
+
+    /**
+     * Subscribes to the events of a type, including those of its subtypes, until the owner is destroyed.
+     * Must be called from the main thread.
+     *
+     * @param owner      The lifecycle the subscription is bound to.
+     * @param type       The type of the events to receive.
+     * @param subscriber Receives the events on the main thread.
+     * @param <T>        The type of the events.
+     */
+    public <T> void subscribe(LifecycleOwner owner, Class<T> type, Subscriber<? super T> subscriber) {
+        Lifecycle lifecycle = owner.getLifecycle();
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            return;
+        }
+        Subscription<T> subscription = new Subscription<>(lifecycle, type, subscriber);
+        subscriptions.add(subscription);
+        lifecycle.addObserver(subscription);
+    }
+
+    /**
+     * Publishes an event to the current subscribers of its type. May be called from any thread;
+     * the event is delivered later on the main thread, and must not be modified afterwards.
+     *
+     * @param event The event to publish.
+     */
+    public void publish(Object event) {
+        for (Subscription<?> subscription : subscriptions) {
+            if (subscription.type.isInstance(event)) {
+                mainHandler.post(() -> subscription.deliver(event));
+            }
+        }
+    }
+
+    /**
+     * @return The number of live subscriptions.
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * One subscriber, removed from the bus when its lifecycle is destroyed.
+     */
+    private final class Subscription<T> implements DefaultLifecycleObserver {
+        private final Lifecycle lifecycle;
+        private final Class<T> type;
+        private final Subscriber<? super T> subscriber;
+
+        private Subscription(Lifecycle lifecycle, Class<T> type, Subscriber<? super T> subscriber) {
+            this.lifecycle = lifecycle;
+            this.type = type;
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Hands an event to the subscriber, unless it was destroyed since the event was published.
+         * Runs on the main thread.
+         */
+        private void deliver(Object event) {
+            if (lifecycle.getCurrentState() != Lifecycle.State.DESTROYED) {
+                subscriber.onEvent(type.cast(event));
+            }
+        }
+
+        @Override
+        public void onDestroy(@NonNull LifecycleOwner owner) {
+            subscriptions.remove(this);
+            lifecycle.removeObserver(this);
+        }
+    }
+}
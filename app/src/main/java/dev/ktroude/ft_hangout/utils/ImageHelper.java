@@ -1,69 +1,231 @@
 package dev.ktroude.ft_hangout.utils;
 
 import android.app.Activity;
+import android.content.ContentResolver;
+import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
 import android.net.Uri;
 import android.provider.MediaStore;
-import android.util.Base64;
+import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Utility class for handling image-related operations such as encoding,
- * decoding, resizing, and selecting images from the gallery.
+ * storing, loading, resizing, and selecting images from the gallery.
  */
 public class ImageHelper {
 
+    private static final String TAG = "DEBUG_AVATAR";
+
+    /**
+     * Largest width or height of an imported contact picture, in pixels.
+     */
+    public static final int AVATAR_SIZE = 300;
+
+    /**
+     * Width and height of the square thumbnails shown in the contact list, in pixels:
+     * a 48dp avatar on an extra-extra-high density screen.
+     */
+    public static final int THUMBNAIL_SIZE = 144;
+
     /**
-     * Converts a Bitmap image to a Base64 encoded string.
+     * Encodes a Bitmap image with {@link AvatarEncoder#DEFAULT} and saves it in the {@link AvatarStore}.
      *
-     * @param bitmap The Bitmap to encode.
-     * @return The Base64 encoded string.
+     * @param store  The avatar store to save the picture in.
+     * @param bitmap The Bitmap to save.
+     * @return The key to store in the contact's picture column.
+     * @throws IOException If the picture could not be written.
      */
-    public static String encodeImageToBase64(Bitmap bitmap) {
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteArrayOutputStream);
-        byte[] byteArray = byteArrayOutputStream.toByteArray();
-        return Base64.encodeToString(byteArray, Base64.DEFAULT);
+    public static String saveAvatar(AvatarStore store, Bitmap bitmap) throws IOException {
+        return saveAvatar(store, bitmap, AvatarEncoder.DEFAULT);
     }
 
     /**
-     * Decodes a Base64 encoded string to a Bitmap image.
+     * Encodes a Bitmap image and saves it in the {@link AvatarStore}, along with its thumbnail.
+     * A thumbnail that cannot be written is only logged: it is generated again when first displayed.
      *
-     * @param base64String The Base64 string to decode.
-     * @return The decoded Bitmap image.
+     * @param store   The avatar store to save the picture in.
+     * @param bitmap  The Bitmap to save.
+     * @param encoder The format and quality to store the picture with.
+     * @return The key to store in the contact's picture column.
+     * @throws IOException If the picture could not be written.
      */
-    public static Bitmap decodeBase64ToImage(String base64String) {
-        if (base64String == null || base64String.isEmpty()) {
-            return null;
+    public static String saveAvatar(AvatarStore store, Bitmap bitmap, AvatarEncoder encoder) throws IOException {
+        String key = store.save(encoder.encode(bitmap));
+        try {
+            store.saveThumbnail(key, encoder.encode(createThumbnail(bitmap)));
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot save the thumbnail of " + key, e);
+        }
+        return key;
+    }
+
+    /**
+     * Crops the center square of a picture and scales it down to {@link #THUMBNAIL_SIZE}.
+     *
+     * @param bitmap The picture.
+     * @return The thumbnail, or {@code bitmap} itself if it already is a square of that size or smaller.
+     */
+    public static Bitmap createThumbnail(Bitmap bitmap) {
+        int side = Math.min(bitmap.getWidth(), bitmap.getHeight());
+        if (side <= THUMBNAIL_SIZE && bitmap.getWidth() == bitmap.getHeight()) {
+            return bitmap;
         }
-        byte[] decodedBytes = Base64.decode(base64String, Base64.DEFAULT);
-        return BitmapFactory.decodeByteArray(decodedBytes, 0, decodedBytes.length);
+        Matrix matrix = new Matrix();
+        if (side > THUMBNAIL_SIZE) {
+            float scale = (float) THUMBNAIL_SIZE / side;
+            matrix.setScale(scale, scale);
+        }
+        return Bitmap.createBitmap(bitmap, (bitmap.getWidth() - side) / 2, (bitmap.getHeight() - side) / 2,
+                side, side, matrix, true);
     }
 
     /**
-     * Resizes a Bitmap image while maintaining aspect ratio.
+     * Decodes an image from a content URI at a size close to {@code maxSize}, without ever
+     * holding the full-resolution image in memory, and turns it upright.
+     * <p>
+     * The image dimensions are read first; the pixels are then decoded straight from the stream
+     * with the largest power-of-two {@code inSampleSize} that keeps both sides at least
+     * {@code maxSize}, so a 12 MP photo costs about 1 MB to decode instead of 48 MB.
+     * The result is finally scaled down to {@code maxSize} and rotated or flipped according to
+     * its EXIF orientation, in a single pass. Must not be called on the main thread.
+     * </p>
      *
-     * @param bitmap The Bitmap to resize.
-     * @param maxSize The maximum size for width or height.
-     * @return The resized Bitmap.
+     * @param resolver The content resolver used to open the image.
+     * @param uri      The URI of the image.
+     * @param maxSize  The maximum size for width or height.
+     * @return The decoded Bitmap.
+     * @throws IOException If the image cannot be read or is not an image.
      */
-    public static Bitmap resizeBitmap(Bitmap bitmap, int maxSize) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-        float bitmapRatio = (float) width / (float) height;
-
-        if (bitmapRatio > 1) {
-            width = maxSize;
-            height = (int) (width / bitmapRatio);
-        } else {
-            height = maxSize;
-            width = (int) (height * bitmapRatio);
+    public static Bitmap decodeSampledBitmap(ContentResolver resolver, Uri uri, int maxSize) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = openStream(resolver, uri)) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Not a decodable image: " + uri);
+        }
+
+        int sourceWidth = options.outWidth;
+        int sourceHeight = options.outHeight;
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(sourceWidth, sourceHeight, maxSize);
+        Bitmap sampled;
+        try (InputStream in = openStream(resolver, uri)) {
+            sampled = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (sampled == null) {
+            throw new IOException("Cannot decode image: " + uri);
+        }
+        Log.d(TAG, "Decoded " + sourceWidth + "x" + sourceHeight + " image at 1/" + options.inSampleSize
+                + " (" + sampled.getAllocationByteCount() + " bytes)");
+
+        Bitmap upright = scaleAndOrient(sampled, maxSize, readOrientation(resolver, uri));
+        if (upright != sampled) {
+            sampled.recycle();
         }
-        return Bitmap.createScaledBitmap(bitmap, width, height, true);
+        return upright;
+    }
+
+    /**
+     * Computes the largest power-of-two subsampling that keeps both sides of an image
+     * at least {@code maxSize}, so that scaling the result down never loses detail.
+     *
+     * @param width   The width of the image.
+     * @param height  The height of the image.
+     * @param maxSize The size the image will be scaled down to.
+     * @return The {@code inSampleSize} to decode the image with, at least 1.
+     */
+    public static int calculateInSampleSize(int width, int height, int maxSize) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= maxSize && height / (sampleSize * 2) >= maxSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Reads the EXIF orientation of an image from a stream of its own.
+     *
+     * @param resolver The content resolver used to open the image.
+     * @param uri      The URI of the image.
+     * @return One of the {@link ExifInterface} {@code ORIENTATION_*} constants;
+     * {@link ExifInterface#ORIENTATION_NORMAL} if the image has no readable orientation.
+     */
+    private static int readOrientation(ContentResolver resolver, Uri uri) {
+        try (InputStream in = openStream(resolver, uri)) {
+            return new ExifInterface(in).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read the orientation of " + uri, e);
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * Scales a Bitmap down to fit {@code maxSize} and applies an EXIF orientation to it.
+     *
+     * @param bitmap      The Bitmap to transform.
+     * @param maxSize     The maximum size for width or height.
+     * @param orientation The EXIF orientation of the image.
+     * @return The transformed Bitmap, or {@code bitmap} itself if it needed no change.
+     */
+    private static Bitmap scaleAndOrient(Bitmap bitmap, int maxSize, int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setRotate(180);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                break;
+            default:
+                break;
+        }
+
+        float scale = (float) maxSize / Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (scale < 1) {
+            matrix.preScale(scale, scale);
+        }
+        if (matrix.isIdentity()) {
+            return bitmap;
+        }
+        return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+    }
+
+    private static InputStream openStream(ContentResolver resolver, Uri uri) throws IOException {
+        InputStream in = resolver.openInputStream(uri);
+        if (in == null) {
+            throw new FileNotFoundException("Cannot open " + uri);
+        }
+        return in;
     }
 
     /**
@@ -78,20 +240,20 @@ public class ImageHelper {
     }
 
     /**
-     * Handles the result of image selection and returns the Base64 encoded string.
+     * Decodes a picked image at avatar size with {@link #decodeSampledBitmap}.
+     * Nothing is saved: the picture only goes to the {@link AvatarStore} with the contact
+     * that uses it. Must not be called on the main thread.
      *
-     * @param activity The activity receiving the result.
-     * @param data The Intent containing the selected image data.
-     * @return The Base64 encoded string of the selected image.
-     * @throws IOException If an error occurs while processing the image.
+     * @param context The context used to open the image.
+     * @param uri     The URI of the selected image, may be null.
+     * @return The decoded picture, or null if no image was selected.
+     * @throws IOException If the image cannot be read or is not an image.
      */
-    public static String handleImageResult(Activity activity, Intent data) throws IOException {
-        if (data == null) {
-            return "";
+    public static Bitmap decodePickedImage(Context context, Uri uri) throws IOException {
+        if (uri == null) {
+            return null;
         }
-        Uri selectedImageUri = data.getData();
-        Bitmap bitmap = MediaStore.Images.Media.getBitmap(activity.getContentResolver(), selectedImageUri);
-        return encodeImageToBase64(resizeBitmap(bitmap, 300));
+        return decodeSampledBitmap(context.getContentResolver(), uri, AVATAR_SIZE);
     }
 }
 
@@ -0,0 +1,136 @@
+package dev.ktroude.ft_hangout.utils;
+
+/**
+ * Turns phone numbers, however they were typed or received, into a canonical key.
+ * <p>
+ * The key is the E.164 form of the number ({@code +33612345678}): separators are dropped,
+ * the {@code 00} international prefix becomes {@code +}, and national numbers starting with
+ * a trunk {@code 0} are given the default country code. "06 12 34 56 78", "+33 6 12 34 56 78",
+ * "+33 (0)6 12 34 56 78" and "0033612345678" all share the same key.
+ * Short codes are kept as their digits, and alphanumeric sender IDs are kept as they are.
+ * </p>
+ * <p>
+ * Parsing is a single pass over the characters, without regular expressions, and allocates
+ * only the resulting string, since it runs for every received SMS and every lookup.
+ * </p>
+ */
+public final class PhoneNumberNormalizer {
+
+    /**
+     * Country code given to national numbers. The app targets French numbers.
+     */
+    public static final String DEFAULT_COUNTRY_CODE = "33";
+
+    private static final int PREFIX_LENGTH = 1 + DEFAULT_COUNTRY_CODE.length();
+
+    private PhoneNumberNormalizer() {
+    }
+
+    /**
+     * Computes the canonical key of a phone number.
+     *
+     * @param number The number as typed or received, may be null.
+     * @return The E.164 key, the digits of a short code, the trimmed input if it is not a number,
+     * or null if {@code number} is null.
+     */
+    public static String toKey(String number) {
+        if (number == null) {
+            return null;
+        }
+
+        // Digits are written after room for "+<country code>", so the key can be built in place.
+        int length = number.length();
+        char[] buffer = new char[PREFIX_LENGTH + length];
+        int count = 0;
+        boolean international = false;
+
+        for (int i = 0; i < length; i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                buffer[PREFIX_LENGTH + count++] = c;
+            } else if (c == '+' && count == 0 && !international) {
+                international = true;
+            } else if (c == '(' && international && i + 2 < length
+                    && number.charAt(i + 1) == '0' && number.charAt(i + 2) == ')') {
+                // "+33 (0)6 ...": the bracketed trunk prefix is not dialled from abroad
+                i += 2;
+            } else if (!isSeparator(c)) {
+                return number.trim();
+            }
+        }
+
+        if (count == 0) {
+            return number.trim();
+        }
+        if (international) {
+            buffer[PREFIX_LENGTH - 1] = '+';
+            return new String(buffer, PREFIX_LENGTH - 1, count + 1);
+        }
+        if (count > 2 && buffer[PREFIX_LENGTH] == '0' && buffer[PREFIX_LENGTH + 1] == '0') {
+            // "00" international prefix: overwrite the second 0 with "+"
+            buffer[PREFIX_LENGTH + 1] = '+';
+            return new String(buffer, PREFIX_LENGTH + 1, count - 1);
+        }
+        if (count > 1 && buffer[PREFIX_LENGTH] == '0') {
+            // National number: "+<country code>" is written over the trunk 0
+            buffer[1] = '+';
+            DEFAULT_COUNTRY_CODE.getChars(0, DEFAULT_COUNTRY_CODE.length(), buffer, 2);
+            return new String(buffer, 1, PREFIX_LENGTH + count - 1);
+        }
+        return new String(buffer, PREFIX_LENGTH, count);
+    }
+
+    /**
+     * Computes the start of the key shared by every number that starts with the given text,
+     * so that a number being typed can be looked up by key.
+     *
+     * @param typed The beginning of a number, as typed.
+     * @return The key prefix, or null if {@code typed} does not look like the beginning of a number.
+     */
+    public static String toKeyPrefix(String typed) {
+        String key = toKey(typed);
+        if (key == null || !isNumberKey(key)) {
+            return null;
+        }
+        // A lone "0" or "00" is the start of a trunk or international prefix that toKey cannot resolve yet
+        if (key.equals("0")) {
+            return "+" + DEFAULT_COUNTRY_CODE;
+        }
+        if (key.equals("+" + DEFAULT_COUNTRY_CODE + "0") && typed.indexOf('+') < 0) {
+            return "+";
+        }
+        return key;
+    }
+
+    /**
+     * Formats a key the way numbers of the default country are usually written, for display.
+     *
+     * @param key A key produced by {@link #toKey(String)}.
+     * @return {@code 0612345678} for {@code +33612345678}; any other key is returned unchanged.
+     */
+    public static String toNational(String key) {
+        if (key == null || key.length() <= PREFIX_LENGTH || key.charAt(0) != '+'
+                || !key.startsWith(DEFAULT_COUNTRY_CODE, 1)) {
+            return key;
+        }
+        return "0" + key.substring(PREFIX_LENGTH);
+    }
+
+    private static boolean isNumberKey(String key) {
+        int start = key.startsWith("+") ? 1 : 0;
+        if (key.length() == start) {
+            return false;
+        }
+        for (int i = start; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '-' || c == '.' || c == '(' || c == ')' || c == '/' || c == '\u00A0';
+    }
+}
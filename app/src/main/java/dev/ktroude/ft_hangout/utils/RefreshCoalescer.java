@@ -0,0 +1,143 @@
+package dev.ktroude.ft_hangout.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collapses the refresh requests of a screen, so that a burst of changes refreshes it once.
+ * <p>
+ * Each request carries a change. The first request schedules a refresh at the next frame, or after
+ * a configurable window; the requests arriving meanwhile join it, and the refresh receives all
+ * their changes at once, in the order they were requested. During a flood of incoming SMS,
+ * a screen is therefore refreshed at most once per frame or per window, however many batches
+ * were stored.
+ * </p>
+ * The coalescer counts the refreshes requested and the refreshes that ran. Pending changes are
+ * dropped when its owner is destroyed. All methods must be called from the main thread.
+ *
+ * @param <T> The type of the changes.
+ */
+public class RefreshCoalescer<T> implements DefaultLifecycleObserver {
+
+    private static final String TAG = "DEBUG_UI";
+
+    /**
+     * Window refreshing at most once per frame.
+     */
+    public static final long EVERY_FRAME = 0;
+
+    /**
+     * Applies the changes collected since the previous refresh.
+     *
+     * @param <T> The type of the changes.
+     */
+    public interface Refresh<T> {
+        /**
+         * @param changes The changes, oldest first. Never empty.
+         */
+        void run(List<T> changes);
+    }
+
+    private final String name;
+    private final long windowMs;
+    private final Refresh<T> refresh;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> flush();
+
+    private List<T> pending = new ArrayList<>();
+    private boolean scheduled = false;
+    private boolean destroyed = false;
+    private long requestedCount = 0;
+    private long runCount = 0;
+
+    /**
+     * Constructor for RefreshCoalescer.
+     *
+     * @param owner    The lifecycle the refreshes are bound to.
+     * @param name     The name of the refreshed content, for the logs.
+     * @param windowMs The time a refresh waits for more requests, or {@link #EVERY_FRAME}.
+     * @param refresh  Applies the collected changes.
+     */
+    public RefreshCoalescer(LifecycleOwner owner, String name, long windowMs, Refresh<T> refresh) {
+        if (windowMs < 0) {
+            throw new IllegalArgumentException("windowMs must not be negative: " + windowMs);
+        }
+        this.name = name;
+        this.windowMs = windowMs;
+        this.refresh = refresh;
+        owner.getLifecycle().addObserver(this);
+    }
+
+    /**
+     * Requests a refresh including a change.
+     *
+     * @param change The change to apply.
+     */
+    public void request(T change) {
+        if (destroyed) {
+            return;
+        }
+        requestedCount++;
+        pending.add(change);
+        if (scheduled) {
+            return;
+        }
+        scheduled = true;
+        if (windowMs == EVERY_FRAME) {
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        } else {
+            handler.postDelayed(flushRunnable, windowMs);
+        }
+    }
+
+    /**
+     * Runs the refresh with every pending change.
+     */
+    private void flush() {
+        scheduled = false;
+        if (destroyed || pending.isEmpty()) {
+            return;
+        }
+        List<T> changes = pending;
+        pending = new ArrayList<>();
+        runCount++;
+        if (changes.size() > 1) {
+            Log.d(TAG, "Coalesced " + changes.size() + " " + name + " refreshes into one");
+        }
+        refresh.run(changes);
+    }
+
+    /**
+     * @return The number of refreshes requested since the coalescer was created.
+     */
+    public long getRequestedCount() {
+        return requestedCount;
+    }
+
+    /**
+     * @return The number of refreshes that ran since the coalescer was created.
+     */
+    public long getRunCount() {
+        return runCount;
+    }
+
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        destroyed = true;
+        pending.clear();
+        handler.removeCallbacks(flushRunnable);
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+        owner.getLifecycle().removeObserver(this);
+        Log.d(TAG, name + " refreshes: " + requestedCount + " requested, " + runCount + " ran");
+    }
+}
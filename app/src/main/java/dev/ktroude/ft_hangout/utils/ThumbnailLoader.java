@@ -0,0 +1,245 @@
+package dev.ktroude.ft_hangout.utils;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the contact thumbnails shown in the contact list.
+ * <p>
+ * Thumbnails are decoded on a small background executor and kept in a memory cache of their own,
+ * so that scrolling never reads the disk on the main thread. A thumbnail missing from the
+ * {@link AvatarStore}, as for pictures saved before thumbnails existed, is generated from the
+ * picture the first time it is needed and stored for the next time.
+ * Contacts without a picture are shown with a placeholder made of their initial on a color
+ * derived from their name; placeholders are drawn once and shared.
+ * </p>
+ */
+public class ThumbnailLoader {
+
+    private static final String TAG = "DEBUG_AVATAR";
+    private static final int THREADS = 2;
+
+    /**
+     * Share of the maximum heap the thumbnail cache may use: 1/32nd, a few screens of contacts.
+     */
+    private static final int HEAP_FRACTION = 32;
+
+    /**
+     * Number of placeholders kept: every initial in every color of the Latin alphabet fits.
+     */
+    private static final int PLACEHOLDER_CACHE_SIZE = 64;
+
+    private static final int[] PLACEHOLDER_COLORS = {
+            0xFFE57373, 0xFFF06292, 0xFFBA68C8, 0xFF7986CB,
+            0xFF4FC3F7, 0xFF4DB6AC, 0xFF81C784, 0xFFFFB74D
+    };
+
+    /**
+     * Receives a loaded thumbnail on the main thread.
+     */
+    public interface Callback {
+        /**
+         * @param thumbnail The thumbnail, or null if the picture could not be read.
+         */
+        void onLoaded(Bitmap thumbnail);
+    }
+
+    /**
+     * Handle on a pending load.
+     */
+    public static final class Request {
+        private volatile boolean cancelled = false;
+        private Future<?> future;
+
+        /**
+         * Cancels the load: its callback will not be invoked, and if it has not started yet,
+         * it will not run at all. Must be called from the main thread.
+         */
+        public void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private static ThumbnailLoader instance;
+
+    private final AvatarStore store;
+    private final AvatarCache cache;
+    private final LruCache<String, Bitmap> placeholders = new LruCache<>(PLACEHOLDER_CACHE_SIZE);
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Constructor for ThumbnailLoader.
+     * Use {@link #getInstance(Context)} instead, so that every list shares the same cache.
+     *
+     * @param store The store the thumbnails are read from.
+     * @param cache The cache the decoded thumbnails are kept in.
+     */
+    public ThumbnailLoader(AvatarStore store, AvatarCache cache) {
+        this.store = store;
+        this.cache = cache;
+        this.executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "thumbnail-loader");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the application-wide thumbnail loader.
+     *
+     * @param context Any context; only its application context is used.
+     * @return The shared ThumbnailLoader.
+     */
+    public static synchronized ThumbnailLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new ThumbnailLoader(AvatarStore.getInstance(context),
+                    new AvatarCache((int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / HEAP_FRACTION)));
+        }
+        return instance;
+    }
+
+    /**
+     * Returns a thumbnail only if it is already in memory.
+     *
+     * @param pictureKey The avatar key of the picture, may be null or empty.
+     * @return The thumbnail or null if it has to be loaded.
+     */
+    public Bitmap getCached(String pictureKey) {
+        if (pictureKey == null || pictureKey.isEmpty()) {
+            return null;
+        }
+        return cache.get(pictureKey);
+    }
+
+    /**
+     * Loads a thumbnail in the background. Must be called from the main thread.
+     *
+     * @param pictureKey The avatar key of the picture.
+     * @param callback   Receives the thumbnail on the main thread, unless the request is cancelled first.
+     * @return A handle that can be used to cancel the load.
+     */
+    public Request load(String pictureKey, Callback callback) {
+        Request request = new Request();
+        request.future = executor.submit(() -> {
+            if (request.cancelled) {
+                return;
+            }
+            Bitmap thumbnail = store.loadThumbnail(pictureKey);
+            if (thumbnail == null) {
+                thumbnail = generateThumbnail(pictureKey);
+            }
+            if (thumbnail != null) {
+                cache.put(pictureKey, thumbnail);
+            }
+            Bitmap result = thumbnail;
+            mainHandler.post(() -> {
+                if (!request.cancelled) {
+                    callback.onLoaded(result);
+                }
+            });
+        });
+        return request;
+    }
+
+    /**
+     * Makes the thumbnail of a picture that has none yet, and stores it.
+     * The picture is decoded without going through the {@link AvatarCache}, which is meant for
+     * the screens showing the full picture.
+     *
+     * @param pictureKey The avatar key of the picture.
+     * @return The thumbnail, or null if the picture cannot be read.
+     */
+    private Bitmap generateThumbnail(String pictureKey) {
+        Bitmap picture;
+        try (InputStream in = store.open(pictureKey)) {
+            picture = BitmapFactory.decodeStream(in);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read avatar " + pictureKey, e);
+            return null;
+        }
+        if (picture == null) {
+            return null;
+        }
+
+        Bitmap thumbnail = ImageHelper.createThumbnail(picture);
+        try {
+            store.saveThumbnail(pictureKey, AvatarEncoder.DEFAULT.encode(thumbnail));
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot save the thumbnail of " + pictureKey, e);
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Returns the placeholder of a contact without a picture: its initial on a color picked
+     * from its name, so that a contact always gets the same one. Must be called from the main thread.
+     *
+     * @param name The displayed name of the contact.
+     * @return The shared placeholder Bitmap, which must not be modified.
+     */
+    public Bitmap getPlaceholder(String name) {
+        String trimmed = name == null ? "" : name.trim();
+        String initial = trimmed.isEmpty() ? "#"
+                : new String(Character.toChars(trimmed.codePointAt(0))).toUpperCase(Locale.getDefault());
+        int color = PLACEHOLDER_COLORS[Math.floorMod(trimmed.hashCode(), PLACEHOLDER_COLORS.length)];
+
+        String key = initial + '/' + color;
+        Bitmap placeholder = placeholders.get(key);
+        if (placeholder == null) {
+            placeholder = drawPlaceholder(initial, color);
+            placeholders.put(key, placeholder);
+        }
+        return placeholder;
+    }
+
+    private static Bitmap drawPlaceholder(String initial, int color) {
+        int size = ImageHelper.THUMBNAIL_SIZE;
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(color);
+
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(Color.WHITE);
+        paint.setTextSize(size * 0.5f);
+        paint.setTextAlign(Paint.Align.CENTER);
+        Paint.FontMetrics metrics = paint.getFontMetrics();
+        float baseline = size / 2f - (metrics.ascent + metrics.descent) / 2f;
+        new Canvas(bitmap).drawText(initial, size / 2f, baseline, paint);
+        return bitmap;
+    }
+
+    /**
+     * Releases memory in response to {@link ComponentCallbacks2#onTrimMemory(int)},
+     * like {@link AvatarCache#trimMemory(int)}.
+     *
+     * @param level The trim level received from the system.
+     */
+    public void trimMemory(int level) {
+        cache.trimMemory(level);
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            placeholders.evictAll();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package dev.ktroude.ft_hangout.database;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link SenderCache}.
+ */
+public class SenderCacheTest {
+
+    private static final String NUMBER = "+33612345678";
+
+    @Test
+    public void get_countsHitsAndMisses() {
+        SenderCache cache = new SenderCache(4);
+        assertNull(cache.get(NUMBER));
+        cache.putIfCurrent(NUMBER, 7, cache.generation());
+        assertEquals(7, (int) cache.get(NUMBER));
+        assertEquals(7, (int) cache.get(NUMBER));
+
+        assertEquals(2, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    public void unknownNumber_isCachedUntilInvalidated() {
+        SenderCache cache = new SenderCache(4);
+        cache.putIfCurrent(NUMBER, SenderCache.NO_CONTACT, cache.generation());
+        assertEquals(SenderCache.NO_CONTACT, (int) cache.get(NUMBER));
+
+        cache.invalidate(NUMBER);
+        assertNull(cache.get(NUMBER));
+    }
+
+    @Test
+    public void leastRecentlyUsedNumber_isEvictedFirst() {
+        SenderCache cache = new SenderCache(2);
+        cache.putIfCurrent("1", 1, cache.generation());
+        cache.putIfCurrent("2", 2, cache.generation());
+        cache.get("1");
+        cache.putIfCurrent("3", 3, cache.generation());
+
+        assertEquals(2, cache.size());
+        assertEquals(1, (int) cache.get("1"));
+        assertNull(cache.get("2"));
+        assertEquals(3, (int) cache.get("3"));
+    }
+
+    @Test
+    public void invalidateContact_forgetsEveryNumberOfTheContact() {
+        SenderCache cache = new SenderCache(4);
+        cache.putIfCurrent("1", 5, cache.generation());
+        cache.putIfCurrent("2", 5, cache.generation());
+        cache.putIfCurrent("3", 6, cache.generation());
+
+        cache.invalidateContact(5);
+        assertNull(cache.get("1"));
+        assertNull(cache.get("2"));
+        assertEquals(6, (int) cache.get("3"));
+    }
+
+    @Test
+    public void putIfCurrent_dropsResultReadBeforeAnInvalidation() {
+        SenderCache cache = new SenderCache(4);
+        long generation = cache.generation();
+        cache.invalidate(NUMBER);
+
+        assertFalse(cache.putIfCurrent(NUMBER, SenderCache.NO_CONTACT, generation));
+        assertNull(cache.get(NUMBER));
+    }
+
+    /**
+     * Readers look numbers up the way {@link DatabaseHelper#getContactIdByNumber(String)} does,
+     * against a simulated contacts table that a writer keeps changing. Once everything has stopped,
+     * no cached entry may disagree with the table.
+     */
+    @Test
+    public void concurrentLookupsAndChanges_neverLeaveAStaleEntry() throws InterruptedException {
+        int numbers = 64;
+        int readers = 4;
+        int lookupsPerReader = 50_000;
+        SenderCache cache = new SenderCache(numbers / 2);
+        AtomicIntegerArray table = new AtomicIntegerArray(numbers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+
+        for (int r = 0; r < readers; r++) {
+            int seed = r;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                awaitQuietly(start);
+                for (int i = 0; i < lookupsPerReader; i++) {
+                    int number = random.nextInt(numbers);
+                    String key = String.valueOf(number);
+                    if (cache.get(key) == null) {
+                        long generation = cache.generation();
+                        int contactId = table.get(number);
+                        Thread.yield();
+                        cache.putIfCurrent(key, contactId, generation);
+                    }
+                }
+            }));
+        }
+        AtomicBoolean readersDone = new AtomicBoolean(false);
+        Thread writer = new Thread(() -> {
+            Random random = new Random(-1);
+            awaitQuietly(start);
+            for (int i = 1; !readersDone.get(); i++) {
+                int number = random.nextInt(numbers);
+                // The contact is created, renumbered or deleted before the cache hears about it.
+                int previous = table.getAndSet(number, random.nextBoolean() ? i : SenderCache.NO_CONTACT);
+                if (previous != SenderCache.NO_CONTACT && random.nextBoolean()) {
+                    cache.invalidateContact(previous);
+                } else {
+                    cache.invalidate(String.valueOf(number));
+                }
+                Thread.yield();
+            }
+        });
+
+        threads.add(writer);
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((t, e) -> {
+                synchronized (failures) {
+                    failures.add(e);
+                }
+            });
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads.subList(0, readers)) {
+            thread.join();
+        }
+        readersDone.set(true);
+        writer.join();
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        for (int number = 0; number < numbers; number++) {
+            Integer cached = cache.get(String.valueOf(number));
+            if (cached != null) {
+                assertEquals("Stale entry for " + number, table.get(number), (int) cached);
+            }
+        }
+        assertEquals(readers * (long) lookupsPerReader + numbers, cache.hitCount() + cache.missCount());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package dev.ktroude.ft_hangout.receivers;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import dev.ktroude.ft_hangout.models.IncomingSms;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link SmsReassembler}.
+ */
+public class SmsReassemblerTest {
+
+    private static final String SENDER = "0612345678";
+
+    @Test
+    public void singlePartSms_isReleasedImmediately() {
+        SmsReassembler reassembler = new SmsReassembler();
+        List<IncomingSms> ready = reassembler.add(
+                Collections.singletonList(new SmsReassembler.Segment(SENDER, 0, 1, 1, "Hello", 10)), 10);
+
+        assertEquals(1, ready.size());
+        assertEquals("Hello", ready.get(0).getBody());
+        assertEquals(0, reassembler.getPendingCount());
+    }
+
+    @Test
+    public void segmentsInOneBroadcast_areJoinedInSequenceOrder() {
+        SmsReassembler reassembler = new SmsReassembler();
+        List<IncomingSms> ready = reassembler.add(Arrays.asList(
+                new SmsReassembler.Segment(SENDER, 7, 3, 2, "lo wo", 10),
+                new SmsReassembler.Segment(SENDER, 7, 3, 1, "Hel", 10),
+                new SmsReassembler.Segment(SENDER, 7, 3, 3, "rld", 10)), 10);
+
+        assertEquals(1, ready.size());
+        assertEquals("Hello world", ready.get(0).getBody());
+        assertEquals(SENDER, ready.get(0).getSender());
+    }
+
+    @Test
+    public void segmentsAcrossBroadcasts_areHeldUntilComplete() {
+        SmsReassembler reassembler = new SmsReassembler();
+
+        assertTrue(reassembler.add(Collections.singletonList(
+                new SmsReassembler.Segment(SENDER, 7, 2, 1, "Hello ", 10)), 10).isEmpty());
+        assertEquals(1, reassembler.getPendingCount());
+
+        List<IncomingSms> ready = reassembler.add(Collections.singletonList(
+                new SmsReassembler.Segment(SENDER, 7, 2, 2, "world", 20)), 20);
+        assertEquals(1, ready.size());
+        assertEquals("Hello world", ready.get(0).getBody());
+        assertEquals(10, ready.get(0).getTimestamp());
+        assertEquals(0, reassembler.getPendingCount());
+    }
+
+    @Test
+    public void sameReferenceFromDifferentSenders_isNotMixed() {
+        SmsReassembler reassembler = new SmsReassembler();
+        List<IncomingSms> ready = reassembler.add(Arrays.asList(
+                new SmsReassembler.Segment(SENDER, 7, 2, 1, "A1", 10),
+                new SmsReassembler.Segment("0699999999", 7, 2, 1, "B1", 10),
+                new SmsReassembler.Segment(SENDER, 7, 2, 2, "A2", 10)), 10);
+
+        assertEquals(1, ready.size());
+        assertEquals("A1A2", ready.get(0).getBody());
+        assertEquals(1, reassembler.getPendingCount());
+    }
+
+    @Test
+    public void incompleteMessage_isReleasedAfterTimeout() {
+        SmsReassembler reassembler = new SmsReassembler(1000, 8);
+        reassembler.add(Collections.singletonList(new SmsReassembler.Segment(SENDER, 7, 3, 1, "Hel", 0)), 0);
+
+        assertTrue(reassembler.flushExpired(999).isEmpty());
+        List<IncomingSms> released = reassembler.flushExpired(1000);
+        assertEquals(1, released.size());
+        assertEquals("Hel", released.get(0).getBody());
+        assertEquals(0, reassembler.getPendingCount());
+    }
+
+    @Test
+    public void fullBuffer_releasesOldestIncompleteMessage() {
+        SmsReassembler reassembler = new SmsReassembler(60_000, 1);
+        reassembler.add(Collections.singletonList(new SmsReassembler.Segment(SENDER, 1, 2, 1, "first", 0)), 0);
+        List<IncomingSms> released = reassembler.add(Collections.singletonList(
+                new SmsReassembler.Segment(SENDER, 2, 2, 1, "second", 1)), 1);
+
+        assertEquals(1, released.size());
+        assertEquals("first", released.get(0).getBody());
+        assertEquals(1, reassembler.getPendingCount());
+    }
+
+    @Test
+    public void parseConcatenationHeader_readsEightBitReference() {
+        byte[] pdu = {
+                0x00,                                     // no SMSC address
+                0x44,                                     // SMS-DELIVER with user data header
+                0x0B, (byte) 0x91, 0x33, 0x16, 0x32, 0x54, 0x76, (byte) 0xF8, // +33612345678
+                0x00, 0x00,                               // PID, DCS
+                0x52, 0x10, 0x81, 0x21, 0x43, 0x65, 0x00, // SCTS
+                0x0A,                                     // UDL
+                0x05, 0x00, 0x03, 0x2A, 0x03, 0x02,       // UDH: reference 42, part 2 of 3
+                0x41, 0x42, 0x43
+        };
+
+        assertArrayEquals(new int[]{42, 3, 2}, SmsReassembler.parseConcatenationHeader(pdu));
+    }
+
+    @Test
+    public void parseConcatenationHeader_ignoresPduWithoutHeader() {
+        byte[] pdu = {
+                0x00,
+                0x04,                                     // SMS-DELIVER without user data header
+                0x0B, (byte) 0x91, 0x33, 0x16, 0x32, 0x54, 0x76, (byte) 0xF8,
+                0x00, 0x00,
+                0x52, 0x10, 0x81, 0x21, 0x43, 0x65, 0x00,
+                0x02, 0x41, 0x42
+        };
+
+        assertNull(SmsReassembler.parseConcatenationHeader(pdu));
+        assertNull(SmsReassembler.parseConcatenationHeader(new byte[]{0x00, 0x44}));
+    }
+}
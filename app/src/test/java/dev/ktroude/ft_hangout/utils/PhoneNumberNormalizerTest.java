@@ -0,0 +1,70 @@
+package dev.ktroude.ft_hangout.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PhoneNumberNormalizer}.
+ */
+public class PhoneNumberNormalizerTest {
+
+    private static final String KEY = "+33612345678";
+
+    @Test
+    public void everyWritingOfANumber_sharesOneKey() {
+        assertEquals(KEY, PhoneNumberNormalizer.toKey("0612345678"));
+        assertEquals(KEY, PhoneNumberNormalizer.toKey("06 12 34 56 78"));
+        assertEquals(KEY, PhoneNumberNormalizer.toKey("06.12.34.56.78"));
+        assertEquals(KEY, PhoneNumberNormalizer.toKey("06-12-34-56-78"));
+        assertEquals(KEY, PhoneNumberNormalizer.toKey("+33612345678"));
+        assertEquals(KEY, PhoneNumberNormalizer.toKey("+33 6 12 34 56 78"));
+        assertEquals(KEY, PhoneNumberNormalizer.toKey("+33 (0)6 12 34 56 78"));
+        assertEquals(KEY, PhoneNumberNormalizer.toKey("0033 6 12 34 56 78"));
+        assertEquals(KEY, PhoneNumberNormalizer.toKey(" 06 12 34 56 78 "));
+    }
+
+    @Test
+    public void foreignNumbers_keepTheirCountryCode() {
+        assertEquals("+447700900123", PhoneNumberNormalizer.toKey("+44 7700 900123"));
+        assertEquals("+447700900123", PhoneNumberNormalizer.toKey("0044 7700 900123"));
+    }
+
+    @Test
+    public void shortCodesAndSenderIds_areKeptAsIs() {
+        assertEquals("36179", PhoneNumberNormalizer.toKey("36179"));
+        assertEquals("36179", PhoneNumberNormalizer.toKey("36 179"));
+        assertEquals("AMAZON", PhoneNumberNormalizer.toKey(" AMAZON "));
+        assertEquals("0", PhoneNumberNormalizer.toKey("0"));
+        assertEquals("", PhoneNumberNormalizer.toKey(""));
+        assertNull(PhoneNumberNormalizer.toKey(null));
+    }
+
+    @Test
+    public void toKeyPrefix_matchesTheKeysOfPartialNumbers() {
+        assertEquals("+33612", PhoneNumberNormalizer.toKeyPrefix("06 12"));
+        assertEquals("+33612", PhoneNumberNormalizer.toKeyPrefix("+33 6 12"));
+        assertEquals("+33612", PhoneNumberNormalizer.toKeyPrefix("0033 612"));
+        assertEquals("+33", PhoneNumberNormalizer.toKeyPrefix("0"));
+        assertEquals("+", PhoneNumberNormalizer.toKeyPrefix("00"));
+        assertEquals("+330", PhoneNumberNormalizer.toKeyPrefix("+330"));
+        assertEquals("361", PhoneNumberNormalizer.toKeyPrefix("361"));
+    }
+
+    @Test
+    public void toKeyPrefix_rejectsNames() {
+        assertNull(PhoneNumberNormalizer.toKeyPrefix("jean"));
+        assertNull(PhoneNumberNormalizer.toKeyPrefix("r2d2"));
+        assertNull(PhoneNumberNormalizer.toKeyPrefix("+"));
+        assertNull(PhoneNumberNormalizer.toKeyPrefix(" "));
+        assertNull(PhoneNumberNormalizer.toKeyPrefix(null));
+    }
+
+    @Test
+    public void toNational_formatsDefaultCountryOnly() {
+        assertEquals("0612345678", PhoneNumberNormalizer.toNational(KEY));
+        assertEquals("+447700900123", PhoneNumberNormalizer.toNational("+447700900123"));
+        assertEquals("36179", PhoneNumberNormalizer.toNational("36179"));
+        assertEquals("+33", PhoneNumberNormalizer.toNational("+33"));
+    }
+}